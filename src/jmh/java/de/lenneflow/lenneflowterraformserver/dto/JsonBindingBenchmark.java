@@ -0,0 +1,58 @@
+package de.lenneflow.lenneflowterraformserver.dto;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the Jackson binding of the terraform outputs and the EKS token with the mapper configuration of the
+ * ServerController. Run with ./gradlew jmh
+ */
+@State(Scope.Benchmark)
+public class JsonBindingBenchmark {
+
+    private static final String OUTPUT_JSON = "{"
+            + "\"cluster_endpoint\":{\"sensitive\":\"false\",\"type\":\"string\",\"value\":\"https://0123456789ABCDEF.gr7.us-west-1.eks.amazonaws.com\"},"
+            + "\"cluster_ca_certificate\":{\"sensitive\":\"true\",\"type\":\"string\",\"value\":\"" + "LS0tLS1CRUdJTiBDRVJUSUZJQ0FURS0tLS0t".repeat(40) + "\"},"
+            + "\"cluster_security_group_id\":{\"sensitive\":\"false\",\"type\":\"string\",\"value\":\"sg-0123456789abcdef0\"},"
+            + "\"ingress_hostname\":{\"sensitive\":\"false\",\"type\":\"string\",\"value\":\"a0123456789abcdef-123456789.us-west-1.elb.amazonaws.com\"},"
+            + "\"region\":{\"sensitive\":\"false\",\"type\":\"string\",\"value\":\"us-west-1\"},"
+            + "\"cluster_name\":{\"sensitive\":\"false\",\"type\":\"string\",\"value\":\"benchmark-cluster\"}}";
+
+    private static final String TOKEN_JSON = "{\"kind\":\"ExecCredential\",\"apiVersion\":\"client.authentication.k8s.io/v1beta1\","
+            + "\"spec\":{},\"status\":{\"expirationTimestamp\":\"2026-01-01T00:15:00Z\",\"token\":\"k8s-aws-v1."
+            + "aHR0cHM6Ly9zdHMudXMtd2VzdC0xLmFtYXpvbmF3cy5jb20v".repeat(20) + "\"}}";
+
+    private ObjectMapper mapper;
+    private OutputDTO output;
+    private TokenDTO token;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        mapper = new ObjectMapper();
+        mapper.configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, true);
+        output = mapper.readValue(OUTPUT_JSON, OutputDTO.class);
+        token = mapper.readValue(TOKEN_JSON, TokenDTO.class);
+    }
+
+    @Benchmark
+    public OutputDTO readOutput() throws JsonProcessingException {
+        return mapper.readValue(OUTPUT_JSON, OutputDTO.class);
+    }
+
+    @Benchmark
+    public byte[] writeOutput() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(output);
+    }
+
+    @Benchmark
+    public TokenDTO readToken() throws JsonProcessingException {
+        return mapper.readValue(TOKEN_JSON, TokenDTO.class);
+    }
+
+    @Benchmark
+    public byte[] writeToken() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(token);
+    }
+}
@@ -2,8 +2,10 @@ package de.lenneflow.lenneflowterraformserver;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class LenneflowK8sApiApplication {
 
     public static void main(String[] args) {
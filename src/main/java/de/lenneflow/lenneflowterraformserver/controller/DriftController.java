@@ -0,0 +1,52 @@
+package de.lenneflow.lenneflowterraformserver.controller;
+
+import de.lenneflow.lenneflowterraformserver.dto.DriftReportDTO;
+import de.lenneflow.lenneflowterraformserver.enums.CloudProvider;
+import de.lenneflow.lenneflowterraformserver.enums.DriftStatus;
+import de.lenneflow.lenneflowterraformserver.exception.PayloadNotValidException;
+import de.lenneflow.lenneflowterraformserver.model.ClusterDrift;
+import de.lenneflow.lenneflowterraformserver.model.ClusterKey;
+import de.lenneflow.lenneflowterraformserver.service.DriftSurvey;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Reports the results of the drift checks of the created clusters
+ */
+@RestController
+@RequestMapping("/api/kubernetes/drift")
+public class DriftController {
+
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private final DriftSurvey driftSurvey;
+
+    public DriftController(DriftSurvey driftSurvey) {
+        this.driftSurvey = driftSurvey;
+    }
+
+    /**
+     * Returns the number of clusters per drift status and a page of their last checks, optionally of one status only.
+     * The next page is read by passing the nextCursor of the previous page as cursor.
+     */
+    @GetMapping
+    public DriftReportDTO getFleetReport(@RequestParam(required = false) String status, @RequestParam(required = false) String cursor,
+                                         @RequestParam(defaultValue = "100") int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new PayloadNotValidException("The limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return driftSurvey.getReport(getDriftStatus(status), cursor, limit);
+    }
+
+    @GetMapping("/cluster/{clusterName}/provider/{cloudProvider}/region/{region}")
+    public ClusterDrift getClusterDrift(@PathVariable String clusterName, @PathVariable String region, @PathVariable String cloudProvider) {
+        return driftSurvey.getDrift(new ClusterKey(CloudProvider.valueOf(cloudProvider.toUpperCase()), region, clusterName));
+    }
+
+    private DriftStatus getDriftStatus(String status) {
+        try {
+            return status != null ? DriftStatus.valueOf(status.toUpperCase()) : null;
+        } catch (IllegalArgumentException e) {
+            throw new PayloadNotValidException("Unknown drift status " + status);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package de.lenneflow.lenneflowterraformserver.controller;
+
+import de.lenneflow.lenneflowterraformserver.dto.LogLinesDTO;
+import de.lenneflow.lenneflowterraformserver.dto.OperationLogDTO;
+import de.lenneflow.lenneflowterraformserver.enums.CloudProvider;
+import de.lenneflow.lenneflowterraformserver.enums.JobStatus;
+import de.lenneflow.lenneflowterraformserver.model.ClusterJob;
+import de.lenneflow.lenneflowterraformserver.model.ClusterKey;
+import de.lenneflow.lenneflowterraformserver.service.ClusterJobService;
+import de.lenneflow.lenneflowterraformserver.service.OperationLogStore;
+import de.lenneflow.lenneflowterraformserver.service.ReplicaRouter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Reads the stored output of the operations of a cluster. Large logs are read in ranges of lines or bytes.
+ * The log of an operation is kept by the replica that ran it, the requests for it are redirected to that replica.
+ */
+@RestController
+@RequestMapping("/api/kubernetes/logs/cluster/{clusterName}/provider/{cloudProvider}/region/{region}")
+public class OperationLogController {
+
+    private final OperationLogStore logStore;
+    private final ClusterJobService jobService;
+    private final ReplicaRouter replicaRouter;
+
+    public OperationLogController(OperationLogStore logStore, ClusterJobService jobService, ReplicaRouter replicaRouter) {
+        this.logStore = logStore;
+        this.jobService = jobService;
+        this.replicaRouter = replicaRouter;
+    }
+
+    /**
+     * Returns the logs kept by this replica and the operations whose logs are kept by other replicas
+     * with the location of their log
+     */
+    @GetMapping
+    public List<OperationLogDTO> getOperationLogs(@PathVariable String clusterName, @PathVariable String region, @PathVariable String cloudProvider) {
+        ClusterKey clusterKey = toClusterKey(clusterName, region, cloudProvider);
+        List<OperationLogDTO> logs = new ArrayList<>(logStore.list(clusterKey));
+        Set<String> localOperations = logs.stream().map(OperationLogDTO::getOperationId).collect(Collectors.toSet());
+        for (ClusterJob job : jobService.getJobs(clusterKey)) {
+            String ownerAddress = replicaRouter.getRemoteOwner(job);
+            if (ownerAddress != null && !localOperations.contains(job.getUid())) {
+                LocalDateTime lastModified = job.getFinished() != null ? job.getFinished() : job.getCreated();
+                logs.add(new OperationLogDTO(job.getUid(), job.getStatus() == JobStatus.RUNNING, 0, 0, 0, lastModified,
+                        replicaRouter.getLocation(ownerAddress, "/operation/" + job.getUid())));
+            }
+        }
+        logs.sort(Comparator.comparing(OperationLogDTO::getLastModified, Comparator.nullsLast(Comparator.reverseOrder())));
+        return logs;
+    }
+
+    @GetMapping("/operation/{operationId}/lines")
+    public LogLinesDTO getLines(@PathVariable String clusterName, @PathVariable String region, @PathVariable String cloudProvider,
+                                @PathVariable String operationId,
+                                @RequestParam(defaultValue = "0") long from,
+                                @RequestParam(defaultValue = "1000") int count) {
+        ClusterKey clusterKey = toClusterKey(clusterName, region, cloudProvider);
+        redirectIfRemote(clusterKey, operationId);
+        return logStore.readLines(clusterKey, operationId, from, count);
+    }
+
+    @GetMapping("/operation/{operationId}/tail")
+    public LogLinesDTO getTail(@PathVariable String clusterName, @PathVariable String region, @PathVariable String cloudProvider,
+                               @PathVariable String operationId,
+                               @RequestParam(defaultValue = "100") int count) {
+        ClusterKey clusterKey = toClusterKey(clusterName, region, cloudProvider);
+        redirectIfRemote(clusterKey, operationId);
+        return logStore.tail(clusterKey, operationId, count);
+    }
+
+    /**
+     * Returns a range of the raw output, the Content-Range header contains the total size of the output
+     */
+    @GetMapping("/operation/{operationId}/bytes")
+    public ResponseEntity<byte[]> getBytes(@PathVariable String clusterName, @PathVariable String region, @PathVariable String cloudProvider,
+                                           @PathVariable String operationId,
+                                           @RequestParam(defaultValue = "0") long offset,
+                                           @RequestParam(defaultValue = "65536") int length) {
+        ClusterKey clusterKey = toClusterKey(clusterName, region, cloudProvider);
+        redirectIfRemote(clusterKey, operationId);
+        byte[] content = logStore.readBytes(clusterKey, operationId, offset, length);
+        long size = logStore.getSize(clusterKey, operationId);
+        String range = content.length > 0 ? offset + "-" + (offset + content.length - 1) : "*";
+        return ResponseEntity.ok()
+                .contentType(MediaType.TEXT_PLAIN)
+                .header(HttpHeaders.CONTENT_RANGE, "bytes " + range + "/" + size)
+                .body(content);
+    }
+
+    private void redirectIfRemote(ClusterKey clusterKey, String operationId) {
+        if (!logStore.contains(clusterKey, operationId)) {
+            replicaRouter.redirectToOwner(operationId);
+        }
+    }
+
+    private static ClusterKey toClusterKey(String clusterName, String region, String cloudProvider) {
+        return new ClusterKey(CloudProvider.valueOf(cloudProvider.toUpperCase()), region, clusterName);
+    }
+}
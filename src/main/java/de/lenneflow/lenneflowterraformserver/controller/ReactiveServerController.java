@@ -0,0 +1,70 @@
+package de.lenneflow.lenneflowterraformserver.controller;
+
+import de.lenneflow.lenneflowterraformserver.enums.CloudProvider;
+import de.lenneflow.lenneflowterraformserver.model.AccessToken;
+import de.lenneflow.lenneflowterraformserver.model.Cluster;
+import de.lenneflow.lenneflowterraformserver.model.ClusterKey;
+import de.lenneflow.lenneflowterraformserver.repository.ClusterJobRepository;
+import de.lenneflow.lenneflowterraformserver.repository.ReactiveClusterRepository;
+import de.lenneflow.lenneflowterraformserver.service.AccessTokenService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+
+/**
+ * Non-blocking variants of the read endpoints. The request thread is released as soon as the result is subscribed,
+ * it does not wait for Mongo, for a token load or for a running operation.
+ */
+@RestController
+@RequestMapping("/api/kubernetes/reactive")
+public class ReactiveServerController {
+
+    private final ReactiveClusterRepository clusterRepository;
+    private final AccessTokenService accessTokenService;
+    private final ClusterJobRepository jobRepository;
+    private final Duration operationWaitTimeout;
+    private final Duration operationPollInterval;
+
+    public ReactiveServerController(ReactiveClusterRepository clusterRepository, AccessTokenService accessTokenService, ClusterJobRepository jobRepository,
+                                    @Value("${operations.completion.wait-timeout:25000}") long operationWaitTimeout,
+                                    @Value("${operations.completion.poll-interval:1000}") long operationPollInterval) {
+        this.clusterRepository = clusterRepository;
+        this.accessTokenService = accessTokenService;
+        this.jobRepository = jobRepository;
+        this.operationWaitTimeout = Duration.ofMillis(operationWaitTimeout);
+        this.operationPollInterval = Duration.ofMillis(operationPollInterval);
+    }
+
+    @GetMapping("/cluster/{clusterName}/provider/{cloudProvider}/region/{region}")
+    public Mono<Cluster> getCluster(@PathVariable String clusterName, @PathVariable String region, @PathVariable String cloudProvider) {
+        return clusterRepository.findByCloudProviderAndClusterNameAndRegion(CloudProvider.valueOf(cloudProvider.toUpperCase()), clusterName, region);
+    }
+
+    @GetMapping("/access-token/cluster/{clusterName}/provider/{cloudProvider}/region/{region}")
+    public Mono<AccessToken> getConnectionToken(@PathVariable String clusterName, @PathVariable String region, @PathVariable String cloudProvider) {
+        // the load is shared with other callers, so a cancelled request must not cancel it
+        return Mono.fromFuture(accessTokenService.getTokenAsync(CloudProvider.valueOf(cloudProvider.toUpperCase()), clusterName, region), true);
+    }
+
+    /**
+     * Waits until the running operation of a cluster is finished and returns the cluster.
+     * The operation may run on any replica, so the active job of the cluster is polled in Mongo.
+     * The cluster is returned as it is if the operation does not finish within the wait timeout.
+     */
+    @GetMapping("/cluster/{clusterName}/provider/{cloudProvider}/region/{region}/operation/completion")
+    public Mono<Cluster> awaitOperation(@PathVariable String clusterName, @PathVariable String region, @PathVariable String cloudProvider) {
+        ClusterKey clusterKey = new ClusterKey(CloudProvider.valueOf(cloudProvider.toUpperCase()), region, clusterName);
+        return Mono.fromCallable(() -> jobRepository.existsByActiveClusterKey(clusterKey.toString()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .filter(active -> !active)
+                .repeatWhenEmpty(polls -> polls.delayElements(operationPollInterval))
+                .timeout(operationWaitTimeout, Mono.empty())
+                .then(Mono.defer(() -> clusterRepository.findByCloudProviderAndClusterNameAndRegion(clusterKey.cloudProvider(), clusterName, region)));
+    }
+}
@@ -1,55 +1,96 @@
 package de.lenneflow.lenneflowterraformserver.controller;
 
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import de.lenneflow.lenneflowterraformserver.dto.AdmissionStatusDTO;
+import de.lenneflow.lenneflowterraformserver.dto.BatchDTO;
 import de.lenneflow.lenneflowterraformserver.dto.ClusterDTO;
+import de.lenneflow.lenneflowterraformserver.dto.ClusterPageDTO;
 import de.lenneflow.lenneflowterraformserver.dto.NodeGroupDTO;
-import de.lenneflow.lenneflowterraformserver.dto.OutputDTO;
-import de.lenneflow.lenneflowterraformserver.dto.TokenDTO;
+import de.lenneflow.lenneflowterraformserver.dto.PluginCacheStatusDTO;
+import de.lenneflow.lenneflowterraformserver.dto.QueueStatusDTO;
 import de.lenneflow.lenneflowterraformserver.enums.CloudProvider;
 import de.lenneflow.lenneflowterraformserver.enums.ClusterStatus;
+import de.lenneflow.lenneflowterraformserver.enums.JobType;
 import de.lenneflow.lenneflowterraformserver.exception.InternalServiceException;
+import de.lenneflow.lenneflowterraformserver.exception.OperationInProgressException;
 import de.lenneflow.lenneflowterraformserver.exception.PayloadNotValidException;
+import de.lenneflow.lenneflowterraformserver.exception.ResourceNotFoundException;
 import de.lenneflow.lenneflowterraformserver.model.AccessToken;
 import de.lenneflow.lenneflowterraformserver.model.Cluster;
+import de.lenneflow.lenneflowterraformserver.model.ClusterJob;
+import de.lenneflow.lenneflowterraformserver.model.ClusterFilter;
+import de.lenneflow.lenneflowterraformserver.model.ClusterKey;
 import de.lenneflow.lenneflowterraformserver.model.Credential;
-import de.lenneflow.lenneflowterraformserver.repository.AccessTokenRepository;
 import de.lenneflow.lenneflowterraformserver.repository.ClusterRepository;
 import de.lenneflow.lenneflowterraformserver.repository.CredentialRepository;
+import de.lenneflow.lenneflowterraformserver.service.AccessTokenService;
+import de.lenneflow.lenneflowterraformserver.service.ClusterBatch;
+import de.lenneflow.lenneflowterraformserver.service.ClusterBatchRegistry;
+import de.lenneflow.lenneflowterraformserver.service.ClusterJobService;
+import de.lenneflow.lenneflowterraformserver.service.OperationExecutor;
+import de.lenneflow.lenneflowterraformserver.service.ReplicaRouter;
+import de.lenneflow.lenneflowterraformserver.service.TemplateSnapshot;
+import de.lenneflow.lenneflowterraformserver.service.TemplateStore;
+import de.lenneflow.lenneflowterraformserver.service.TerraformAdmission;
+import de.lenneflow.lenneflowterraformserver.service.TerraformOutputBroadcaster;
+import de.lenneflow.lenneflowterraformserver.service.TerraformOutputReader;
+import de.lenneflow.lenneflowterraformserver.service.TerraformPluginCache;
 import de.lenneflow.lenneflowterraformserver.util.Util;
 import de.lenneflow.lenneflowterraformserver.util.Validator;
-import org.apache.commons.io.FileUtils;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.File;
 import java.io.IOException;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @RestController
 @RequestMapping("/api/kubernetes")
 public class ServerController {
 
-    @Value("${git.repository.url}")
-    private String repositoryUrl;
-
-    @Value("${git.repository.branch}")
-    private String branch;
+    private static final int MAX_PAGE_SIZE = 1000;
 
     private final CredentialRepository credentialRepository;
     private final ClusterRepository clusterRepository;
-    private final AccessTokenRepository accessTokenRepository;
+    private final OperationExecutor operationExecutor;
+    private final TerraformPluginCache pluginCache;
+    private final TemplateStore templateStore;
+    private final TerraformOutputBroadcaster outputBroadcaster;
+    private final AccessTokenService accessTokenService;
+    private final ClusterBatchRegistry batchRegistry;
+    private final ClusterJobService jobService;
+    private final TerraformOutputReader outputReader;
+    private final TerraformAdmission terraformAdmission;
+    private final ReplicaRouter replicaRouter;
     private final ObjectMapper mapper = new ObjectMapper();
 
-    public ServerController(CredentialRepository credentialRepository, ClusterRepository clusterRepository, AccessTokenRepository accessTokenRepository) {
+    public ServerController(CredentialRepository credentialRepository, ClusterRepository clusterRepository, OperationExecutor operationExecutor,
+                            TerraformPluginCache pluginCache, TemplateStore templateStore, TerraformOutputBroadcaster outputBroadcaster,
+                            AccessTokenService accessTokenService, ClusterBatchRegistry batchRegistry, ClusterJobService jobService,
+                            TerraformOutputReader outputReader, TerraformAdmission terraformAdmission, ReplicaRouter replicaRouter) {
         this.credentialRepository = credentialRepository;
         this.clusterRepository = clusterRepository;
-        this.accessTokenRepository = accessTokenRepository;
+        this.operationExecutor = operationExecutor;
+        this.pluginCache = pluginCache;
+        this.templateStore = templateStore;
+        this.outputBroadcaster = outputBroadcaster;
+        this.accessTokenService = accessTokenService;
+        this.batchRegistry = batchRegistry;
+        this.jobService = jobService;
+        this.outputReader = outputReader;
+        this.terraformAdmission = terraformAdmission;
+        this.replicaRouter = replicaRouter;
         mapper.configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, true);
     }
 
@@ -68,7 +109,7 @@ public class ServerController {
 
 
     /**
-     * Create a new Cluster on the cloud
+     * Create a new Cluster on the cloud. The creation is queued as a job that any replica can run.
      */
     @PostMapping("/cluster/create")
     public Cluster createOrUpdateCluster(@RequestBody ClusterDTO clusterDTO) {
@@ -77,34 +118,64 @@ public class ServerController {
         if (foundCluster != null) {
             throw new PayloadNotValidException("Cluster already exists");
         }
+        Cluster cluster = null;
         try {
-            Cluster cluster = createDBTables(clusterDTO);
-            Util.gitClone(repositoryUrl, branch);
-            String clusterDir = Util.initializeClusterDir(clusterDTO.getCloudProvider(), clusterDTO.getClusterName(), clusterDTO.getRegion());
-            Map<String, String> variablesMap = Util.createTfvarsVariablesMap(clusterDTO);
-            Util.createTfvarsFile(clusterDir, variablesMap);
-            new Thread(() -> executeTerraformCreationCommands(cluster, clusterDir, false, null)).start();
+            TemplateSnapshot snapshot = templateStore.getSnapshot();
+            cluster = createDBTables(clusterDTO, snapshot.commitId());
+            jobService.enqueue(JobType.CREATE, cluster);
             return cluster;
+        } catch (OperationInProgressException e) {
+            removeRejectedCluster(cluster);
+            throw e;
         } catch (Exception e) {
+            removeRejectedCluster(cluster);
             throw new InternalServiceException( "Cluster creation error" + e.getMessage());
         }
 
     }
 
-    @PostMapping("/cluster/update")
-    public Cluster updateNodeGroup(@RequestBody NodeGroupDTO nodeGroupDTO) {
+    /**
+     * Creates several clusters. All clusters are validated and stored with the same template snapshot before
+     * the first one is queued. At most parallelism clusters of the batch are created at the same time.
+     */
+    @PostMapping("/cluster/batch")
+    public BatchDTO createClusters(@RequestBody List<ClusterDTO> clusterDTOs, @RequestParam(required = false) Integer parallelism) {
+        validateBatch(clusterDTOs);
+        for (ClusterDTO clusterDTO : clusterDTOs) {
+            if (clusterRepository.findByCloudProviderAndClusterNameAndRegion(clusterDTO.getCloudProvider(), clusterDTO.getClusterName(), clusterDTO.getRegion()) != null) {
+                throw new PayloadNotValidException("Cluster " + clusterDTO.getClusterName() + " already exists");
+            }
+        }
+        List<ClusterBatch.Entry> entries = new ArrayList<>();
         try {
-            Validator.validateNodeGroup(nodeGroupDTO);
-            String clusterDir = Util.initializeClusterDir(nodeGroupDTO.getCloudProvider(), nodeGroupDTO.getClusterName(), nodeGroupDTO.getRegion());
-            Cluster cluster = clusterRepository.findByCloudProviderAndClusterNameAndRegion(nodeGroupDTO.getCloudProvider(), nodeGroupDTO.getClusterName(), nodeGroupDTO.getRegion());
-            ClusterDTO clusterDTO = createClusterDTO(cluster, nodeGroupDTO);
-            Map<String, String> variablesMap = Util.createTfvarsVariablesMap(clusterDTO);
-            Util.createTfvarsFile(clusterDir, variablesMap);
-            new Thread(() -> executeTerraformCreationCommands(cluster, clusterDir, true, nodeGroupDTO)).start();
-            return cluster;
+            TemplateSnapshot snapshot = templateStore.getSnapshot();
+            for (ClusterDTO clusterDTO : clusterDTOs) {
+                entries.add(new ClusterBatch.Entry(createDBTables(clusterDTO, snapshot.commitId())));
+            }
         } catch (Exception e) {
-            throw new InternalServiceException("Cluster update error" + e.getMessage());
+            entries.forEach(entry -> removeRejectedCluster(entry.getCluster()));
+            throw new InternalServiceException("Batch creation error" + e.getMessage());
+        }
+        return batchRegistry.start(parallelism, entries).toDTO();
+    }
+
+    /**
+     * Returns the progress of a batch and the status of its clusters
+     */
+    @GetMapping("/cluster/batch/{batchId}")
+    public BatchDTO getBatch(@PathVariable String batchId) {
+        return batchRegistry.getBatch(batchId).toDTO();
+    }
+
+    @PostMapping("/cluster/update")
+    public Cluster updateNodeGroup(@RequestBody NodeGroupDTO nodeGroupDTO) {
+        Validator.validateNodeGroup(nodeGroupDTO);
+        Cluster cluster = clusterRepository.findByCloudProviderAndClusterNameAndRegion(nodeGroupDTO.getCloudProvider(), nodeGroupDTO.getClusterName(), nodeGroupDTO.getRegion());
+        if (cluster == null) {
+            throw new InternalServiceException("Cluster not found");
         }
+        jobService.enqueue(JobType.UPDATE, cluster, nodeGroupDTO);
+        return cluster;
 
     }
 
@@ -114,80 +185,156 @@ public class ServerController {
     }
 
 
+    /**
+     * Lists the clusters that match the optional filters, ordered by uid.
+     * The next page is read by passing the nextCursor of the previous page as cursor.
+     */
+    @GetMapping("/clusters")
+    public ClusterPageDTO listClusters(@RequestParam(required = false) String cloudProvider, @RequestParam(required = false) String status,
+                                       @RequestParam(required = false) String region, @RequestParam(required = false) String cursor,
+                                       @RequestParam(defaultValue = "100") int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new PayloadNotValidException("The limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        List<Cluster> clusters = clusterRepository.findPage(createClusterFilter(cloudProvider, status, region), cursor, limit + 1);
+        if (clusters.size() > limit) {
+            List<Cluster> page = new ArrayList<>(clusters.subList(0, limit));
+            return new ClusterPageDTO(page, page.get(limit - 1).getUid());
+        }
+        return new ClusterPageDTO(clusters, null);
+    }
+
+    /**
+     * Streams all clusters that match the optional filters as newline delimited JSON while they are read from the database
+     */
+    @GetMapping(value = "/clusters/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody streamClusters(@RequestParam(required = false) String cloudProvider, @RequestParam(required = false) String status,
+                                                @RequestParam(required = false) String region) {
+        ClusterFilter filter = createClusterFilter(cloudProvider, status, region);
+        return outputStream -> {
+            try (Stream<Cluster> clusters = clusterRepository.streamAll(filter)) {
+                Iterator<Cluster> iterator = clusters.iterator();
+                while (iterator.hasNext()) {
+                    outputStream.write(mapper.writeValueAsBytes(iterator.next()));
+                    outputStream.write('\n');
+                }
+            }
+        };
+    }
+
     @DeleteMapping("/cluster/{clusterName}/provider/{cloudProvider}/region/{region}")
     public void deleteCluster(@PathVariable String clusterName, @PathVariable String region, @PathVariable String cloudProvider) {
-        try {
-            String clusterDir = Util.initializeClusterDir(CloudProvider.valueOf(cloudProvider), clusterName, region);
-            Cluster cluster = clusterRepository.findByCloudProviderAndClusterNameAndRegion(CloudProvider.valueOf(cloudProvider.toUpperCase()), clusterName, region);
-            if(cluster == null){
-                throw new InternalServiceException("Cluster not found");
-            }
-            new Thread(() -> {
-                try {
-                    updateClusterStatus(cluster, ClusterStatus.PLANING_DELETE);
-                    if (Util.runTerraformCommand("terraform plan -destroy", clusterDir) != 0) {
-                        updateClusterStatus(cluster, ClusterStatus.ERROR);
-                        throw new InternalServiceException("terraform plan failed");
-                    }
-                    updateClusterStatus(cluster, ClusterStatus.DELETING);
-                    if (Util.runTerraformCommand("terraform apply -destroy -auto-approve -input=false", clusterDir) != 0) {
-                        updateClusterStatus(cluster, ClusterStatus.ERROR);
-                        throw new InternalServiceException("terraform destroy failed");
-                    }
-                    updateClusterStatus(cluster, ClusterStatus.DELETED);
-                    deleteDirectoryAndDBTables(clusterDir, cluster);
-                } catch (Exception e) {
-                    Thread.currentThread().interrupt();
-                    throw new InternalServiceException(e.getMessage());
-                }
+        Cluster cluster = clusterRepository.findByCloudProviderAndClusterNameAndRegion(CloudProvider.valueOf(cloudProvider.toUpperCase()), clusterName, region);
+        if(cluster == null){
+            throw new InternalServiceException("Cluster not found");
+        }
+        jobService.enqueue(JobType.DELETE, cluster);
 
-            }).start();
-        } catch (Exception e) {
-            throw new InternalServiceException("Cluster deletion error" + e.getMessage());
+    }
+
+    /**
+     * Returns all terraform outputs of a cluster as read from its state, the values of sensitive outputs are masked
+     */
+    @GetMapping("/cluster/{clusterName}/provider/{cloudProvider}/region/{region}/outputs")
+    public Map<String, JsonNode> getClusterOutputs(@PathVariable String clusterName, @PathVariable String region, @PathVariable String cloudProvider) {
+        Cluster cluster = clusterRepository.findByCloudProviderAndClusterNameAndRegion(CloudProvider.valueOf(cloudProvider.toUpperCase()), clusterName, region);
+        if (cluster == null) {
+            throw new ResourceNotFoundException("Cluster not found");
         }
+        return outputReader.getOutputs(cluster);
+    }
+
+    /**
+     * Returns the jobs of a cluster, the newest first
+     */
+    @GetMapping("/cluster/{clusterName}/provider/{cloudProvider}/region/{region}/jobs")
+    public List<ClusterJob> getClusterJobs(@PathVariable String clusterName, @PathVariable String region, @PathVariable String cloudProvider) {
+        return jobService.getJobs(new ClusterKey(CloudProvider.valueOf(cloudProvider.toUpperCase()), region, clusterName));
+    }
 
+    /**
+     * Returns a job with its status, owner and lease
+     */
+    @GetMapping("/jobs/{jobId}")
+    public ClusterJob getJob(@PathVariable String jobId) {
+        return jobService.getJob(jobId);
+    }
+
+    /**
+     * Cancels a job. A queued job is cancelled at once, a running job is interrupted by the replica running it and
+     * finishes as CANCELLED with its cluster in status CANCELLED.
+     */
+    @PostMapping("/jobs/{jobId}/cancel")
+    public ClusterJob cancelJob(@PathVariable String jobId) {
+        return jobService.cancel(jobId);
+    }
+
+    /**
+     * Streams the terraform output of the running or the last operation of a cluster as Server-Sent Events.
+     * The request is redirected to the replica that runs or ran the operation.
+     */
+    @GetMapping(value = "/cluster/{clusterName}/provider/{cloudProvider}/region/{region}/logs/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamClusterLogs(@PathVariable String clusterName, @PathVariable String region, @PathVariable String cloudProvider) {
+        ClusterKey clusterKey = new ClusterKey(CloudProvider.valueOf(cloudProvider.toUpperCase()), region, clusterName);
+        replicaRouter.redirectToOwner(clusterKey);
+        return outputBroadcaster.subscribe(clusterKey);
+    }
+
+    /**
+     * Returns the load of the cluster operation queue
+     */
+    @GetMapping("/operations/queue")
+    public QueueStatusDTO getOperationQueue() {
+        return operationExecutor.getQueueStatus();
+    }
+
+    /**
+     * Returns the size and the hit rate of the shared terraform plugin cache
+     */
+    @GetMapping("/terraform/plugin-cache")
+    public PluginCacheStatusDTO getPluginCacheStatus() {
+        return pluginCache.getStatus();
+    }
+
+    /**
+     * Returns the resource budget of the terraform processes, the reservations and the estimated cost of every operation type
+     */
+    @GetMapping("/terraform/admission")
+    public AdmissionStatusDTO getAdmissionStatus() {
+        return terraformAdmission.getStatus();
     }
 
     @GetMapping("/access-token/cluster/{clusterName}/provider/{cloudProvider}/region/{region}")
     public AccessToken getConnectionToken(@PathVariable String clusterName, @PathVariable String region, @PathVariable String cloudProvider) {
-        Cluster cluster = clusterRepository.findByCloudProviderAndClusterNameAndRegion(CloudProvider.valueOf(cloudProvider.toUpperCase()), clusterName, region);
-        AccessToken token = accessTokenRepository.findByUid(cluster.getAccessTokenId());
-
-        if (token != null) {
-            if (token.getExpiration().isAfter(LocalDateTime.now())) {
-                return token;
-            } else {
-                //delete expired token
-                accessTokenRepository.delete(token);
-            }
+        return accessTokenService.getToken(CloudProvider.valueOf(cloudProvider.toUpperCase()), clusterName, region);
+    }
+
+    private void validateBatch(List<ClusterDTO> clusterDTOs) {
+        if (clusterDTOs == null || clusterDTOs.isEmpty()) {
+            throw new PayloadNotValidException("At least one cluster is required");
         }
-        try {
-            switch (CloudProvider.valueOf(cloudProvider.toUpperCase())) {
-                case AWS -> {
-                    Credential credential = credentialRepository.findByUid(cluster.getCredentialId());
-                    Util.setCredentialsEnvironmentVariables(cluster.getCloudProvider(), credential);
-                    String output = Util.runCmdCommandAndGetOutput("aws eks get-token --profile default --output json --cluster-name " + clusterName + " --region " + region);
-                    TokenDTO tokenDTO = mapper.readValue(output.trim(), TokenDTO.class);
-                    Map<String, String> statusNode = tokenDTO.getStatus();
-                    return createAndSaveAWSAccessToken(statusNode, cluster);
-                }
-                case AZURE -> throw new InternalServiceException("Azure cloud ist not yet supported");
-                case GOOGLE -> throw new InternalServiceException("GOOGLE cloud ist not yet supported");
-                default -> throw new InternalServiceException("Unexpected value: " + cloudProvider);
+        if (clusterDTOs.size() > batchRegistry.getMaximumSize()) {
+            throw new PayloadNotValidException("A batch can contain at most " + batchRegistry.getMaximumSize() + " clusters");
+        }
+        Set<ClusterKey> clusterKeys = new HashSet<>();
+        for (ClusterDTO clusterDTO : clusterDTOs) {
+            Validator.validateCluster(clusterDTO);
+            if (!clusterKeys.add(new ClusterKey(clusterDTO.getCloudProvider(), clusterDTO.getRegion(), clusterDTO.getClusterName()))) {
+                throw new PayloadNotValidException("Cluster " + clusterDTO.getClusterName() + " is contained more than once");
             }
-
-        } catch (IOException | InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new InternalServiceException("get connection token failed \n" + e.getMessage());
         }
     }
 
-    private void updateClusterStatus(Cluster cluster, ClusterStatus clusterStatus) {
-        cluster.setStatus(clusterStatus);
-        clusterRepository.save(cluster);
+    private ClusterFilter createClusterFilter(String cloudProvider, String status, String region) {
+        try {
+            return new ClusterFilter(cloudProvider != null ? CloudProvider.valueOf(cloudProvider.toUpperCase()) : null,
+                    status != null ? ClusterStatus.valueOf(status.toUpperCase()) : null, region);
+        } catch (IllegalArgumentException e) {
+            throw new PayloadNotValidException("Unknown cloud provider or status");
+        }
     }
 
-    private Cluster createDBTables(ClusterDTO clusterDTO) {
+    private Cluster createDBTables(ClusterDTO clusterDTO, String templateCommitId) {
         Credential credential = new Credential();
         credential.setUid(UUID.randomUUID().toString());
         credential.setName(clusterDTO.getClusterName() + "_credential");
@@ -211,107 +358,24 @@ public class ServerController {
         cluster.setMaximumNodeCount(clusterDTO.getMaximumNodeCount());
         cluster.setMinimumNodeCount(clusterDTO.getMinimumNodeCount());
         cluster.setDesiredNodeCount(clusterDTO.getDesiredNodeCount());
+        cluster.setTemplateCommitId(templateCommitId);
+        cluster.setCreated(LocalDateTime.now());
         return clusterRepository.save(cluster);
     }
 
-    private void executeTerraformCreationCommands(Cluster cluster, String clusterDir, boolean isUpdate, NodeGroupDTO nodeGroup) {
+    /**
+     * Removes the database entries of a cluster whose creation could not be queued,
+     * so that the request can be retried later. The directory and the state of the cluster key are left alone,
+     * they may belong to the operation of another request for the same cluster.
+     */
+    private void removeRejectedCluster(Cluster cluster) {
         try {
-            if(isUpdate){
-                updateClusterStatus(cluster, ClusterStatus.INITIALIZING);
-                if (Util.runTerraformCommand("terraform refresh", clusterDir) != 0) {
-                    updateClusterStatus(cluster, ClusterStatus.ERROR);
-                    throw new InternalServiceException("terraform refresh failed");
-                }
-            }else{
-                if (Util.runTerraformCommand("terraform init", clusterDir) != 0) {
-                    updateClusterStatus(cluster, ClusterStatus.ERROR);
-                    throw new InternalServiceException("terraform init failed");
-                }
-            }
-            updateClusterStatus(cluster, ClusterStatus.PLANING);
-            Util.pause(2000);
-            if (Util.runTerraformCommand("terraform plan", clusterDir) != 0) {
-                updateClusterStatus(cluster, ClusterStatus.ERROR);
-                throw new InternalServiceException("terraform plan failed");
-            }
-            updateClusterStatus(cluster, ClusterStatus.CREATING);
-            Util.pause(2000);
-            if (Util.runTerraformCommand("terraform apply -auto-approve", clusterDir) != 0) {
-                updateClusterStatus(cluster, ClusterStatus.ERROR);
-                throw new InternalServiceException("terraform apply failed");
-            }
-            updateClusterStatus(cluster, ClusterStatus.CREATED);
-            updateClusterOutputData(cluster, clusterDir);
-            if(isUpdate){
-                cluster.setMaximumNodeCount(nodeGroup.getMaximumNodeCount());
-                cluster.setMinimumNodeCount(nodeGroup.getMinimumNodeCount());
-                cluster.setDesiredNodeCount(nodeGroup.getDesiredNodeCount());
-                clusterRepository.save(cluster);
+            if (cluster != null) {
+                credentialRepository.deleteById(cluster.getCredentialId());
+                clusterRepository.delete(cluster);
             }
         } catch (Exception e) {
-            updateClusterStatus(cluster, ClusterStatus.ERROR);
-            Thread.currentThread().interrupt();
-            throw new InternalServiceException(e.getMessage());
+            throw new InternalServiceException("Cluster cleanup error" + e.getMessage());
         }
     }
-
-    private void updateClusterOutputData(Cluster cluster, String clusterDir) {
-        try {
-            String jsonOutput = Util.runTerraformCommandAndGetOutput("terraform output -json", clusterDir);
-            OutputDTO outputDTO = mapper.readValue(jsonOutput.trim(), OutputDTO.class);
-            cluster.setApiServerEndpoint(outputDTO.getCluster_endpoint().getValue());
-            cluster.setCaCertificate(outputDTO.getCluster_ca_certificate().getValue());
-            cluster.setHostUrl(outputDTO.getIngress_hostname().getValue());
-            clusterRepository.save(cluster);
-        } catch (Exception e) {
-            Thread.currentThread().interrupt();
-            updateClusterStatus(cluster, ClusterStatus.ERROR);
-            throw new InternalServiceException(e.getMessage());
-        }
-
-
-    }
-
-    private void deleteDirectoryAndDBTables(String terraformDir, Cluster cluster) throws IOException {
-        FileUtils.deleteDirectory(new File(terraformDir));
-        if (accessTokenRepository.findByUid(cluster.getAccessTokenId()) != null) {
-            accessTokenRepository.delete(accessTokenRepository.findByUid(cluster.getAccessTokenId()));
-        }
-        if (credentialRepository.findByUid(cluster.getCredentialId()) != null) {
-            credentialRepository.delete(credentialRepository.findByUid(cluster.getCredentialId()));
-        }
-        clusterRepository.delete(cluster);
-    }
-
-    private AccessToken createAndSaveAWSAccessToken(Map<String, String> statusNode, Cluster cluster) {
-        AccessToken accessToken = new AccessToken();
-        accessToken.setUid(UUID.randomUUID().toString());
-        accessToken.setDescription("Access token for " + cluster.getClusterName());
-        accessToken.setToken(statusNode.get("token"));
-        DateTimeFormatter formatter = DateTimeFormatter.ISO_INSTANT.withZone(ZoneId.systemDefault());
-        ZonedDateTime zonedDateTime = ZonedDateTime.parse(statusNode.get("expirationTimestamp"), formatter);
-        accessToken.setExpiration(zonedDateTime.toLocalDateTime());
-        AccessToken savedToken = accessTokenRepository.save(accessToken);
-        cluster.setAccessTokenId(savedToken.getUid());
-        clusterRepository.save(cluster);
-        return savedToken;
-    }
-
-    private ClusterDTO createClusterDTO(Cluster cluster, NodeGroupDTO nodeGroupDTO) {
-        Credential credential = credentialRepository.findByUid(cluster.getCredentialId());
-        ClusterDTO clusterDTO = new ClusterDTO();
-        clusterDTO.setClusterName(cluster.getClusterName());
-        clusterDTO.setRegion(cluster.getRegion());
-        clusterDTO.setCloudProvider(cluster.getCloudProvider());
-        clusterDTO.setAccessKey(credential.getAccessKey());
-        clusterDTO.setAmiType(cluster.getAmiType());
-        clusterDTO.setInstanceType(cluster.getInstanceType());
-        clusterDTO.setSecretKey(credential.getSecretKey());
-        clusterDTO.setKubernetesVersion(cluster.getKubernetesVersion());
-        clusterDTO.setDesiredNodeCount(nodeGroupDTO.getDesiredNodeCount());
-        clusterDTO.setMaximumNodeCount(nodeGroupDTO.getMaximumNodeCount());
-        clusterDTO.setMinimumNodeCount(nodeGroupDTO.getMinimumNodeCount());
-        return clusterDTO;
-    }
-
 }
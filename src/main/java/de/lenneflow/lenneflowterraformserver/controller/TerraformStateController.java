@@ -0,0 +1,64 @@
+package de.lenneflow.lenneflowterraformserver.controller;
+
+import de.lenneflow.lenneflowterraformserver.enums.CloudProvider;
+import de.lenneflow.lenneflowterraformserver.model.ClusterKey;
+import de.lenneflow.lenneflowterraformserver.service.TerraformStateStore;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Implements the terraform http backend for the cluster workspaces.
+ * See <a href="https://developer.hashicorp.com/terraform/language/backend/http">http backend</a>
+ */
+@RestController
+@RequestMapping("/api/terraform/state/{cloudProvider}/{region}/{clusterName}")
+public class TerraformStateController {
+
+    private final TerraformStateStore stateStore;
+
+    public TerraformStateController(TerraformStateStore stateStore) {
+        this.stateStore = stateStore;
+    }
+
+    @GetMapping
+    public ResponseEntity<byte[]> getState(@PathVariable String cloudProvider, @PathVariable String region, @PathVariable String clusterName) {
+        byte[] state = stateStore.getState(getStateName(cloudProvider, region, clusterName));
+        if (state == null) {
+            return ResponseEntity.noContent().build();
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(state);
+    }
+
+    @PostMapping
+    public void saveState(@PathVariable String cloudProvider, @PathVariable String region, @PathVariable String clusterName,
+                          @RequestParam(name = "ID", required = false) String lockId, @RequestBody byte[] state) {
+        stateStore.saveState(getStateName(cloudProvider, region, clusterName), state, lockId);
+    }
+
+    @DeleteMapping
+    public void deleteState(@PathVariable String cloudProvider, @PathVariable String region, @PathVariable String clusterName) {
+        stateStore.deleteState(getStateName(cloudProvider, region, clusterName));
+    }
+
+    /**
+     * Handles the LOCK and UNLOCK requests of terraform, they are not mapped by the method specific annotations
+     */
+    @RequestMapping
+    public void lockState(HttpServletRequest request, @PathVariable String cloudProvider, @PathVariable String region, @PathVariable String clusterName,
+                          @RequestBody String lockInfo) {
+        String stateName = getStateName(cloudProvider, region, clusterName);
+        switch (request.getMethod()) {
+            case "LOCK" -> stateStore.lock(stateName, lockInfo);
+            case "UNLOCK" -> stateStore.unlock(stateName, lockInfo);
+            default -> throw new ResponseStatusException(HttpStatus.METHOD_NOT_ALLOWED);
+        }
+    }
+
+    private String getStateName(String cloudProvider, String region, String clusterName) {
+        return new ClusterKey(CloudProvider.valueOf(cloudProvider.toUpperCase()), region, clusterName).toString();
+    }
+}
@@ -0,0 +1,34 @@
+package de.lenneflow.lenneflowterraformserver.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Map;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+public class AdmissionStatusDTO {
+
+    private long memoryBudget;
+
+    private double cpuBudget;
+
+    private long reservedMemory;
+
+    private double reservedCpu;
+
+    private int runningProcesses;
+
+    private int waitingProcesses;
+
+    private int parallelism;
+
+    private Map<String, Long> estimatedMemory;
+
+    private Map<String, Double> estimatedCpu;
+
+}
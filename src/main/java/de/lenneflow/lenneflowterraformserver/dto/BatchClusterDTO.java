@@ -0,0 +1,26 @@
+package de.lenneflow.lenneflowterraformserver.dto;
+
+import de.lenneflow.lenneflowterraformserver.enums.CloudProvider;
+import de.lenneflow.lenneflowterraformserver.enums.ClusterStatus;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+public class BatchClusterDTO {
+
+    private String clusterName;
+
+    private String region;
+
+    private CloudProvider cloudProvider;
+
+    private ClusterStatus status;
+
+    private String message;
+
+}
@@ -0,0 +1,40 @@
+package de.lenneflow.lenneflowterraformserver.dto;
+
+import de.lenneflow.lenneflowterraformserver.enums.BatchStatus;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+public class BatchDTO {
+
+    private String batchId;
+
+    private BatchStatus status;
+
+    private int parallelism;
+
+    private int total;
+
+    private int pending;
+
+    private int running;
+
+    private int succeeded;
+
+    private int failed;
+
+    private LocalDateTime created;
+
+    private LocalDateTime finished;
+
+    private List<BatchClusterDTO> clusters;
+
+}
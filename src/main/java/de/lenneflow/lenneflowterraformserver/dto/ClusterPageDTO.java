@@ -0,0 +1,21 @@
+package de.lenneflow.lenneflowterraformserver.dto;
+
+import de.lenneflow.lenneflowterraformserver.model.Cluster;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+public class ClusterPageDTO {
+
+    private List<Cluster> clusters;
+
+    private String nextCursor;
+
+}
@@ -0,0 +1,34 @@
+package de.lenneflow.lenneflowterraformserver.dto;
+
+import de.lenneflow.lenneflowterraformserver.model.ClusterDrift;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+public class DriftReportDTO {
+
+    private int total;
+
+    private int unchecked;
+
+    private int noDrift;
+
+    private int drifted;
+
+    private int failed;
+
+    private LocalDateTime oldestCheck;
+
+    private List<ClusterDrift> clusters;
+
+    private String nextCursor;
+
+}
@@ -0,0 +1,26 @@
+package de.lenneflow.lenneflowterraformserver.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+public class LogLinesDTO {
+
+    private String operationId;
+
+    private long firstLine;
+
+    private List<String> lines;
+
+    private long totalLines;
+
+    private boolean running;
+
+}
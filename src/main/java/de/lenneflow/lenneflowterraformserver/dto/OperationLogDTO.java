@@ -0,0 +1,30 @@
+package de.lenneflow.lenneflowterraformserver.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+public class OperationLogDTO {
+
+    private String operationId;
+
+    private boolean running;
+
+    private long sizeInBytes;
+
+    private long compressedSizeInBytes;
+
+    private long lines;
+
+    private LocalDateTime lastModified;
+
+    private String location;
+
+}
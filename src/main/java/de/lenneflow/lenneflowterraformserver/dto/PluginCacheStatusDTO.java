@@ -0,0 +1,24 @@
+package de.lenneflow.lenneflowterraformserver.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+public class PluginCacheStatusDTO {
+
+    private String directory;
+
+    private long sizeInBytes;
+
+    private long hits;
+
+    private long misses;
+
+    private double hitRate;
+
+}
@@ -0,0 +1,26 @@
+package de.lenneflow.lenneflowterraformserver.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+public class QueueStatusDTO {
+
+    private int maximumConcurrency;
+
+    private int activeOperations;
+
+    private int queuedOperations;
+
+    private int queueCapacity;
+
+    private long completedOperations;
+
+    private long rejectedOperations;
+
+}
@@ -1,5 +1,5 @@
 package de.lenneflow.lenneflowterraformserver.enums;
 
 public enum ClusterStatus {
-     NEW, INITIALIZING, PLANING, PLANING_DELETE, CREATING, CREATED, ERROR, DELETING, DELETED;
+     NEW, INITIALIZING, PLANING, PLANING_DELETE, CREATING, CREATED, ERROR, DELETING, DELETED, CANCELLED;
 }
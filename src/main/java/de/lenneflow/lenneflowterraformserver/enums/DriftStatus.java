@@ -0,0 +1,5 @@
+package de.lenneflow.lenneflowterraformserver.enums;
+
+public enum DriftStatus {
+     UNCHECKED, NO_DRIFT, DRIFTED, FAILED;
+}
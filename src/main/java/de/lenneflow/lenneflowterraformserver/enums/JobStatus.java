@@ -0,0 +1,5 @@
+package de.lenneflow.lenneflowterraformserver.enums;
+
+public enum JobStatus {
+     QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED;
+}
@@ -1,6 +1,8 @@
 package de.lenneflow.lenneflowterraformserver.exception;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -18,6 +20,27 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(ex.getMessage(), HttpStatus.NOT_FOUND);
     }
 
+    @ExceptionHandler(OperationRejectedException.class)
+    public ResponseEntity<String> handleOperationRejectedException(OperationRejectedException ex) {
+        return new ResponseEntity<>(ex.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    @ExceptionHandler(OperationInProgressException.class)
+    public ResponseEntity<String> handleOperationInProgressException(OperationInProgressException ex) {
+        return new ResponseEntity<>(ex.getMessage(), HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler(StateLockedException.class)
+    public ResponseEntity<String> handleStateLockedException(StateLockedException ex) {
+        // terraform shows the lock info of the holder from the response body
+        return ResponseEntity.status(HttpStatus.LOCKED).contentType(MediaType.APPLICATION_JSON).body(ex.getMessage());
+    }
+
+    @ExceptionHandler(OperationOnOtherReplicaException.class)
+    public ResponseEntity<String> handleOperationOnOtherReplicaException(OperationOnOtherReplicaException ex) {
+        return ResponseEntity.status(HttpStatus.TEMPORARY_REDIRECT).header(HttpHeaders.LOCATION, ex.getLocation()).body(ex.getMessage());
+    }
+
     @ExceptionHandler(InternalServiceException.class)
     public ResponseEntity<String> handleInternalServiceException(Exception ex) {
         return new ResponseEntity<>("An error occurred: " + ex.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
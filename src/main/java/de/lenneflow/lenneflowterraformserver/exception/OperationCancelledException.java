@@ -0,0 +1,13 @@
+package de.lenneflow.lenneflowterraformserver.exception;
+
+import java.io.Serial;
+
+public class OperationCancelledException extends RuntimeException {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    public OperationCancelledException(String msg) {
+        super(msg);
+    }
+}
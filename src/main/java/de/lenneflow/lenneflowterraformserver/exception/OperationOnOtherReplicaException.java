@@ -0,0 +1,23 @@
+package de.lenneflow.lenneflowterraformserver.exception;
+
+import java.io.Serial;
+
+/**
+ * Thrown if the output of an operation is kept by another replica. The request is redirected to the location.
+ */
+public class OperationOnOtherReplicaException extends RuntimeException {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final String location;
+
+    public OperationOnOtherReplicaException(String location) {
+        super("The operation is served by " + location);
+        this.location = location;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+}
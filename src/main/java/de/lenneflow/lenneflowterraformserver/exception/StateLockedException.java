@@ -0,0 +1,16 @@
+package de.lenneflow.lenneflowterraformserver.exception;
+
+import java.io.Serial;
+
+/**
+ * Thrown if a terraform state is locked by another lock. The message is the lock info of the holder.
+ */
+public class StateLockedException extends RuntimeException {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    public StateLockedException(String lockInfo) {
+        super(lockInfo);
+    }
+}
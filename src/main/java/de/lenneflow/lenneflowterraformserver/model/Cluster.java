@@ -7,13 +7,19 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.time.LocalDateTime;
+
 @AllArgsConstructor
 @NoArgsConstructor
 @Getter
 @Setter
 @Document
+@CompoundIndex(name = "listing", def = "{'cloudProvider': 1, 'status': 1, 'region': 1, '_id': 1}")
+@CompoundIndex(name = "status", def = "{'status': 1, '_id': 1}")
 public class Cluster {
 
     @Id
@@ -49,4 +55,13 @@ public class Cluster {
 
     private String accessTokenId;
 
+    private String templateCommitId;
+
+    private LocalDateTime created;
+
+    private LocalDateTime leaseExpiration;
+
+    @Version
+    private Long version;
+
 }
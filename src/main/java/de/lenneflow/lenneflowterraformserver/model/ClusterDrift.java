@@ -0,0 +1,56 @@
+package de.lenneflow.lenneflowterraformserver.model;
+
+import de.lenneflow.lenneflowterraformserver.enums.CloudProvider;
+import de.lenneflow.lenneflowterraformserver.enums.DriftStatus;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * The result of the last drift check of a created cluster. It is kept apart from the cluster, so the checks never
+ * change the version of the cluster that its operations update.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Document
+@CompoundIndex(name = "cluster", def = "{'cloudProvider': 1, 'region': 1, 'clusterName': 1}")
+@CompoundIndex(name = "status", def = "{'status': 1, '_id': 1}")
+public class ClusterDrift {
+
+    @Id
+    private String clusterUid;
+
+    private CloudProvider cloudProvider;
+
+    private String region;
+
+    private String clusterName;
+
+    private DriftStatus status;
+
+    private int toAdd;
+
+    private int toChange;
+
+    private int toDestroy;
+
+    private String summary;
+
+    @Indexed
+    private LocalDateTime checked;
+
+    private int cleanChecks;
+
+    @Indexed
+    private LocalDateTime nextCheck;
+
+}
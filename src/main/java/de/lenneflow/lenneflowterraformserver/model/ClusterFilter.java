@@ -0,0 +1,10 @@
+package de.lenneflow.lenneflowterraformserver.model;
+
+import de.lenneflow.lenneflowterraformserver.enums.CloudProvider;
+import de.lenneflow.lenneflowterraformserver.enums.ClusterStatus;
+
+/**
+ * The optional filters of a cluster listing. A null value matches every cluster.
+ */
+public record ClusterFilter(CloudProvider cloudProvider, ClusterStatus status, String region) {
+}
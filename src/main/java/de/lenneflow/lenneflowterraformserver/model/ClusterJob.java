@@ -0,0 +1,79 @@
+package de.lenneflow.lenneflowterraformserver.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import de.lenneflow.lenneflowterraformserver.enums.CloudProvider;
+import de.lenneflow.lenneflowterraformserver.enums.JobStatus;
+import de.lenneflow.lenneflowterraformserver.enums.JobType;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * A terraform operation of a cluster. The replicas claim queued jobs and jobs whose lease expired, the lease of
+ * a running job is renewed by its owner as long as the job runs.
+ * The activeClusterKey is only set while the job is queued or running, its unique index allows only one active
+ * job per cluster across all replicas. Finished jobs are removed a week after they finished.
+ * A cancel of a running job is requested through cancelRequested, the owner of the job stops it.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Document
+@CompoundIndex(name = "claim", def = "{'status': 1, 'created': 1}")
+@CompoundIndex(name = "cluster", def = "{'cloudProvider': 1, 'region': 1, 'clusterName': 1, 'created': -1}")
+public class ClusterJob {
+
+    @Id
+    private String uid;
+
+    private JobType type;
+
+    private JobStatus status;
+
+    private String clusterUid;
+
+    private CloudProvider cloudProvider;
+
+    private String region;
+
+    private String clusterName;
+
+    @Indexed(unique = true, sparse = true)
+    private String activeClusterKey;
+
+    private int desiredNodeCount;
+
+    private int minimumNodeCount;
+
+    private int maximumNodeCount;
+
+    private String owner;
+
+    private String ownerAddress;
+
+    private LocalDateTime leaseExpiration;
+
+    private int attempts;
+
+    private LocalDateTime cancelRequested;
+
+    private String error;
+
+    private LocalDateTime created;
+
+    @Indexed(expireAfter = "7d")
+    private LocalDateTime finished;
+
+    @JsonIgnore
+    public ClusterKey getClusterKey() {
+        return new ClusterKey(cloudProvider, region, clusterName);
+    }
+}
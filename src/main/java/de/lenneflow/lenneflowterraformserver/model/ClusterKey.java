@@ -0,0 +1,18 @@
+package de.lenneflow.lenneflowterraformserver.model;
+
+import de.lenneflow.lenneflowterraformserver.enums.CloudProvider;
+
+/**
+ * Identifies a cluster by its cloud provider, region and name.
+ */
+public record ClusterKey(CloudProvider cloudProvider, String region, String clusterName) {
+
+    public static ClusterKey of(Cluster cluster) {
+        return new ClusterKey(cluster.getCloudProvider(), cluster.getRegion(), cluster.getClusterName());
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(cloudProvider).toLowerCase() + "/" + region + "/" + clusterName;
+    }
+}
@@ -0,0 +1,28 @@
+package de.lenneflow.lenneflowterraformserver.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Document
+public class StateLock {
+
+    @Id
+    private String stateName;
+
+    private String lockId;
+
+    private String info;
+
+    private LocalDateTime created;
+
+}
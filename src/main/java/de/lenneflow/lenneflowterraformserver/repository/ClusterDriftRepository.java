@@ -0,0 +1,12 @@
+package de.lenneflow.lenneflowterraformserver.repository;
+
+
+import de.lenneflow.lenneflowterraformserver.enums.CloudProvider;
+import de.lenneflow.lenneflowterraformserver.model.ClusterDrift;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface ClusterDriftRepository extends MongoRepository<ClusterDrift, String>, ClusterDriftRepositoryCustom {
+
+    ClusterDrift findByCloudProviderAndRegionAndClusterName(CloudProvider cloudProvider, String region, String clusterName);
+
+}
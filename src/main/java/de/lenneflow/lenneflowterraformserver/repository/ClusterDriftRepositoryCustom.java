@@ -0,0 +1,49 @@
+package de.lenneflow.lenneflowterraformserver.repository;
+
+
+import de.lenneflow.lenneflowterraformserver.enums.DriftStatus;
+import de.lenneflow.lenneflowterraformserver.model.ClusterDrift;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The scheduling of the drift checks. A replica claims a due check by moving its next check behind the check timeout,
+ * so the other replicas skip it while it runs and take it again if the replica dies during the check.
+ * The report pages are ordered by cluster uid, so a page continues after the uid of the last check of the previous page.
+ */
+public interface ClusterDriftRepositoryCustom {
+
+    /**
+     * Claims the check that is due the longest
+     * @param checkTimeout the time after which the check is due again if it was not finished
+     * @return the claimed check or null if no check is due
+     */
+    ClusterDrift claimDue(Duration checkTimeout);
+
+    /**
+     * @return the uids of all clusters that have a drift check
+     */
+    List<String> findAllClusterUids();
+
+    /**
+     * @return the number of checks per status, counted by the database
+     */
+    Map<DriftStatus, Long> countByStatus();
+
+    /**
+     * @return the time of the oldest finished check or null if no check is finished
+     */
+    LocalDateTime findOldestCheck();
+
+    /**
+     * Returns a page of the checks
+     * @param status the status of the checks or null for all checks
+     * @param cursor the uid of the last cluster of the previous page or null for the first page
+     * @param limit the maximum number of checks
+     * @return the checks ordered by cluster uid
+     */
+    List<ClusterDrift> findPage(DriftStatus status, String cursor, int limit);
+}
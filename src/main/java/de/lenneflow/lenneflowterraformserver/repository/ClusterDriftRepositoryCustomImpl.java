@@ -0,0 +1,78 @@
+package de.lenneflow.lenneflowterraformserver.repository;
+
+
+import de.lenneflow.lenneflowterraformserver.enums.DriftStatus;
+import de.lenneflow.lenneflowterraformserver.model.ClusterDrift;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+public class ClusterDriftRepositoryCustomImpl implements ClusterDriftRepositoryCustom {
+
+    private static final String ID = "_id";
+    private static final String NEXT_CHECK = "nextCheck";
+    private static final String CHECKED = "checked";
+    private static final String STATUS = "status";
+
+    private final MongoTemplate mongoTemplate;
+
+    public ClusterDriftRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public ClusterDrift claimDue(Duration checkTimeout) {
+        LocalDateTime now = LocalDateTime.now();
+        Query query = Query.query(Criteria.where(NEXT_CHECK).lte(now)).with(Sort.by(NEXT_CHECK));
+        return mongoTemplate.findAndModify(query, new Update().set(NEXT_CHECK, now.plus(checkTimeout)),
+                FindAndModifyOptions.options().returnNew(true), ClusterDrift.class);
+    }
+
+    @Override
+    public List<String> findAllClusterUids() {
+        return mongoTemplate.findDistinct(new Query(), ID, ClusterDrift.class, String.class);
+    }
+
+    @Override
+    public Map<DriftStatus, Long> countByStatus() {
+        Aggregation aggregation = Aggregation.newAggregation(Aggregation.group(STATUS).count().as("count"));
+        Map<DriftStatus, Long> counts = new EnumMap<>(DriftStatus.class);
+        for (Document group : mongoTemplate.aggregate(aggregation, ClusterDrift.class, Document.class)) {
+            if (group.getString(ID) != null) {
+                counts.put(DriftStatus.valueOf(group.getString(ID)), ((Number) group.get("count")).longValue());
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public LocalDateTime findOldestCheck() {
+        Query query = Query.query(Criteria.where(CHECKED).ne(null)).with(Sort.by(CHECKED)).limit(1);
+        query.fields().include(CHECKED);
+        ClusterDrift oldest = mongoTemplate.findOne(query, ClusterDrift.class);
+        return oldest != null ? oldest.getChecked() : null;
+    }
+
+    @Override
+    public List<ClusterDrift> findPage(DriftStatus status, String cursor, int limit) {
+        Query query = new Query();
+        if (status != null) {
+            query.addCriteria(Criteria.where(STATUS).is(status));
+        }
+        if (cursor != null) {
+            query.addCriteria(Criteria.where(ID).gt(cursor));
+        }
+        return mongoTemplate.find(query.with(Sort.by(ID)).limit(limit), ClusterDrift.class);
+    }
+}
@@ -0,0 +1,22 @@
+package de.lenneflow.lenneflowterraformserver.repository;
+
+
+import de.lenneflow.lenneflowterraformserver.enums.CloudProvider;
+import de.lenneflow.lenneflowterraformserver.model.ClusterJob;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.List;
+
+public interface ClusterJobRepository extends MongoRepository<ClusterJob, String>, ClusterJobRepositoryCustom {
+
+    ClusterJob findByUid(String uid);
+
+    List<ClusterJob> findByCloudProviderAndRegionAndClusterNameOrderByCreatedDesc(CloudProvider cloudProvider, String region, String clusterName);
+
+    ClusterJob findFirstByCloudProviderAndRegionAndClusterNameOrderByCreatedDesc(CloudProvider cloudProvider, String region, String clusterName);
+
+    boolean existsByActiveClusterKey(String activeClusterKey);
+
+    ClusterJob findByActiveClusterKey(String activeClusterKey);
+
+}
@@ -0,0 +1,94 @@
+package de.lenneflow.lenneflowterraformserver.repository;
+
+
+import de.lenneflow.lenneflowterraformserver.enums.JobStatus;
+import de.lenneflow.lenneflowterraformserver.model.ClusterJob;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The lease handling of the cluster jobs. A replica owns a running job as long as the lease of the job is not
+ * expired, every state change of a running job is only applied for its current owner.
+ */
+public interface ClusterJobRepositoryCustom {
+
+    /**
+     * Claims the oldest queued job or the oldest running job whose lease expired, a job with a cancel request is not claimed
+     * @param owner the id of the claiming replica
+     * @param ownerAddress the address the claiming replica serves the output of the job on
+     * @param leaseDuration the duration of the lease
+     * @param maximumAttempts jobs that were already claimed this often are not claimed again
+     * @return the claimed job or null if there is no job to claim
+     */
+    ClusterJob claimNext(String owner, String ownerAddress, Duration leaseDuration, int maximumAttempts);
+
+    /**
+     * Extends the leases of running jobs
+     * @param owner the id of the replica running the jobs
+     * @param jobIds the uids of the jobs
+     * @param leaseDuration the duration of the lease from now on
+     * @return the uids of the jobs whose lease was not renewed because they are not owned by the replica anymore
+     */
+    List<String> renewLeases(String owner, Collection<String> jobIds, Duration leaseDuration);
+
+    /**
+     * @param jobId the uid of the job
+     * @param owner the id of the replica running the job
+     * @return true if the job is running and owned by the replica
+     */
+    boolean isOwned(String jobId, String owner);
+
+    /**
+     * Finishes a running job and frees its cluster for the next job
+     * @param jobId the uid of the job
+     * @param owner the id of the replica running the job
+     * @param status SUCCEEDED, FAILED or CANCELLED
+     * @param error the error message or null
+     * @return false if the job is not owned by the replica anymore
+     */
+    boolean finish(String jobId, String owner, JobStatus status, String error);
+
+    /**
+     * Puts a claimed job back into the queue, e.g. because the replica could not start it
+     * @param jobId the uid of the job
+     * @param owner the id of the replica that claimed the job
+     * @return false if the job is not owned by the replica anymore
+     */
+    boolean release(String jobId, String owner);
+
+    /**
+     * Fails the running jobs whose lease expired after their last allowed attempt
+     * @param maximumAttempts the maximum number of attempts of a job
+     * @return the number of failed jobs
+     */
+    long failAbandoned(int maximumAttempts);
+
+    /**
+     * Cancels a job that was not claimed yet
+     * @param jobId the uid of the job
+     * @return false if the job is not queued anymore
+     */
+    boolean cancelQueued(String jobId);
+
+    /**
+     * Requests the cancel of a running job from its owner
+     * @param jobId the uid of the job
+     * @return false if the job is not running anymore
+     */
+    boolean requestCancel(String jobId);
+
+    /**
+     * @param owner the id of the replica running the jobs
+     * @param jobIds the uids of the jobs
+     * @return the uids of the jobs with a cancel request
+     */
+    List<String> findCancelRequested(String owner, Collection<String> jobIds);
+
+    /**
+     * Cancels the running jobs with a cancel request whose lease expired, their owner stopped before it could cancel them
+     * @return the number of cancelled jobs
+     */
+    long cancelAbandoned();
+}
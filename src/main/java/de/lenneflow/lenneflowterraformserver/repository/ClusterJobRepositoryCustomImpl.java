@@ -0,0 +1,144 @@
+package de.lenneflow.lenneflowterraformserver.repository;
+
+
+import de.lenneflow.lenneflowterraformserver.enums.JobStatus;
+import de.lenneflow.lenneflowterraformserver.model.ClusterJob;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public class ClusterJobRepositoryCustomImpl implements ClusterJobRepositoryCustom {
+
+    private static final String ID = "_id";
+    private static final String STATUS = "status";
+    private static final String OWNER = "owner";
+    private static final String OWNER_ADDRESS = "ownerAddress";
+    private static final String LEASE_EXPIRATION = "leaseExpiration";
+    private static final String ATTEMPTS = "attempts";
+    private static final String ACTIVE_CLUSTER_KEY = "activeClusterKey";
+    private static final String CANCEL_REQUESTED = "cancelRequested";
+
+    private final MongoTemplate mongoTemplate;
+
+    public ClusterJobRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public ClusterJob claimNext(String owner, String ownerAddress, Duration leaseDuration, int maximumAttempts) {
+        LocalDateTime now = LocalDateTime.now();
+        Query query = Query.query(new Criteria().orOperator(
+                        Criteria.where(STATUS).is(JobStatus.QUEUED),
+                        Criteria.where(STATUS).is(JobStatus.RUNNING).and(LEASE_EXPIRATION).lt(now))
+                .and(ATTEMPTS).lt(maximumAttempts).and(CANCEL_REQUESTED).is(null)).with(Sort.by("created"));
+        Update update = new Update()
+                .set(STATUS, JobStatus.RUNNING)
+                .set(OWNER, owner)
+                .set(OWNER_ADDRESS, ownerAddress)
+                .set(LEASE_EXPIRATION, now.plus(leaseDuration))
+                .inc(ATTEMPTS, 1);
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), ClusterJob.class);
+    }
+
+    @Override
+    public List<String> renewLeases(String owner, Collection<String> jobIds, Duration leaseDuration) {
+        Query query = Query.query(Criteria.where(ID).in(jobIds).and(OWNER).is(owner).and(STATUS).is(JobStatus.RUNNING));
+        long renewed = mongoTemplate.updateMulti(query, new Update().set(LEASE_EXPIRATION, LocalDateTime.now().plus(leaseDuration)), ClusterJob.class)
+                .getModifiedCount();
+        if (renewed == jobIds.size()) {
+            return List.of();
+        }
+        List<String> owned = mongoTemplate.findDistinct(query, ID, ClusterJob.class, String.class);
+        return jobIds.stream().filter(jobId -> !owned.contains(jobId)).toList();
+    }
+
+    @Override
+    public boolean isOwned(String jobId, String owner) {
+        return mongoTemplate.exists(ownedBy(jobId, owner), ClusterJob.class);
+    }
+
+    @Override
+    public boolean finish(String jobId, String owner, JobStatus status, String error) {
+        Update update = new Update()
+                .set(STATUS, status)
+                .set("error", error)
+                .set("finished", LocalDateTime.now())
+                .unset(LEASE_EXPIRATION)
+                .unset(ACTIVE_CLUSTER_KEY);
+        return mongoTemplate.updateFirst(ownedBy(jobId, owner), update, ClusterJob.class).getModifiedCount() > 0;
+    }
+
+    @Override
+    public boolean release(String jobId, String owner) {
+        Update update = new Update()
+                .set(STATUS, JobStatus.QUEUED)
+                .unset(OWNER)
+                .unset(OWNER_ADDRESS)
+                .unset(LEASE_EXPIRATION)
+                .inc(ATTEMPTS, -1);
+        return mongoTemplate.updateFirst(ownedBy(jobId, owner), update, ClusterJob.class).getModifiedCount() > 0;
+    }
+
+    @Override
+    public long failAbandoned(int maximumAttempts) {
+        LocalDateTime now = LocalDateTime.now();
+        Query query = Query.query(Criteria.where(STATUS).is(JobStatus.RUNNING).and(LEASE_EXPIRATION).lt(now).and(ATTEMPTS).gte(maximumAttempts));
+        Update update = new Update()
+                .set(STATUS, JobStatus.FAILED)
+                .set("error", "The job was abandoned after " + maximumAttempts + " attempts")
+                .set("finished", now)
+                .unset(LEASE_EXPIRATION)
+                .unset(ACTIVE_CLUSTER_KEY);
+        return mongoTemplate.updateMulti(query, update, ClusterJob.class).getModifiedCount();
+    }
+
+    @Override
+    public boolean cancelQueued(String jobId) {
+        Query query = Query.query(Criteria.where(ID).is(jobId).and(STATUS).is(JobStatus.QUEUED));
+        LocalDateTime now = LocalDateTime.now();
+        Update update = new Update()
+                .set(STATUS, JobStatus.CANCELLED)
+                .set(CANCEL_REQUESTED, now)
+                .set("finished", now)
+                .unset(ACTIVE_CLUSTER_KEY);
+        return mongoTemplate.updateFirst(query, update, ClusterJob.class).getModifiedCount() > 0;
+    }
+
+    @Override
+    public boolean requestCancel(String jobId) {
+        Query query = Query.query(Criteria.where(ID).is(jobId).and(STATUS).is(JobStatus.RUNNING));
+        return mongoTemplate.updateFirst(query, new Update().set(CANCEL_REQUESTED, LocalDateTime.now()), ClusterJob.class).getModifiedCount() > 0;
+    }
+
+    @Override
+    public List<String> findCancelRequested(String owner, Collection<String> jobIds) {
+        Query query = Query.query(Criteria.where(ID).in(jobIds).and(OWNER).is(owner).and(STATUS).is(JobStatus.RUNNING).and(CANCEL_REQUESTED).ne(null));
+        query.fields().include(ID);
+        return mongoTemplate.find(query, ClusterJob.class).stream().map(ClusterJob::getUid).toList();
+    }
+
+    @Override
+    public long cancelAbandoned() {
+        LocalDateTime now = LocalDateTime.now();
+        Query query = Query.query(Criteria.where(STATUS).is(JobStatus.RUNNING).and(LEASE_EXPIRATION).lt(now).and(CANCEL_REQUESTED).ne(null));
+        Update update = new Update()
+                .set(STATUS, JobStatus.CANCELLED)
+                .set("error", "The job was cancelled")
+                .set("finished", now)
+                .unset(LEASE_EXPIRATION)
+                .unset(ACTIVE_CLUSTER_KEY);
+        return mongoTemplate.updateMulti(query, update, ClusterJob.class).getModifiedCount();
+    }
+
+    private Query ownedBy(String jobId, String owner) {
+        return Query.query(Criteria.where(ID).is(jobId).and(OWNER).is(owner).and(STATUS).is(JobStatus.RUNNING));
+    }
+}
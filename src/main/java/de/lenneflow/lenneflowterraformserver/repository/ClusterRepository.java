@@ -5,7 +5,7 @@ import de.lenneflow.lenneflowterraformserver.enums.CloudProvider;
 import de.lenneflow.lenneflowterraformserver.model.Cluster;
 import org.springframework.data.mongodb.repository.MongoRepository;
 
-public interface ClusterRepository extends MongoRepository<Cluster, String> {
+public interface ClusterRepository extends MongoRepository<Cluster, String>, ClusterRepositoryCustom {
 
     Cluster findByUid(String uuid);
 
@@ -0,0 +1,90 @@
+package de.lenneflow.lenneflowterraformserver.repository;
+
+
+import de.lenneflow.lenneflowterraformserver.enums.ClusterStatus;
+import de.lenneflow.lenneflowterraformserver.model.Cluster;
+import de.lenneflow.lenneflowterraformserver.model.ClusterFilter;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Partial updates of cluster documents. Only the changed fields are written. The updates of the status, the outputs
+ * and the node counts are only applied if the document still has the version of the given cluster, the version is
+ * then increased and copied to the given cluster together with the new values.
+ * The listings are ordered by uid, so a page continues after the uid of the last cluster of the previous page.
+ */
+public interface ClusterRepositoryCustom {
+
+    /**
+     * Sets the status of a cluster
+     * @param cluster the cluster with the version it was read with
+     * @param status the new status
+     * @throws org.springframework.dao.OptimisticLockingFailureException if the cluster was changed in the meantime
+     */
+    void updateStatus(Cluster cluster, ClusterStatus status);
+
+    /**
+     * Sets the terraform outputs of a cluster
+     * @param cluster the cluster with the version it was read with
+     * @param apiServerEndpoint the endpoint of the api server
+     * @param caCertificate the CA certificate of the cluster
+     * @param hostUrl the hostname of the ingress
+     * @throws org.springframework.dao.OptimisticLockingFailureException if the cluster was changed in the meantime
+     */
+    void updateOutputData(Cluster cluster, String apiServerEndpoint, String caCertificate, String hostUrl);
+
+    /**
+     * Sets the node counts of a cluster
+     * @param cluster the cluster with the version it was read with
+     * @param minimumNodeCount the minimum node count
+     * @param maximumNodeCount the maximum node count
+     * @param desiredNodeCount the desired node count
+     * @throws org.springframework.dao.OptimisticLockingFailureException if the cluster was changed in the meantime
+     */
+    void updateNodeCounts(Cluster cluster, int minimumNodeCount, int maximumNodeCount, int desiredNodeCount);
+
+    /**
+     * Sets the access token of a cluster. The access token is not part of the versioned state, so it is set
+     * whatever the version of the document is.
+     * @param uid the uid of the cluster
+     * @param accessTokenId the uid of the access token
+     */
+    void updateAccessTokenId(String uid, String accessTokenId);
+
+    /**
+     * Extends the lease of the clusters that are still NEW. A NEW cluster with a lease is waiting for its creation
+     * to be queued by the batch that holds the lease, it is not taken over by the reconciler until the lease expired.
+     * @param uids the uids of the clusters
+     * @param leaseDuration the duration of the lease from now
+     * @return the number of clusters whose lease was extended
+     */
+    long renewLeases(Collection<String> uids, Duration leaseDuration);
+
+    /**
+     * Returns a page of the clusters that match a filter
+     * @param filter the filter
+     * @param cursor the uid of the last cluster of the previous page or null for the first page
+     * @param limit the maximum number of clusters
+     * @return the clusters ordered by uid
+     */
+    List<Cluster> findPage(ClusterFilter filter, String cursor, int limit);
+
+    /**
+     * Returns all clusters that match a filter. The clusters are read from the database cursor while the stream
+     * is consumed, the stream has to be closed.
+     * @param filter the filter
+     * @return the clusters ordered by uid
+     */
+    Stream<Cluster> streamAll(ClusterFilter filter);
+
+    /**
+     * Returns all clusters that have one of the given statuses. The clusters are read from the database cursor
+     * while the stream is consumed, the stream has to be closed.
+     * @param statuses the statuses
+     * @return the clusters ordered by uid
+     */
+    Stream<Cluster> streamByStatus(Collection<ClusterStatus> statuses);
+}
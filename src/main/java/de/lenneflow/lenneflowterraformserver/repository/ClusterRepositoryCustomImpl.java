@@ -0,0 +1,120 @@
+package de.lenneflow.lenneflowterraformserver.repository;
+
+
+import de.lenneflow.lenneflowterraformserver.enums.ClusterStatus;
+import de.lenneflow.lenneflowterraformserver.model.Cluster;
+import de.lenneflow.lenneflowterraformserver.model.ClusterFilter;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class ClusterRepositoryCustomImpl implements ClusterRepositoryCustom {
+
+    private static final String ID = "_id";
+    private static final String VERSION = "version";
+    private static final int STREAM_BATCH_SIZE = 500;
+
+    private final MongoTemplate mongoTemplate;
+
+    public ClusterRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public void updateStatus(Cluster cluster, ClusterStatus status) {
+        updateVersioned(cluster, new Update().set("status", status));
+        cluster.setStatus(status);
+    }
+
+    @Override
+    public void updateOutputData(Cluster cluster, String apiServerEndpoint, String caCertificate, String hostUrl) {
+        updateVersioned(cluster, new Update()
+                .set("apiServerEndpoint", apiServerEndpoint)
+                .set("caCertificate", caCertificate)
+                .set("hostUrl", hostUrl));
+        cluster.setApiServerEndpoint(apiServerEndpoint);
+        cluster.setCaCertificate(caCertificate);
+        cluster.setHostUrl(hostUrl);
+    }
+
+    @Override
+    public void updateNodeCounts(Cluster cluster, int minimumNodeCount, int maximumNodeCount, int desiredNodeCount) {
+        updateVersioned(cluster, new Update()
+                .set("minimumNodeCount", minimumNodeCount)
+                .set("maximumNodeCount", maximumNodeCount)
+                .set("desiredNodeCount", desiredNodeCount));
+        cluster.setMinimumNodeCount(minimumNodeCount);
+        cluster.setMaximumNodeCount(maximumNodeCount);
+        cluster.setDesiredNodeCount(desiredNodeCount);
+    }
+
+    @Override
+    public void updateAccessTokenId(String uid, String accessTokenId) {
+        mongoTemplate.updateFirst(Query.query(Criteria.where(ID).is(uid)), new Update().set("accessTokenId", accessTokenId), Cluster.class);
+    }
+
+    @Override
+    public long renewLeases(Collection<String> uids, Duration leaseDuration) {
+        Query query = Query.query(Criteria.where(ID).in(uids).and("status").is(ClusterStatus.NEW));
+        return mongoTemplate.updateMulti(query, new Update().set("leaseExpiration", LocalDateTime.now().plus(leaseDuration)), Cluster.class)
+                .getModifiedCount();
+    }
+
+    @Override
+    public List<Cluster> findPage(ClusterFilter filter, String cursor, int limit) {
+        Query query = createQuery(filter);
+        if (cursor != null) {
+            query.addCriteria(Criteria.where(ID).gt(cursor));
+        }
+        return mongoTemplate.find(query.with(Sort.by(ID)).limit(limit), Cluster.class);
+    }
+
+    @Override
+    public Stream<Cluster> streamAll(ClusterFilter filter) {
+        return mongoTemplate.stream(createQuery(filter).with(Sort.by(ID)).cursorBatchSize(STREAM_BATCH_SIZE), Cluster.class);
+    }
+
+    @Override
+    public Stream<Cluster> streamByStatus(Collection<ClusterStatus> statuses) {
+        Query query = Query.query(Criteria.where("status").in(statuses)).with(Sort.by(ID)).cursorBatchSize(STREAM_BATCH_SIZE);
+        return mongoTemplate.stream(query, Cluster.class);
+    }
+
+    private Query createQuery(ClusterFilter filter) {
+        Query query = new Query();
+        if (filter.cloudProvider() != null) {
+            query.addCriteria(Criteria.where("cloudProvider").is(filter.cloudProvider()));
+        }
+        if (filter.status() != null) {
+            query.addCriteria(Criteria.where("status").is(filter.status()));
+        }
+        if (filter.region() != null) {
+            query.addCriteria(Criteria.where("region").is(filter.region()));
+        }
+        return query;
+    }
+
+    /**
+     * Applies an update if the document still has the version of the cluster and only reads back the new version.
+     */
+    private void updateVersioned(Cluster cluster, Update update) {
+        Query query = Query.query(Criteria.where(ID).is(cluster.getUid()).and(VERSION).is(cluster.getVersion()));
+        query.fields().include(VERSION);
+        update.inc(VERSION, 1);
+        Cluster updatedCluster = mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), Cluster.class);
+        if (updatedCluster == null) {
+            throw new OptimisticLockingFailureException("Cluster " + cluster.getClusterName() + " was changed or deleted by another operation");
+        }
+        cluster.setVersion(updatedCluster.getVersion());
+    }
+}
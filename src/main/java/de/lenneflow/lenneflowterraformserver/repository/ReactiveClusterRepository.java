@@ -0,0 +1,15 @@
+package de.lenneflow.lenneflowterraformserver.repository;
+
+
+import de.lenneflow.lenneflowterraformserver.enums.CloudProvider;
+import de.lenneflow.lenneflowterraformserver.model.Cluster;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Mono;
+
+public interface ReactiveClusterRepository extends ReactiveMongoRepository<Cluster, String> {
+
+    Mono<Cluster> findByUid(String uuid);
+
+    Mono<Cluster> findByCloudProviderAndClusterNameAndRegion(CloudProvider cloudProvider, String clusterName, String region);
+
+}
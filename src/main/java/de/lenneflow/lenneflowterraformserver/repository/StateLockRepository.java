@@ -0,0 +1,9 @@
+package de.lenneflow.lenneflowterraformserver.repository;
+
+
+import de.lenneflow.lenneflowterraformserver.model.StateLock;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface StateLockRepository extends MongoRepository<StateLock, String> {
+
+}
@@ -0,0 +1,269 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.enums.CloudProvider;
+import de.lenneflow.lenneflowterraformserver.exception.InternalServiceException;
+import de.lenneflow.lenneflowterraformserver.exception.ResourceNotFoundException;
+import de.lenneflow.lenneflowterraformserver.model.AccessToken;
+import de.lenneflow.lenneflowterraformserver.model.Cluster;
+import de.lenneflow.lenneflowterraformserver.model.ClusterKey;
+import de.lenneflow.lenneflowterraformserver.model.Credential;
+import de.lenneflow.lenneflowterraformserver.repository.AccessTokenRepository;
+import de.lenneflow.lenneflowterraformserver.repository.ClusterRepository;
+import de.lenneflow.lenneflowterraformserver.repository.CredentialRepository;
+import de.lenneflow.lenneflowterraformserver.util.EksTokenGenerator;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Provides the access tokens of the clusters. The tokens are kept in a bounded in-memory cache and refreshed in the
+ * background shortly before they expire, so callers usually get a cached token without any database access.
+ * Tokens of clusters that were not requested since their last refresh are evicted instead of refreshed.
+ * Concurrent requests for a cluster without a cached token share a single load. The load runs in the calling thread
+ * for {@link #getToken} and in a small loader pool for {@link #getTokenAsync}.
+ * New tokens are signed in-process, no aws cli process is started.
+ */
+@Component
+public class AccessTokenService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AccessTokenService.class);
+
+    private final ClusterRepository clusterRepository;
+    private final AccessTokenRepository accessTokenRepository;
+    private final CredentialRepository credentialRepository;
+    private final Map<ClusterKey, CachedToken> cache;
+    private final Map<ClusterKey, CompletableFuture<AccessToken>> inFlightLoads = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService refresher;
+    private final ExecutorService loader;
+    private final Duration refreshMargin;
+
+    public AccessTokenService(ClusterRepository clusterRepository, AccessTokenRepository accessTokenRepository, CredentialRepository credentialRepository,
+                              @Value("${access-token.cache.max-size:10000}") int maximumSize,
+                              @Value("${access-token.refresh-margin:60000}") long refreshMargin,
+                              @Value("${access-token.loader.threads:4}") int loaderThreads) {
+        this.clusterRepository = clusterRepository;
+        this.accessTokenRepository = accessTokenRepository;
+        this.credentialRepository = credentialRepository;
+        this.refreshMargin = Duration.ofMillis(refreshMargin);
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ClusterKey, CachedToken> eldest) {
+                return size() > maximumSize;
+            }
+        });
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "access-token-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger loaderThreadCounter = new AtomicInteger();
+        this.loader = Executors.newFixedThreadPool(loaderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "access-token-loader-" + loaderThreadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns a valid access token of a cluster. The cache is used first, then the database. A new token is only
+     * created if both do not contain a valid token.
+     * @param cloudProvider the cloud provider
+     * @param clusterName the name of the cluster
+     * @param region the region of the cluster
+     * @return the access token
+     */
+    public AccessToken getToken(CloudProvider cloudProvider, String clusterName, String region) {
+        return awaitLoad(getToken(new ClusterKey(cloudProvider, region, clusterName), Runnable::run));
+    }
+
+    /**
+     * Returns a valid access token of a cluster without blocking the calling thread. A cached token is returned
+     * as a completed future.
+     * @param cloudProvider the cloud provider
+     * @param clusterName the name of the cluster
+     * @param region the region of the cluster
+     * @return the future of the access token, shared with the other callers waiting for the same cluster
+     */
+    public CompletableFuture<AccessToken> getTokenAsync(CloudProvider cloudProvider, String clusterName, String region) {
+        return getToken(new ClusterKey(cloudProvider, region, clusterName), loader);
+    }
+
+    /**
+     * Removes the token of a cluster from the cache
+     * @param clusterKey the cluster
+     */
+    public void evict(ClusterKey clusterKey) {
+        cache.remove(clusterKey);
+    }
+
+    private CompletableFuture<AccessToken> getToken(ClusterKey clusterKey, Executor executor) {
+        AccessToken cachedToken = getCachedToken(clusterKey);
+        if (cachedToken != null) {
+            return CompletableFuture.completedFuture(cachedToken);
+        }
+        CompletableFuture<AccessToken> load = new CompletableFuture<>();
+        CompletableFuture<AccessToken> runningLoad = inFlightLoads.putIfAbsent(clusterKey, load);
+        if (runningLoad != null) {
+            return runningLoad;
+        }
+        executor.execute(() -> {
+            try {
+                // another caller may have finished a load between the cache lookup and the registration of this one
+                AccessToken token = getCachedToken(clusterKey);
+                load.complete(token != null ? token : loadToken(clusterKey));
+            } catch (RuntimeException e) {
+                load.completeExceptionally(e);
+            } finally {
+                inFlightLoads.remove(clusterKey, load);
+            }
+        });
+        return load;
+    }
+
+    private AccessToken getCachedToken(ClusterKey clusterKey) {
+        CachedToken cachedToken = cache.get(clusterKey);
+        if (cachedToken != null && isValid(cachedToken.token)) {
+            cachedToken.accessed = true;
+            return cachedToken.token;
+        }
+        return null;
+    }
+
+    private AccessToken awaitLoad(CompletableFuture<AccessToken> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new InternalServiceException("get connection token failed \n" + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+        loader.shutdownNow();
+    }
+
+    private AccessToken loadToken(ClusterKey clusterKey) {
+        Cluster cluster = clusterRepository.findByCloudProviderAndClusterNameAndRegion(clusterKey.cloudProvider(), clusterKey.clusterName(), clusterKey.region());
+        if (cluster == null) {
+            throw new ResourceNotFoundException("Cluster not found");
+        }
+        AccessToken token = accessTokenRepository.findByUid(cluster.getAccessTokenId());
+        if (token != null) {
+            if (isValid(token)) {
+                cacheToken(clusterKey, token);
+                return token;
+            } else {
+                //delete expired token
+                accessTokenRepository.delete(token);
+            }
+        }
+        AccessToken newToken = createToken(cluster);
+        cacheToken(clusterKey, newToken);
+        return newToken;
+    }
+
+    private void cacheToken(ClusterKey clusterKey, AccessToken token) {
+        CachedToken cachedToken = new CachedToken(token);
+        cache.put(clusterKey, cachedToken);
+        long delay = Duration.between(LocalDateTime.now(), token.getExpiration()).minus(refreshMargin).toMillis();
+        if (delay > 0) {
+            refresher.schedule(() -> refresh(clusterKey, cachedToken), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Replaces a token that is about to expire. Tokens that were not requested since they were cached are evicted instead.
+     */
+    private void refresh(ClusterKey clusterKey, CachedToken cachedToken) {
+        if (cache.get(clusterKey) != cachedToken) {
+            return;
+        }
+        if (!cachedToken.accessed) {
+            cache.remove(clusterKey, cachedToken);
+            return;
+        }
+        try {
+            Cluster cluster = clusterRepository.findByCloudProviderAndClusterNameAndRegion(clusterKey.cloudProvider(), clusterKey.clusterName(), clusterKey.region());
+            if (cluster == null) {
+                cache.remove(clusterKey);
+                return;
+            }
+            AccessToken oldToken = accessTokenRepository.findByUid(cluster.getAccessTokenId());
+            AccessToken newToken = createToken(cluster);
+            if (oldToken != null) {
+                accessTokenRepository.delete(oldToken);
+            }
+            cacheToken(clusterKey, newToken);
+        } catch (Exception e) {
+            logger.error("Refresh of the access token of cluster {} failed: {}", clusterKey, e.getMessage());
+        }
+    }
+
+    private AccessToken createToken(Cluster cluster) {
+        switch (cluster.getCloudProvider()) {
+            case AWS -> {
+                Credential credential = credentialRepository.findByUid(cluster.getCredentialId());
+                if (credential == null) {
+                    throw new InternalServiceException("get connection token failed \nNo credential found for cluster " + cluster.getClusterName());
+                }
+                Instant now = Instant.now();
+                String token = EksTokenGenerator.generateToken(cluster.getClusterName(), cluster.getRegion(), credential.getAccessKey(), credential.getSecretKey(), now);
+                return createAndSaveAWSAccessToken(token, now.plus(EksTokenGenerator.TOKEN_VALIDITY), cluster);
+            }
+            case AZURE -> throw new InternalServiceException("Azure cloud ist not yet supported");
+            case GOOGLE -> throw new InternalServiceException("GOOGLE cloud ist not yet supported");
+            default -> throw new InternalServiceException("Unexpected value: " + cluster.getCloudProvider());
+        }
+    }
+
+    private AccessToken createAndSaveAWSAccessToken(String token, Instant expiration, Cluster cluster) {
+        AccessToken accessToken = new AccessToken();
+        accessToken.setUid(UUID.randomUUID().toString());
+        accessToken.setDescription("Access token for " + cluster.getClusterName());
+        accessToken.setToken(token);
+        accessToken.setExpiration(LocalDateTime.ofInstant(expiration, ZoneId.systemDefault()));
+        accessToken.setUpdated(LocalDateTime.now());
+        AccessToken savedToken = accessTokenRepository.save(accessToken);
+        cluster.setAccessTokenId(savedToken.getUid());
+        clusterRepository.updateAccessTokenId(cluster.getUid(), savedToken.getUid());
+        return savedToken;
+    }
+
+    private boolean isValid(AccessToken token) {
+        return token.getExpiration() != null && token.getExpiration().isAfter(LocalDateTime.now());
+    }
+
+    private static class CachedToken {
+
+        private final AccessToken token;
+        private volatile boolean accessed;
+
+        CachedToken(AccessToken token) {
+            this.token = token;
+        }
+    }
+}
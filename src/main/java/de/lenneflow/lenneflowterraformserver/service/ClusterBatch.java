@@ -0,0 +1,143 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.dto.BatchClusterDTO;
+import de.lenneflow.lenneflowterraformserver.dto.BatchDTO;
+import de.lenneflow.lenneflowterraformserver.enums.BatchStatus;
+import de.lenneflow.lenneflowterraformserver.enums.ClusterStatus;
+import de.lenneflow.lenneflowterraformserver.model.Cluster;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The clusters of a batch creation. At most parallelism clusters of the batch are running at the same time,
+ * the next cluster is queued as a job when a running one is finished.
+ */
+public class ClusterBatch {
+
+    private final String batchId;
+    private final int parallelism;
+    private final List<Entry> entries;
+    private final LocalDateTime created = LocalDateTime.now();
+    private int nextEntry;
+    private int running;
+    private LocalDateTime finished;
+
+    public ClusterBatch(String batchId, int parallelism, List<Entry> entries) {
+        this.batchId = batchId;
+        this.parallelism = parallelism;
+        this.entries = List.copyOf(entries);
+    }
+
+    public String getBatchId() {
+        return batchId;
+    }
+
+    /**
+     * Takes the next cluster to start if the parallelism window is not full
+     * @return the next cluster or null if the window is full or all clusters are started
+     */
+    public synchronized Entry next() {
+        if (running >= parallelism || nextEntry >= entries.size()) {
+            return null;
+        }
+        running++;
+        Entry entry = entries.get(nextEntry++);
+        entry.started = true;
+        return entry;
+    }
+
+    /**
+     * @return the clusters that are started and not yet finished
+     */
+    public synchronized List<Entry> getRunningEntries() {
+        return entries.stream().filter(entry -> entry.started && !entry.finished).toList();
+    }
+
+    /**
+     * @return the clusters that are not yet started
+     */
+    public synchronized List<Entry> getWaitingEntries() {
+        return entries.subList(nextEntry, entries.size()).stream().toList();
+    }
+
+    /**
+     * Marks a started cluster as finished and frees its place in the window
+     * @param entry the cluster
+     * @param message the error message or null if the cluster was created
+     */
+    public synchronized void finish(Entry entry, String message) {
+        running--;
+        entry.finished = true;
+        entry.message = message;
+        if (nextEntry >= entries.size() && running == 0) {
+            finished = LocalDateTime.now();
+        }
+    }
+
+    /**
+     * @return true if all clusters of the batch are finished
+     */
+    public synchronized boolean isFinished() {
+        return finished != null;
+    }
+
+    /**
+     * @return the time the last cluster of the batch was finished or null
+     */
+    public synchronized LocalDateTime getFinished() {
+        return finished;
+    }
+
+    /**
+     * @return the progress of the batch and the status of every cluster
+     */
+    public synchronized BatchDTO toDTO() {
+        int pending = 0;
+        int succeeded = 0;
+        int failed = 0;
+        List<BatchClusterDTO> clusters = new ArrayList<>();
+        for (Entry entry : entries) {
+            ClusterStatus status = entry.message != null && entry.cluster.getStatus() != ClusterStatus.CANCELLED ? ClusterStatus.ERROR : entry.cluster.getStatus();
+            if (!entry.started) {
+                pending++;
+            } else if (entry.finished && status == ClusterStatus.CREATED) {
+                succeeded++;
+            } else if (entry.finished) {
+                failed++;
+            }
+            clusters.add(new BatchClusterDTO(entry.cluster.getClusterName(), entry.cluster.getRegion(), entry.cluster.getCloudProvider(), status, entry.message));
+        }
+        return new BatchDTO(batchId, finished != null ? BatchStatus.FINISHED : BatchStatus.RUNNING, parallelism, entries.size(),
+                pending, running, succeeded, failed, created, finished, clusters);
+    }
+
+    /**
+     * A cluster of the batch with the job that creates it
+     */
+    public static class Entry {
+
+        private final Cluster cluster;
+        private volatile String jobId;
+        private boolean started;
+        private boolean finished;
+        private String message;
+
+        public Entry(Cluster cluster) {
+            this.cluster = cluster;
+        }
+
+        public Cluster getCluster() {
+            return cluster;
+        }
+
+        public String getJobId() {
+            return jobId;
+        }
+
+        public void setJobId(String jobId) {
+            this.jobId = jobId;
+        }
+    }
+}
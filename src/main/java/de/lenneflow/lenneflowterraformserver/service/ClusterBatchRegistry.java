@@ -0,0 +1,180 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.enums.JobStatus;
+import de.lenneflow.lenneflowterraformserver.enums.JobType;
+import de.lenneflow.lenneflowterraformserver.exception.OperationInProgressException;
+import de.lenneflow.lenneflowterraformserver.exception.ResourceNotFoundException;
+import de.lenneflow.lenneflowterraformserver.model.Cluster;
+import de.lenneflow.lenneflowterraformserver.model.ClusterJob;
+import de.lenneflow.lenneflowterraformserver.model.ClusterKey;
+import de.lenneflow.lenneflowterraformserver.repository.ClusterJobRepository;
+import de.lenneflow.lenneflowterraformserver.repository.ClusterRepository;
+import de.lenneflow.lenneflowterraformserver.repository.CredentialRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the batches of this instance. The clusters of a batch are created by jobs that any replica can run,
+ * this instance follows the jobs of its batches and queues the next clusters when running ones are finished.
+ * The waiting clusters of a batch are stored as NEW with a lease that is renewed while the batch is advanced,
+ * if this instance stops the reconciler queues their creation when the lease expired.
+ * Finished batches are removed when the retention time is over.
+ */
+@Component
+public class ClusterBatchRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusterBatchRegistry.class);
+
+    private final Map<String, ClusterBatch> batches = new ConcurrentHashMap<>();
+    private final ClusterJobService jobService;
+    private final ClusterJobRepository jobRepository;
+    private final ClusterRepository clusterRepository;
+    private final CredentialRepository credentialRepository;
+    private final int defaultParallelism;
+    private final int maximumSize;
+    private final long retention;
+    private final Duration leaseDuration;
+
+    public ClusterBatchRegistry(ClusterJobService jobService, ClusterJobRepository jobRepository, ClusterRepository clusterRepository,
+                                CredentialRepository credentialRepository,
+                                @Value("${operations.batch.parallelism:5}") int defaultParallelism,
+                                @Value("${operations.batch.max-size:100}") int maximumSize,
+                                @Value("${operations.batch.retention:3600000}") long retention,
+                                @Value("${operations.batch.lease-duration:60000}") long leaseDuration) {
+        this.jobService = jobService;
+        this.jobRepository = jobRepository;
+        this.clusterRepository = clusterRepository;
+        this.credentialRepository = credentialRepository;
+        this.defaultParallelism = defaultParallelism;
+        this.maximumSize = maximumSize;
+        this.retention = retention;
+        this.leaseDuration = Duration.ofMillis(leaseDuration);
+    }
+
+    /**
+     * @return the maximum number of clusters of a batch
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Registers a new batch and queues the jobs of its first clusters
+     * @param parallelism the maximum number of clusters of the batch running at the same time or null for the default
+     * @param entries the clusters
+     * @return the batch
+     */
+    public ClusterBatch start(Integer parallelism, List<ClusterBatch.Entry> entries) {
+        int window = parallelism != null ? Math.max(1, parallelism) : defaultParallelism;
+        ClusterBatch batch = new ClusterBatch(UUID.randomUUID().toString(), window, entries);
+        batches.put(batch.getBatchId(), batch);
+        advance(batch);
+        return batch;
+    }
+
+    /**
+     * @param batchId the id of the batch
+     * @return the batch
+     * @throws ResourceNotFoundException if the batch does not exist or was already removed
+     */
+    public ClusterBatch getBatch(String batchId) {
+        ClusterBatch batch = batches.get(batchId);
+        if (batch == null) {
+            throw new ResourceNotFoundException("Batch not found");
+        }
+        return batch;
+    }
+
+    @Scheduled(fixedDelayString = "${jobs.poll-interval:2000}")
+    public void advanceBatches() {
+        batches.values().stream().filter(batch -> !batch.isFinished()).forEach(this::advance);
+    }
+
+    /**
+     * Finishes the clusters whose jobs are finished, queues the jobs of the next clusters and renews the lease
+     * of the clusters that are still waiting
+     */
+    void advance(ClusterBatch batch) {
+        // the batch is advanced by its creation and by the scheduler, only one of them may finish and queue its clusters
+        synchronized (batch) {
+            for (ClusterBatch.Entry entry : batch.getRunningEntries()) {
+                Cluster cluster = clusterRepository.findByUid(entry.getCluster().getUid());
+                if (cluster != null) {
+                    entry.getCluster().setStatus(cluster.getStatus());
+                }
+                ClusterJob job = jobRepository.findByUid(entry.getJobId());
+                if (job == null) {
+                    batch.finish(entry, "The job of the cluster was removed");
+                } else if (job.getStatus() == JobStatus.FAILED) {
+                    batch.finish(entry, job.getError() != null ? job.getError() : "The job of the cluster failed");
+                } else if (job.getStatus() == JobStatus.CANCELLED) {
+                    batch.finish(entry, "The job of the cluster was cancelled");
+                } else if (job.getStatus() == JobStatus.SUCCEEDED) {
+                    batch.finish(entry, null);
+                }
+            }
+            ClusterBatch.Entry entry;
+            while ((entry = batch.next()) != null) {
+                // the entry is taken from the window, every failure has to finish it or the batch never ends
+                try {
+                    enqueue(batch, entry);
+                } catch (RuntimeException e) {
+                    logger.error("Queueing the creation of cluster {} failed: {}", entry.getCluster().getClusterName(), e.getMessage());
+                    removeRejectedCluster(entry.getCluster());
+                    batch.finish(entry, "Cluster creation error" + e.getMessage());
+                }
+            }
+            List<String> waiting = batch.getWaitingEntries().stream().map(waitingEntry -> waitingEntry.getCluster().getUid()).toList();
+            if (!waiting.isEmpty()) {
+                try {
+                    clusterRepository.renewLeases(waiting, leaseDuration);
+                } catch (RuntimeException e) {
+                    logger.warn("Renewing the leases of batch {} failed: {}", batch.getBatchId(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void enqueue(ClusterBatch batch, ClusterBatch.Entry entry) {
+        try {
+            entry.setJobId(jobService.enqueue(JobType.CREATE, entry.getCluster()).getUid());
+        } catch (OperationInProgressException e) {
+            ClusterJob activeJob = jobRepository.findByActiveClusterKey(ClusterKey.of(entry.getCluster()).toString());
+            if (activeJob != null && entry.getCluster().getUid().equals(activeJob.getClusterUid())) {
+                // the lease expired and the reconciler queued the creation already
+                entry.setJobId(activeJob.getUid());
+            } else {
+                removeRejectedCluster(entry.getCluster());
+                batch.finish(entry, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Removes the database entries of a cluster whose creation could not be queued, like a rejected single creation
+     */
+    private void removeRejectedCluster(Cluster cluster) {
+        try {
+            credentialRepository.deleteById(cluster.getCredentialId());
+            clusterRepository.delete(cluster);
+        } catch (RuntimeException e) {
+            logger.error("Cleanup of the rejected cluster {} failed: {}", cluster.getClusterName(), e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${operations.batch.retention:3600000}")
+    public void removeFinishedBatches() {
+        LocalDateTime oldest = LocalDateTime.now().minusNanos(retention * 1_000_000);
+        batches.values().removeIf(batch -> batch.isFinished() && batch.getFinished().isBefore(oldest));
+    }
+}
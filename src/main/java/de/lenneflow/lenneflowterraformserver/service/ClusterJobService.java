@@ -0,0 +1,125 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.dto.NodeGroupDTO;
+import de.lenneflow.lenneflowterraformserver.enums.ClusterStatus;
+import de.lenneflow.lenneflowterraformserver.enums.JobStatus;
+import de.lenneflow.lenneflowterraformserver.enums.JobType;
+import de.lenneflow.lenneflowterraformserver.exception.OperationInProgressException;
+import de.lenneflow.lenneflowterraformserver.exception.PayloadNotValidException;
+import de.lenneflow.lenneflowterraformserver.exception.ResourceNotFoundException;
+import de.lenneflow.lenneflowterraformserver.model.Cluster;
+import de.lenneflow.lenneflowterraformserver.model.ClusterJob;
+import de.lenneflow.lenneflowterraformserver.model.ClusterKey;
+import de.lenneflow.lenneflowterraformserver.repository.ClusterJobRepository;
+import de.lenneflow.lenneflowterraformserver.repository.ClusterRepository;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Queues the cluster operations as jobs in the database, where any replica can claim them.
+ * A cluster can only have one queued or running job at a time.
+ */
+@Component
+public class ClusterJobService {
+
+    private final ClusterJobRepository jobRepository;
+    private final ClusterRepository clusterRepository;
+
+    public ClusterJobService(ClusterJobRepository jobRepository, ClusterRepository clusterRepository) {
+        this.jobRepository = jobRepository;
+        this.clusterRepository = clusterRepository;
+    }
+
+    /**
+     * Queues a job that creates or deletes a cluster with its current node counts
+     * @param type the type of the job
+     * @param cluster the cluster
+     * @return the queued job
+     * @throws OperationInProgressException if the cluster already has a queued or running job
+     */
+    public ClusterJob enqueue(JobType type, Cluster cluster) {
+        return enqueue(type, cluster, new NodeGroupDTO(cluster.getClusterName(), cluster.getRegion(), cluster.getCloudProvider(),
+                cluster.getDesiredNodeCount(), cluster.getMinimumNodeCount(), cluster.getMaximumNodeCount()));
+    }
+
+    /**
+     * Queues a job of a cluster
+     * @param type the type of the job
+     * @param cluster the cluster
+     * @param nodeGroup the node counts the job applies
+     * @return the queued job
+     * @throws OperationInProgressException if the cluster already has a queued or running job
+     */
+    public ClusterJob enqueue(JobType type, Cluster cluster, NodeGroupDTO nodeGroup) {
+        ClusterKey clusterKey = ClusterKey.of(cluster);
+        ClusterJob job = new ClusterJob();
+        job.setUid(UUID.randomUUID().toString());
+        job.setType(type);
+        job.setStatus(JobStatus.QUEUED);
+        job.setClusterUid(cluster.getUid());
+        job.setCloudProvider(cluster.getCloudProvider());
+        job.setRegion(cluster.getRegion());
+        job.setClusterName(cluster.getClusterName());
+        job.setActiveClusterKey(clusterKey.toString());
+        job.setDesiredNodeCount(nodeGroup.getDesiredNodeCount());
+        job.setMinimumNodeCount(nodeGroup.getMinimumNodeCount());
+        job.setMaximumNodeCount(nodeGroup.getMaximumNodeCount());
+        job.setCreated(LocalDateTime.now());
+        try {
+            return jobRepository.insert(job);
+        } catch (DuplicateKeyException e) {
+            throw new OperationInProgressException("Another operation of cluster " + clusterKey + " is queued or in progress, please retry when it is finished");
+        }
+    }
+
+    /**
+     * @param jobId the uid of the job
+     * @return the job
+     * @throws ResourceNotFoundException if the job does not exist or was already removed
+     */
+    public ClusterJob getJob(String jobId) {
+        ClusterJob job = jobRepository.findByUid(jobId);
+        if (job == null) {
+            throw new ResourceNotFoundException("Job not found");
+        }
+        return job;
+    }
+
+    /**
+     * Cancels a job. A queued job is cancelled at once, a cluster that was never created is then set to status CANCELLED.
+     * The cancel of a running job is only requested, the replica running it interrupts terraform and finishes the job
+     * as CANCELLED.
+     * @param jobId the uid of the job
+     * @return the job after the cancel or the cancel request
+     * @throws ResourceNotFoundException if the job does not exist
+     * @throws PayloadNotValidException if the job is already finished
+     */
+    public ClusterJob cancel(String jobId) {
+        getJob(jobId);
+        if (jobRepository.cancelQueued(jobId)) {
+            ClusterJob job = getJob(jobId);
+            Cluster cluster = clusterRepository.findByUid(job.getClusterUid());
+            if (cluster != null && cluster.getStatus() == ClusterStatus.NEW) {
+                clusterRepository.updateStatus(cluster, ClusterStatus.CANCELLED);
+            }
+            return job;
+        }
+        if (jobRepository.requestCancel(jobId)) {
+            return getJob(jobId);
+        }
+        // the job was finished already or finished in the meantime
+        throw new PayloadNotValidException("The job " + jobId + " is already finished");
+    }
+
+    /**
+     * @param clusterKey the cluster
+     * @return the jobs of the cluster, the newest first
+     */
+    public List<ClusterJob> getJobs(ClusterKey clusterKey) {
+        return jobRepository.findByCloudProviderAndRegionAndClusterNameOrderByCreatedDesc(clusterKey.cloudProvider(), clusterKey.region(), clusterKey.clusterName());
+    }
+}
@@ -0,0 +1,233 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.enums.JobStatus;
+import de.lenneflow.lenneflowterraformserver.exception.OperationCancelledException;
+import de.lenneflow.lenneflowterraformserver.exception.OperationRejectedException;
+import de.lenneflow.lenneflowterraformserver.model.ClusterJob;
+import de.lenneflow.lenneflowterraformserver.model.ClusterKey;
+import de.lenneflow.lenneflowterraformserver.repository.ClusterJobRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Claims the cluster jobs of all replicas and runs them on this replica. At most max-concurrency jobs run here
+ * at the same time. The leases of the running jobs are renewed by a heartbeat, the job of a replica that stopped
+ * renewing its leases is taken over by the next replica that polls after the lease expired.
+ * The cancel requests of the running jobs are polled like the queue, a cancelled job interrupts its terraform processes.
+ * A claimed job records the address of this replica, the output of the job is only available on the replica running it.
+ * The heartbeat runs in its own thread, so the other scheduled tasks of the replica, e.g. a slow fetch of the
+ * templates, cannot delay it past the lease.
+ */
+@Component
+public class ClusterJobWorker {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusterJobWorker.class);
+
+    private final ClusterJobRepository jobRepository;
+    private final ClusterOperations clusterOperations;
+    private final OperationExecutor operationExecutor;
+    private final ClusterLockManager clusterLocks;
+    private final TerraformOutputBroadcaster outputBroadcaster;
+    private final OperationLogStore logStore;
+    private final TerraformRunner terraformRunner;
+    private final Map<String, ClusterKey> runningJobs = new ConcurrentHashMap<>();
+    private final String replicaId;
+    private final String replicaAddress;
+    private final int maximumConcurrency;
+    private final Duration leaseDuration;
+    private final int maximumAttempts;
+    private final ScheduledExecutorService heartbeat;
+
+    public ClusterJobWorker(ClusterJobRepository jobRepository, ClusterOperations clusterOperations, OperationExecutor operationExecutor,
+                            ClusterLockManager clusterLocks, TerraformOutputBroadcaster outputBroadcaster, OperationLogStore logStore,
+                            TerraformRunner terraformRunner,
+                            @Value("${jobs.replica-id:}") String replicaId,
+                            @Value("${jobs.replica-address:}") String replicaAddress,
+                            @Value("${server.port:8787}") int serverPort,
+                            @Value("${jobs.max-concurrency:4}") int maximumConcurrency,
+                            @Value("${jobs.heartbeat-interval:20000}") long heartbeatInterval,
+                            @Value("${jobs.lease-duration:60000}") long leaseDuration,
+                            @Value("${jobs.max-attempts:3}") int maximumAttempts) {
+        this.jobRepository = jobRepository;
+        this.clusterOperations = clusterOperations;
+        this.operationExecutor = operationExecutor;
+        this.clusterLocks = clusterLocks;
+        this.outputBroadcaster = outputBroadcaster;
+        this.logStore = logStore;
+        this.terraformRunner = terraformRunner;
+        this.replicaId = replicaId == null || replicaId.isBlank() ? createReplicaId() : replicaId;
+        this.replicaAddress = replicaAddress == null || replicaAddress.isBlank() ? "http://" + getHostName("localhost") + ":" + serverPort : replicaAddress;
+        this.maximumConcurrency = maximumConcurrency;
+        this.leaseDuration = Duration.ofMillis(leaseDuration);
+        this.maximumAttempts = maximumAttempts;
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "job-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleWithFixedDelay(this::beat, heartbeatInterval, heartbeatInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the id this replica claims the jobs with
+     */
+    public String getReplicaId() {
+        return replicaId;
+    }
+
+    /**
+     * @return the base URL other replicas redirect the requests for the output of the jobs of this replica to
+     */
+    public String getReplicaAddress() {
+        return replicaAddress;
+    }
+
+    /**
+     * Claims jobs until this replica runs max-concurrency jobs or no job is left
+     */
+    @Scheduled(fixedDelayString = "${jobs.poll-interval:2000}")
+    public void claimJobs() {
+        while (runningJobs.size() < maximumConcurrency) {
+            ClusterJob job = jobRepository.claimNext(replicaId, replicaAddress, leaseDuration, maximumAttempts);
+            if (job == null || !start(job)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Renews the leases of the jobs running on this replica and fails the jobs that were abandoned too often.
+     * A job whose lease was taken over by another replica is cancelled here and no longer counted as running.
+     */
+    public void renewLeases() {
+        List<String> jobIds = List.copyOf(runningJobs.keySet());
+        if (!jobIds.isEmpty()) {
+            for (String jobId : jobRepository.renewLeases(replicaId, jobIds, leaseDuration)) {
+                // the new owner runs the job again, the terraform processes of this replica must not race with it
+                ClusterKey clusterKey = runningJobs.remove(jobId);
+                if (clusterKey != null) {
+                    logger.warn("The job {} of cluster {} was taken over by another replica, cancelling it", jobId, clusterKey);
+                    terraformRunner.cancel(clusterKey);
+                }
+            }
+        }
+        long abandoned = jobRepository.failAbandoned(maximumAttempts);
+        if (abandoned > 0) {
+            logger.error("{} jobs were abandoned after {} attempts", abandoned, maximumAttempts);
+        }
+        long cancelled = jobRepository.cancelAbandoned();
+        if (cancelled > 0) {
+            logger.warn("{} abandoned jobs with a cancel request were cancelled", cancelled);
+        }
+    }
+
+    /**
+     * Cancels the jobs running on this replica that have a cancel request. The request stays until the job is
+     * finished, so a job is cancelled again on every poll until it stops.
+     */
+    @Scheduled(fixedDelayString = "${jobs.poll-interval:2000}")
+    public void cancelJobs() {
+        if (runningJobs.isEmpty()) {
+            return;
+        }
+        for (String jobId : jobRepository.findCancelRequested(replicaId, List.copyOf(runningJobs.keySet()))) {
+            ClusterKey clusterKey = runningJobs.get(jobId);
+            if (clusterKey != null) {
+                logger.info("Cancelling job {} of cluster {}", jobId, clusterKey);
+                terraformRunner.cancel(clusterKey);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeat.shutdownNow();
+    }
+
+    /**
+     * A failed heartbeat must not stop the following ones
+     */
+    private void beat() {
+        try {
+            renewLeases();
+        } catch (RuntimeException e) {
+            logger.error("Renewing the job leases of replica {} failed: {}", replicaId, e.getMessage());
+        }
+    }
+
+    private boolean start(ClusterJob job) {
+        if (runningJobs.putIfAbsent(job.getUid(), job.getClusterKey()) != null) {
+            // the lease expired while the job is still running here, the heartbeat renews it again
+            return true;
+        }
+        try {
+            operationExecutor.submit(() -> run(job));
+            return true;
+        } catch (OperationRejectedException e) {
+            runningJobs.remove(job.getUid());
+            jobRepository.release(job.getUid(), replicaId);
+            return false;
+        }
+    }
+
+    private void run(ClusterJob job) {
+        ClusterKey clusterKey = job.getClusterKey();
+        JobStatus status = JobStatus.SUCCEEDED;
+        String error = null;
+        try {
+            clusterLocks.acquire(clusterKey, job.getType().name().toLowerCase());
+            // a cancel left over from the previous job of the cluster, the cancel of this job is polled again
+            terraformRunner.clearCancel(clusterKey);
+            outputBroadcaster.startOperation(clusterKey);
+            logStore.open(clusterKey, job.getUid());
+            try {
+                clusterOperations.run(job, () -> jobRepository.isOwned(job.getUid(), replicaId));
+            } finally {
+                logStore.close(clusterKey);
+                outputBroadcaster.finishOperation(clusterKey);
+                terraformRunner.clearCancel(clusterKey);
+                clusterLocks.release(clusterKey);
+            }
+        } catch (OperationCancelledException e) {
+            status = JobStatus.CANCELLED;
+            error = e.getMessage();
+            logger.info("The {} job {} of cluster {} was cancelled", job.getType(), job.getUid(), clusterKey);
+        } catch (RuntimeException e) {
+            status = JobStatus.FAILED;
+            error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            logger.error("The {} job {} of cluster {} failed: {}", job.getType(), job.getUid(), clusterKey, error);
+        } finally {
+            runningJobs.remove(job.getUid());
+            if (!jobRepository.finish(job.getUid(), replicaId, status, error)) {
+                logger.warn("The job {} of cluster {} was taken over by another replica before it finished", job.getUid(), clusterKey);
+            }
+        }
+    }
+
+    private static String createReplicaId() {
+        return getHostName("replica") + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    private static String getHostName(String fallback) {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.exception.OperationInProgressException;
+import de.lenneflow.lenneflowterraformserver.model.ClusterKey;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Makes sure that only one operation at a time works in the directory of a cluster. The locks are entries of a
+ * concurrent map keyed by cluster, so operations of different clusters never wait for each other.
+ * A second operation on a busy cluster is refused instead of waiting for the running one.
+ */
+@Component
+public class ClusterLockManager {
+
+    private final Map<ClusterKey, RunningOperation> runningOperations = new ConcurrentHashMap<>();
+
+    /**
+     * Locks a cluster for an operation
+     * @param clusterKey the cluster
+     * @param operation the name of the operation, e.g. create
+     * @throws OperationInProgressException if another operation holds the lock of the cluster
+     */
+    public void acquire(ClusterKey clusterKey, String operation) {
+        RunningOperation runningOperation = runningOperations.putIfAbsent(clusterKey, new RunningOperation(operation, LocalDateTime.now(), new CompletableFuture<>()));
+        if (runningOperation != null) {
+            throw new OperationInProgressException("The operation " + runningOperation.operation() + " of cluster " + clusterKey
+                    + " is in progress since " + runningOperation.started() + ", please retry when it is finished");
+        }
+    }
+
+    /**
+     * Unlocks a cluster
+     * @param clusterKey the cluster
+     */
+    public void release(ClusterKey clusterKey) {
+        RunningOperation runningOperation = runningOperations.remove(clusterKey);
+        if (runningOperation != null) {
+            runningOperation.completion().complete(null);
+        }
+    }
+
+    /**
+     * @param clusterKey the cluster
+     * @return true if an operation holds the lock of the cluster
+     */
+    public boolean isLocked(ClusterKey clusterKey) {
+        return runningOperations.containsKey(clusterKey);
+    }
+
+    /**
+     * Returns a future that is completed when the lock of a cluster is released, so callers can wait for the
+     * running operation without blocking a thread.
+     * @param clusterKey the cluster
+     * @return the completion of the running operation or a completed future if the cluster is not locked
+     */
+    public CompletableFuture<Void> getCompletion(ClusterKey clusterKey) {
+        RunningOperation runningOperation = runningOperations.get(clusterKey);
+        return runningOperation != null ? runningOperation.completion() : CompletableFuture.completedFuture(null);
+    }
+
+    private record RunningOperation(String operation, LocalDateTime started, CompletableFuture<Void> completion) {
+    }
+}
@@ -0,0 +1,236 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.dto.ClusterDTO;
+import de.lenneflow.lenneflowterraformserver.dto.OutputDTO;
+import de.lenneflow.lenneflowterraformserver.enums.ClusterStatus;
+import de.lenneflow.lenneflowterraformserver.exception.InternalServiceException;
+import de.lenneflow.lenneflowterraformserver.exception.OperationCancelledException;
+import de.lenneflow.lenneflowterraformserver.exception.ResourceNotFoundException;
+import de.lenneflow.lenneflowterraformserver.model.Cluster;
+import de.lenneflow.lenneflowterraformserver.model.ClusterJob;
+import de.lenneflow.lenneflowterraformserver.model.ClusterKey;
+import de.lenneflow.lenneflowterraformserver.model.Credential;
+import de.lenneflow.lenneflowterraformserver.repository.AccessTokenRepository;
+import de.lenneflow.lenneflowterraformserver.repository.ClusterRepository;
+import de.lenneflow.lenneflowterraformserver.repository.CredentialRepository;
+import de.lenneflow.lenneflowterraformserver.util.Util;
+import org.apache.commons.io.FileUtils;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * The terraform pipelines of the cluster jobs. Every job rebuilds the directory of its cluster from the template
+ * snapshot the cluster was created with, so a job can run on any replica. The state is kept in the shared state
+ * backend, the init of every job picks it up.
+ */
+@Component
+public class ClusterOperations {
+
+    private static final String PLAN_FILE = "tfplan";
+    private static final String DESTROY_PLAN_FILE = "tfplan-destroy";
+    private static final String LOCAL_STATE_FILE = "terraform.tfstate";
+
+    private final ClusterRepository clusterRepository;
+    private final CredentialRepository credentialRepository;
+    private final AccessTokenRepository accessTokenRepository;
+    private final AccessTokenService accessTokenService;
+    private final TerraformRunner terraformRunner;
+    private final TemplateStore templateStore;
+    private final TerraformStateStore stateStore;
+    private final TerraformStateBackend stateBackend;
+    private final TerraformOutputReader outputReader;
+
+    public ClusterOperations(ClusterRepository clusterRepository, CredentialRepository credentialRepository, AccessTokenRepository accessTokenRepository,
+                             AccessTokenService accessTokenService, TerraformRunner terraformRunner, TemplateStore templateStore,
+                             TerraformStateStore stateStore, TerraformStateBackend stateBackend, TerraformOutputReader outputReader) {
+        this.clusterRepository = clusterRepository;
+        this.credentialRepository = credentialRepository;
+        this.accessTokenRepository = accessTokenRepository;
+        this.accessTokenService = accessTokenService;
+        this.terraformRunner = terraformRunner;
+        this.templateStore = templateStore;
+        this.stateStore = stateStore;
+        this.stateBackend = stateBackend;
+        this.outputReader = outputReader;
+    }
+
+    /**
+     * Runs the terraform commands of a job
+     * @param job the job
+     * @param owned tells if the job is still owned by this replica, a failed job that was taken over by another
+     *              replica leaves the cluster and its state lock to the new owner
+     * @throws ResourceNotFoundException if the cluster of the job does not exist anymore
+     * @throws InternalServiceException if a terraform command failed, the cluster is then in status ERROR
+     * @throws OperationCancelledException if the job was cancelled, the cluster is then in status CANCELLED
+     */
+    public void run(ClusterJob job, BooleanSupplier owned) {
+        Cluster cluster = clusterRepository.findByUid(job.getClusterUid());
+        if (cluster == null) {
+            throw new ResourceNotFoundException("Cluster not found");
+        }
+        String clusterDir = prepareClusterDir(cluster, job);
+        switch (job.getType()) {
+            case CREATE -> executeTerraformCreationCommands(cluster, clusterDir, null, owned);
+            case UPDATE -> executeTerraformCreationCommands(cluster, clusterDir, job, owned);
+            case DELETE -> executeTerraformDeletionCommands(cluster, clusterDir, owned);
+        }
+    }
+
+    /**
+     * Plans a cluster against its stored variables in the drift directory of the cluster without locking the state
+     * @param cluster the cluster
+     * @param outputListener receives the output of init and plan
+     * @return the exit code of terraform plan -detailed-exitcode: 0 without changes, 2 with changes, 1 on errors
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public int checkDrift(Cluster cluster, Consumer<String> outputListener) throws IOException, InterruptedException {
+        ClusterKey clusterKey = ClusterKey.of(cluster);
+        String templateDir = templateStore.getSnapshot(cluster.getTemplateCommitId()).directory().getPath();
+        String driftDir = Util.initializeDriftDir(templateDir, cluster.getCloudProvider(), cluster.getClusterName(), cluster.getRegion());
+        Util.createTfvarsFile(driftDir, Util.createTfvarsVariablesMap(createClusterDTO(cluster,
+                cluster.getMinimumNodeCount(), cluster.getMaximumNodeCount(), cluster.getDesiredNodeCount())));
+        if (!stateBackend.isEnabled()) {
+            File localState = new File(Util.getClusterDir(cluster.getCloudProvider(), cluster.getClusterName(), cluster.getRegion()), LOCAL_STATE_FILE);
+            if (localState.exists()) {
+                FileUtils.copyFile(localState, new File(driftDir, LOCAL_STATE_FILE));
+            }
+        }
+        ProcessResult init = terraformRunner.init(clusterKey, driftDir, outputListener);
+        if (!init.isSuccess()) {
+            return init.exitCode() == 0 ? 1 : init.exitCode();
+        }
+        ProcessResult plan = terraformRunner.run(clusterKey, "terraform plan -detailed-exitcode -lock=false -input=false -no-color", driftDir, outputListener);
+        return plan.timedOut() || plan.cancelled() ? 1 : plan.exitCode();
+    }
+
+    /**
+     * Removes the directory, the state and the database entries of a deleted cluster
+     */
+    private void deleteClusterData(Cluster cluster, String clusterDir) throws IOException {
+        FileUtils.deleteDirectory(new File(clusterDir));
+        FileUtils.deleteQuietly(new File(Util.getDriftDir(cluster.getCloudProvider(), cluster.getClusterName(), cluster.getRegion())));
+        stateStore.deleteState(ClusterKey.of(cluster).toString());
+        accessTokenService.evict(ClusterKey.of(cluster));
+        if (accessTokenRepository.findByUid(cluster.getAccessTokenId()) != null) {
+            accessTokenRepository.delete(accessTokenRepository.findByUid(cluster.getAccessTokenId()));
+        }
+        if (credentialRepository.findByUid(cluster.getCredentialId()) != null) {
+            credentialRepository.delete(credentialRepository.findByUid(cluster.getCredentialId()));
+        }
+        clusterRepository.delete(cluster);
+    }
+
+    private String prepareClusterDir(Cluster cluster, ClusterJob job) {
+        String templateDir = templateStore.getSnapshot(cluster.getTemplateCommitId()).directory().getPath();
+        String clusterDir = Util.initializeClusterDir(templateDir, cluster.getCloudProvider(), cluster.getClusterName(), cluster.getRegion());
+        Util.createTfvarsFile(clusterDir, Util.createTfvarsVariablesMap(createClusterDTO(cluster,
+                job.getMinimumNodeCount(), job.getMaximumNodeCount(), job.getDesiredNodeCount())));
+        return clusterDir;
+    }
+
+    private void executeTerraformCreationCommands(Cluster cluster, String clusterDir, ClusterJob update, BooleanSupplier owned) {
+        try {
+            // the plan refreshes the state, so an update only needs an init for the case the directory was rebuilt
+            updateClusterStatus(cluster, ClusterStatus.INITIALIZING);
+            checkResult("terraform init", terraformRunner.init(ClusterKey.of(cluster), clusterDir));
+            updateClusterStatus(cluster, ClusterStatus.PLANING);
+            checkResult("terraform plan", terraformRunner.run(ClusterKey.of(cluster), "terraform plan -input=false -out=" + PLAN_FILE, clusterDir));
+            updateClusterStatus(cluster, ClusterStatus.CREATING);
+            ProcessResult apply = terraformRunner.run(ClusterKey.of(cluster), "terraform apply -input=false " + PLAN_FILE, clusterDir);
+            FileUtils.deleteQuietly(new File(clusterDir, PLAN_FILE));
+            checkResult("terraform apply", apply);
+            updateClusterStatus(cluster, ClusterStatus.CREATED);
+            updateClusterOutputData(cluster);
+            if (update != null) {
+                clusterRepository.updateNodeCounts(cluster, update.getMinimumNodeCount(), update.getMaximumNodeCount(), update.getDesiredNodeCount());
+            }
+        } catch (Exception e) {
+            failed(cluster, e, owned);
+        }
+    }
+
+    private void executeTerraformDeletionCommands(Cluster cluster, String clusterDir, BooleanSupplier owned) {
+        try {
+            updateClusterStatus(cluster, ClusterStatus.PLANING_DELETE);
+            checkResult("terraform init", terraformRunner.init(ClusterKey.of(cluster), clusterDir));
+            checkResult("terraform plan", terraformRunner.run(ClusterKey.of(cluster), "terraform plan -destroy -input=false -out=" + DESTROY_PLAN_FILE, clusterDir));
+            updateClusterStatus(cluster, ClusterStatus.DELETING);
+            ProcessResult destroy = terraformRunner.run(ClusterKey.of(cluster), "terraform apply -input=false " + DESTROY_PLAN_FILE, clusterDir);
+            FileUtils.deleteQuietly(new File(clusterDir, DESTROY_PLAN_FILE));
+            checkResult("terraform destroy", destroy);
+            updateClusterStatus(cluster, ClusterStatus.DELETED);
+            deleteClusterData(cluster, clusterDir);
+        } catch (Exception e) {
+            failed(cluster, e, owned);
+        }
+    }
+
+    private void updateClusterOutputData(Cluster cluster) {
+        OutputDTO outputDTO = outputReader.getOutputData(cluster);
+        clusterRepository.updateOutputData(cluster, outputDTO.getCluster_endpoint().getValue(),
+                outputDTO.getCluster_ca_certificate().getValue(), outputDTO.getIngress_hostname().getValue());
+    }
+
+    private void checkResult(String step, ProcessResult result) {
+        if (!result.isSuccess()) {
+            throw new InternalServiceException(step + " failed, " + result.getFailure());
+        }
+    }
+
+    /**
+     * Sets the cluster to status ERROR and rethrows the error of a pipeline. A cancelled pipeline leaves the cluster
+     * in status CANCELLED with an unlocked state, so the next job can start right away. The cluster and the state
+     * of a job that was taken over by another replica are not touched, the new owner runs the job again.
+     */
+    private void failed(Cluster cluster, Exception e, BooleanSupplier owned) {
+        if (e instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+        }
+        if (!owned.getAsBoolean()) {
+            if (e instanceof OperationCancelledException cancel) {
+                throw cancel;
+            }
+            throw new InternalServiceException(e.getMessage());
+        }
+        if (e instanceof OperationCancelledException cancel) {
+            // a killed terraform could not release its lock, no other process of the cluster runs while this job holds it
+            stateStore.forceUnlock(ClusterKey.of(cluster).toString(), LocalDateTime.now());
+            updateClusterStatus(cluster, ClusterStatus.CANCELLED);
+            throw cancel;
+        }
+        if (cluster.getStatus() != ClusterStatus.DELETED) {
+            updateClusterStatus(cluster, ClusterStatus.ERROR);
+        }
+        throw new InternalServiceException(e.getMessage());
+    }
+
+    private void updateClusterStatus(Cluster cluster, ClusterStatus clusterStatus) {
+        clusterRepository.updateStatus(cluster, clusterStatus);
+    }
+
+    private ClusterDTO createClusterDTO(Cluster cluster, int minimumNodeCount, int maximumNodeCount, int desiredNodeCount) {
+        Credential credential = credentialRepository.findByUid(cluster.getCredentialId());
+        if (credential == null) {
+            throw new ResourceNotFoundException("No credential found for cluster " + ClusterKey.of(cluster));
+        }
+        ClusterDTO clusterDTO = new ClusterDTO();
+        clusterDTO.setClusterName(cluster.getClusterName());
+        clusterDTO.setRegion(cluster.getRegion());
+        clusterDTO.setCloudProvider(cluster.getCloudProvider());
+        clusterDTO.setAccessKey(credential.getAccessKey());
+        clusterDTO.setAmiType(cluster.getAmiType());
+        clusterDTO.setInstanceType(cluster.getInstanceType());
+        clusterDTO.setSecretKey(credential.getSecretKey());
+        clusterDTO.setKubernetesVersion(cluster.getKubernetesVersion());
+        clusterDTO.setDesiredNodeCount(desiredNodeCount);
+        clusterDTO.setMaximumNodeCount(maximumNodeCount);
+        clusterDTO.setMinimumNodeCount(minimumNodeCount);
+        return clusterDTO;
+    }
+}
@@ -0,0 +1,212 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.enums.ClusterStatus;
+import de.lenneflow.lenneflowterraformserver.enums.JobStatus;
+import de.lenneflow.lenneflowterraformserver.enums.JobType;
+import de.lenneflow.lenneflowterraformserver.exception.OperationInProgressException;
+import de.lenneflow.lenneflowterraformserver.model.Cluster;
+import de.lenneflow.lenneflowterraformserver.model.ClusterJob;
+import de.lenneflow.lenneflowterraformserver.model.ClusterKey;
+import de.lenneflow.lenneflowterraformserver.repository.ClusterJobRepository;
+import de.lenneflow.lenneflowterraformserver.repository.ClusterRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Finds the clusters that stay in a transient status because the operation that owned them is gone, e.g. after
+ * a restart. A cluster is only stuck if it has no queued or running job. Its creation or deletion is queued again
+ * when the last job of the cluster did not fail, a cluster whose last job failed is set to status ERROR and a cluster
+ * whose last job was cancelled to status CANCELLED.
+ * A NEW cluster is stuck when its creation was never queued, e.g. because the replica of its batch stopped. It is
+ * only taken over when the lease of its batch expired, a NEW cluster without lease after the grace period.
+ * The sweep runs shortly after the start and then periodically in its own threads, at most parallelism
+ * clusters are checked at the same time.
+ */
+@Component
+public class ClusterReconciler {
+
+    static final Set<ClusterStatus> TRANSIENT_STATUSES = Set.of(ClusterStatus.INITIALIZING, ClusterStatus.PLANING, ClusterStatus.CREATING,
+            ClusterStatus.PLANING_DELETE, ClusterStatus.DELETING);
+    static final Set<ClusterStatus> SWEPT_STATUSES = Stream.concat(TRANSIENT_STATUSES.stream(), Stream.of(ClusterStatus.NEW))
+            .collect(Collectors.toUnmodifiableSet());
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusterReconciler.class);
+
+    private final ClusterRepository clusterRepository;
+    private final ClusterJobRepository jobRepository;
+    private final ClusterJobService jobService;
+    private final TerraformStateStore stateStore;
+    private final ExecutorService sweeper;
+    private final ExecutorService checker;
+    private final Duration newClusterGrace;
+    private final int maximumInFlight;
+    private final Semaphore checkPermits;
+    private final AtomicBoolean sweepRunning = new AtomicBoolean();
+
+    public ClusterReconciler(ClusterRepository clusterRepository, ClusterJobRepository jobRepository, ClusterJobService jobService,
+                             TerraformStateStore stateStore, @Value("${reconciler.parallelism:4}") int parallelism,
+                             @Value("${reconciler.new-cluster-grace:600000}") long newClusterGrace) {
+        this.clusterRepository = clusterRepository;
+        this.jobRepository = jobRepository;
+        this.jobService = jobService;
+        this.stateStore = stateStore;
+        this.newClusterGrace = Duration.ofMillis(newClusterGrace);
+        this.sweeper = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-reconciler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger checkerThreadCounter = new AtomicInteger();
+        this.checker = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "cluster-reconciler-" + checkerThreadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // the cursor is only read ahead as far as the checks can keep up
+        this.maximumInFlight = parallelism * 2;
+        this.checkPermits = new Semaphore(maximumInFlight);
+    }
+
+    /**
+     * Starts a sweep in the background unless the previous one is still running
+     */
+    @Scheduled(initialDelayString = "${reconciler.initial-delay:10000}", fixedDelayString = "${reconciler.interval:300000}")
+    public void startSweep() {
+        if (sweepRunning.compareAndSet(false, true)) {
+            sweeper.execute(() -> {
+                try {
+                    sweep();
+                } finally {
+                    sweepRunning.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Checks all clusters in a transient status and the NEW clusters
+     * @return the number of clusters per outcome
+     */
+    Map<Outcome, Long> sweep() {
+        Map<Outcome, AtomicLong> outcomes = new EnumMap<>(Outcome.class);
+        for (Outcome outcome : Outcome.values()) {
+            outcomes.put(outcome, new AtomicLong());
+        }
+        try (Stream<Cluster> clusters = clusterRepository.streamByStatus(SWEPT_STATUSES)) {
+            Iterator<Cluster> iterator = clusters.iterator();
+            while (iterator.hasNext()) {
+                Cluster cluster = iterator.next();
+                checkPermits.acquire();
+                checker.execute(() -> {
+                    try {
+                        outcomes.get(reconcile(cluster)).incrementAndGet();
+                    } catch (RuntimeException e) {
+                        outcomes.get(Outcome.SKIPPED).incrementAndGet();
+                        logger.error("Reconciliation of cluster {} failed: {}", ClusterKey.of(cluster), e.getMessage());
+                    } finally {
+                        checkPermits.release();
+                    }
+                });
+            }
+            // wait for the running checks by taking all permits
+            checkPermits.acquire(maximumInFlight);
+            checkPermits.release(maximumInFlight);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            logger.error("Reconciliation sweep failed: {}", e.getMessage());
+        }
+        Map<Outcome, Long> result = new EnumMap<>(Outcome.class);
+        outcomes.forEach((outcome, count) -> result.put(outcome, count.get()));
+        if (result.values().stream().anyMatch(count -> count > 0)) {
+            logger.info("Reconciliation of stuck clusters finished: {}", result);
+        }
+        return result;
+    }
+
+    /**
+     * Decides what happens to a cluster in a transient status
+     */
+    Outcome reconcile(Cluster cluster) {
+        ClusterKey clusterKey = ClusterKey.of(cluster);
+        LocalDateTime checked = LocalDateTime.now();
+        if (jobRepository.existsByActiveClusterKey(clusterKey.toString())) {
+            return Outcome.SKIPPED;
+        }
+        // the job may have finished between the query of the cluster and the lookup of the job
+        Cluster currentCluster = clusterRepository.findByUid(cluster.getUid());
+        if (currentCluster == null || !isStuck(currentCluster, checked)) {
+            return Outcome.SKIPPED;
+        }
+        ClusterJob lastJob = jobRepository.findFirstByCloudProviderAndRegionAndClusterNameOrderByCreatedDesc(clusterKey.cloudProvider(), clusterKey.region(), clusterKey.clusterName());
+        try {
+            if (lastJob != null && lastJob.getStatus() == JobStatus.FAILED) {
+                clusterRepository.updateStatus(currentCluster, ClusterStatus.ERROR);
+                return Outcome.FAILED;
+            }
+            if (lastJob != null && lastJob.getStatus() == JobStatus.CANCELLED) {
+                clusterRepository.updateStatus(currentCluster, ClusterStatus.CANCELLED);
+                return Outcome.CANCELLED;
+            }
+            // nobody ran terraform for this cluster when it was checked, an older lock of the state was left by the dead operation
+            if (stateStore.forceUnlock(clusterKey.toString(), checked)) {
+                logger.warn("Removed the stale state lock of cluster {}", clusterKey);
+            }
+            boolean deletion = currentCluster.getStatus() == ClusterStatus.PLANING_DELETE || currentCluster.getStatus() == ClusterStatus.DELETING;
+            if (deletion) {
+                jobService.enqueue(JobType.DELETE, currentCluster);
+                return Outcome.RESUMED;
+            }
+            // with a saved state the apply continues from the resources created so far, otherwise it starts again
+            boolean hasState = stateStore.hasState(clusterKey.toString());
+            jobService.enqueue(JobType.CREATE, currentCluster);
+            return hasState ? Outcome.RESUMED : Outcome.RETRIED;
+        } catch (OperationInProgressException | OptimisticLockingFailureException e) {
+            // another request or replica got to the cluster first
+            return Outcome.SKIPPED;
+        }
+    }
+
+    /**
+     * @return true if the cluster is in a transient status or NEW and not waiting in a batch anymore
+     */
+    private boolean isStuck(Cluster cluster, LocalDateTime checked) {
+        if (cluster.getStatus() != ClusterStatus.NEW) {
+            return TRANSIENT_STATUSES.contains(cluster.getStatus());
+        }
+        if (cluster.getLeaseExpiration() != null) {
+            return cluster.getLeaseExpiration().isBefore(checked);
+        }
+        return cluster.getCreated() == null || cluster.getCreated().plus(newClusterGrace).isBefore(checked);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+        checker.shutdownNow();
+    }
+
+    enum Outcome {
+        RESUMED, RETRIED, FAILED, CANCELLED, SKIPPED
+    }
+}
@@ -0,0 +1,266 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.dto.DriftReportDTO;
+import de.lenneflow.lenneflowterraformserver.enums.ClusterStatus;
+import de.lenneflow.lenneflowterraformserver.enums.DriftStatus;
+import de.lenneflow.lenneflowterraformserver.exception.OperationCancelledException;
+import de.lenneflow.lenneflowterraformserver.exception.ResourceNotFoundException;
+import de.lenneflow.lenneflowterraformserver.model.Cluster;
+import de.lenneflow.lenneflowterraformserver.model.ClusterDrift;
+import de.lenneflow.lenneflowterraformserver.model.ClusterKey;
+import de.lenneflow.lenneflowterraformserver.repository.ClusterDriftRepository;
+import de.lenneflow.lenneflowterraformserver.repository.ClusterJobRepository;
+import de.lenneflow.lenneflowterraformserver.repository.ClusterRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Checks the created clusters for drift with terraform plan -detailed-exitcode -lock=false. The number of plans
+ * running at the same time is bounded by the cpu budget of this replica, the checks are shared with the other replicas
+ * through the drift collection. A cluster without drift is checked less often after every clean check, up to the
+ * maximum interval, a drifted or failed cluster is checked again after the base interval.
+ */
+@Component
+public class DriftSurvey {
+
+    private static final Logger logger = LoggerFactory.getLogger(DriftSurvey.class);
+    private static final Pattern PLAN_SUMMARY = Pattern.compile("Plan: (\\d+) to add, (\\d+) to change, (\\d+) to destroy");
+    private static final int MAX_BACKOFF_EXPONENT = 10;
+
+    private final ClusterRepository clusterRepository;
+    private final ClusterDriftRepository driftRepository;
+    private final ClusterJobRepository jobRepository;
+    private final ClusterOperations clusterOperations;
+    private final boolean enabled;
+    private final Duration interval;
+    private final Duration maximumInterval;
+    private final Duration checkTimeout;
+    private final Semaphore checkPermits;
+    private final ExecutorService checker;
+
+    public DriftSurvey(ClusterRepository clusterRepository, ClusterDriftRepository driftRepository, ClusterJobRepository jobRepository,
+                       ClusterOperations clusterOperations,
+                       @Value("${drift.enabled:true}") boolean enabled,
+                       @Value("${drift.interval:3600000}") long interval,
+                       @Value("${drift.max-interval:86400000}") long maximumInterval,
+                       @Value("${drift.check-timeout:1800000}") long checkTimeout,
+                       @Value("${drift.cpu-budget:0.5}") double cpuBudget) {
+        this.clusterRepository = clusterRepository;
+        this.driftRepository = driftRepository;
+        this.jobRepository = jobRepository;
+        this.clusterOperations = clusterOperations;
+        this.enabled = enabled;
+        this.interval = Duration.ofMillis(interval);
+        this.maximumInterval = Duration.ofMillis(maximumInterval);
+        this.checkTimeout = Duration.ofMillis(checkTimeout);
+        int concurrentChecks = Math.max(1, (int) (Runtime.getRuntime().availableProcessors() * cpuBudget));
+        this.checkPermits = new Semaphore(concurrentChecks);
+        AtomicInteger checkerThreadCounter = new AtomicInteger();
+        this.checker = Executors.newFixedThreadPool(concurrentChecks, runnable -> {
+            Thread thread = new Thread(runnable, "drift-check-" + checkerThreadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Registers the new created clusters and starts the due checks as long as the cpu budget allows
+     */
+    @Scheduled(initialDelayString = "${drift.initial-delay:60000}", fixedDelayString = "${drift.poll-interval:60000}")
+    public void survey() {
+        if (!enabled) {
+            return;
+        }
+        registerClusters();
+        while (checkPermits.tryAcquire()) {
+            ClusterDrift drift = driftRepository.claimDue(checkTimeout);
+            if (drift == null) {
+                checkPermits.release();
+                return;
+            }
+            checker.execute(() -> {
+                try {
+                    check(drift);
+                } catch (RuntimeException e) {
+                    logger.error("Drift check of cluster {} failed: {}", drift.getClusterName(), e.getMessage());
+                } finally {
+                    checkPermits.release();
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the number of registered clusters per status and a page of their last checks. The counts are made
+     * by the database, only the checks of the page are read.
+     * @param status the status of the listed checks or null for all checks
+     * @param cursor the nextCursor of the previous page or null for the first page
+     * @param limit the maximum number of checks of the page
+     * @return the report
+     */
+    public DriftReportDTO getReport(DriftStatus status, String cursor, int limit) {
+        Map<DriftStatus, Long> counts = driftRepository.countByStatus();
+        DriftReportDTO report = new DriftReportDTO();
+        report.setTotal((int) counts.values().stream().mapToLong(Long::longValue).sum());
+        report.setUnchecked(counts.getOrDefault(DriftStatus.UNCHECKED, 0L).intValue());
+        report.setNoDrift(counts.getOrDefault(DriftStatus.NO_DRIFT, 0L).intValue());
+        report.setDrifted(counts.getOrDefault(DriftStatus.DRIFTED, 0L).intValue());
+        report.setFailed(counts.getOrDefault(DriftStatus.FAILED, 0L).intValue());
+        report.setOldestCheck(driftRepository.findOldestCheck());
+        List<ClusterDrift> drifts = driftRepository.findPage(status, cursor, limit + 1);
+        if (drifts.size() > limit) {
+            List<ClusterDrift> page = new ArrayList<>(drifts.subList(0, limit));
+            report.setClusters(page);
+            report.setNextCursor(page.get(limit - 1).getClusterUid());
+        } else {
+            report.setClusters(drifts);
+        }
+        return report;
+    }
+
+    /**
+     * @param clusterKey the cluster
+     * @return the result of the last check of the cluster
+     * @throws ResourceNotFoundException if the cluster is not registered for drift checks
+     */
+    public ClusterDrift getDrift(ClusterKey clusterKey) {
+        ClusterDrift drift = driftRepository.findByCloudProviderAndRegionAndClusterName(clusterKey.cloudProvider(), clusterKey.region(), clusterKey.clusterName());
+        if (drift == null) {
+            throw new ResourceNotFoundException("No drift check found for cluster " + clusterKey);
+        }
+        return drift;
+    }
+
+    /**
+     * Adds a due check for every created cluster that has none
+     */
+    void registerClusters() {
+        Set<String> registered = new HashSet<>(driftRepository.findAllClusterUids());
+        try (Stream<Cluster> clusters = clusterRepository.streamByStatus(Set.of(ClusterStatus.CREATED))) {
+            clusters.filter(cluster -> !registered.contains(cluster.getUid())).forEach(cluster -> {
+                try {
+                    driftRepository.insert(new ClusterDrift(cluster.getUid(), cluster.getCloudProvider(), cluster.getRegion(), cluster.getClusterName(),
+                            DriftStatus.UNCHECKED, 0, 0, 0, null, null, 0, LocalDateTime.now()));
+                } catch (DuplicateKeyException e) {
+                    // registered by another replica in the meantime
+                }
+            });
+        }
+    }
+
+    /**
+     * Runs the plan of a claimed check and schedules the next check of the cluster
+     */
+    void check(ClusterDrift drift) {
+        Cluster cluster = clusterRepository.findByUid(drift.getClusterUid());
+        if (cluster == null || cluster.getStatus() != ClusterStatus.CREATED) {
+            // the cluster is registered again when it is created again
+            driftRepository.deleteById(drift.getClusterUid());
+            return;
+        }
+        if (jobRepository.existsByActiveClusterKey(ClusterKey.of(cluster).toString())) {
+            // an operation changes the cluster right now, a plan would only show its pending changes
+            drift.setNextCheck(LocalDateTime.now().plus(interval));
+            driftRepository.save(drift);
+            return;
+        }
+        PlanOutput output = new PlanOutput();
+        int exitCode;
+        try {
+            exitCode = clusterOperations.checkDrift(cluster, output::accept);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (OperationCancelledException e) {
+            // the plan shares the cancel of the cluster, an operation of the cluster was cancelled while it ran
+            drift.setNextCheck(LocalDateTime.now().plus(interval));
+            driftRepository.save(drift);
+            return;
+        } catch (Exception e) {
+            output.lastError = e.getMessage();
+            exitCode = 1;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        drift.setChecked(now);
+        drift.setToAdd(output.toAdd);
+        drift.setToChange(output.toChange);
+        drift.setToDestroy(output.toDestroy);
+        switch (exitCode) {
+            case 0 -> {
+                drift.setStatus(DriftStatus.NO_DRIFT);
+                drift.setSummary("No changes");
+                drift.setCleanChecks(drift.getCleanChecks() + 1);
+            }
+            case 2 -> {
+                drift.setStatus(DriftStatus.DRIFTED);
+                drift.setSummary(output.summary != null ? output.summary : "Changes of the outputs only");
+                drift.setCleanChecks(0);
+            }
+            default -> {
+                drift.setStatus(DriftStatus.FAILED);
+                drift.setSummary(output.lastError != null ? output.lastError : "terraform plan failed with exit code " + exitCode);
+                drift.setCleanChecks(0);
+            }
+        }
+        drift.setNextCheck(now.plus(getNextInterval(drift.getCleanChecks())));
+        driftRepository.save(drift);
+    }
+
+    /**
+     * @param cleanChecks the number of clean checks in a row
+     * @return the base interval doubled for every clean check, at most the maximum interval
+     */
+    Duration getNextInterval(int cleanChecks) {
+        Duration next = interval.multipliedBy(1L << Math.min(cleanChecks, MAX_BACKOFF_EXPONENT));
+        return next.compareTo(maximumInterval) > 0 ? maximumInterval : next;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        checker.shutdownNow();
+    }
+
+    /**
+     * Keeps only the lines of the plan output the drift summary is made of
+     */
+    static class PlanOutput {
+
+        private String summary;
+        private String lastError;
+        private int toAdd;
+        private int toChange;
+        private int toDestroy;
+
+        void accept(String line) {
+            Matcher matcher = PLAN_SUMMARY.matcher(line);
+            if (matcher.find()) {
+                summary = line.trim();
+                toAdd = Integer.parseInt(matcher.group(1));
+                toChange = Integer.parseInt(matcher.group(2));
+                toDestroy = Integer.parseInt(matcher.group(3));
+            } else if (line.startsWith("Error:")) {
+                lastError = line.trim();
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.dto.QueueStatusDTO;
+import de.lenneflow.lenneflowterraformserver.exception.OperationRejectedException;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the long-running cluster operations (terraform init/plan/apply/destroy) in the background.
+ * The number of operations running at the same time is limited and the waiting operations are kept
+ * in a bounded queue. When the queue is full, new operations are rejected instead of spawning more threads.
+ */
+@Component
+public class OperationExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(OperationExecutor.class);
+
+    private final ThreadPoolExecutor executor;
+    private final int maximumConcurrency;
+    private final int queueCapacity;
+    private final AtomicLong rejectedOperations = new AtomicLong();
+
+    public OperationExecutor(@Value("${operations.executor.concurrency:4}") int maximumConcurrency,
+                             @Value("${operations.executor.queue-capacity:50}") int queueCapacity) {
+        this.maximumConcurrency = maximumConcurrency;
+        this.queueCapacity = queueCapacity;
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(maximumConcurrency, maximumConcurrency, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> new Thread(runnable, "cluster-operation-" + threadCounter.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Queues an operation for execution.
+     * @param operation the operation to run
+     * @throws OperationRejectedException if the queue is full
+     */
+    public void submit(Runnable operation) {
+        try {
+            executor.execute(() -> {
+                try {
+                    operation.run();
+                } catch (Exception e) {
+                    logger.error("Cluster operation failed: {}", e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejectedOperations.incrementAndGet();
+            throw new OperationRejectedException("Too many pending cluster operations (" + queueCapacity + " queued), please retry later");
+        }
+    }
+
+    /**
+     * @return the current load of the executor
+     */
+    public QueueStatusDTO getQueueStatus() {
+        return new QueueStatusDTO(maximumConcurrency, executor.getActiveCount(), executor.getQueue().size(),
+                queueCapacity, executor.getCompletedTaskCount(), rejectedOperations.get());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
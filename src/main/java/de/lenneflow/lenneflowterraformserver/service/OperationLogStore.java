@@ -0,0 +1,528 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.dto.LogLinesDTO;
+import de.lenneflow.lenneflowterraformserver.dto.OperationLogDTO;
+import de.lenneflow.lenneflowterraformserver.exception.InternalServiceException;
+import de.lenneflow.lenneflowterraformserver.exception.PayloadNotValidException;
+import de.lenneflow.lenneflowterraformserver.exception.ResourceNotFoundException;
+import de.lenneflow.lenneflowterraformserver.model.ClusterKey;
+import de.lenneflow.lenneflowterraformserver.util.Util;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the output of every cluster operation in its own append-only log segment on disk. A segment is a sequence
+ * of gzip members (so the whole file can be read with zcat), each member compresses a block of complete lines.
+ * An index file next to the segment has one entry per block with its compressed position and its first byte and
+ * line, so a range of a large log is read by decompressing only the blocks that overlap it. The block of the
+ * running operation is written when it is full or when the operation ends, reads get its lines from memory.
+ * Segments are removed after the retention.
+ */
+@Component
+public class OperationLogStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(OperationLogStore.class);
+
+    private static final String SEGMENT_SUFFIX = ".log.gz";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final int INDEX_ENTRY_SIZE = 36;
+    private static final int MAXIMUM_READ_LINES = 10000;
+    private static final int MAXIMUM_READ_BYTES = 1024 * 1024;
+    private static final Pattern OPERATION_ID_PATTERN = Pattern.compile("[A-Za-z0-9_-]+");
+
+    private final File logsDir;
+    private final int blockSize;
+    private final long retention;
+    private final Map<ClusterKey, SegmentWriter> writers = new ConcurrentHashMap<>();
+
+    public OperationLogStore(@Value("${terraform.logs.dir:}") String logsDir,
+                             @Value("${terraform.logs.block-size:65536}") int blockSize,
+                             @Value("${terraform.logs.retention:2592000000}") long retention) {
+        this.logsDir = new File(logsDir == null || logsDir.isBlank() ? Util.getBaseDir() + File.separator + "logs" : logsDir);
+        if (!this.logsDir.exists() && !this.logsDir.mkdirs()) {
+            throw new InternalServiceException("Unable to create directory " + this.logsDir);
+        }
+        this.blockSize = blockSize;
+        this.retention = retention;
+    }
+
+    /**
+     * Starts the log of an operation of a cluster. The log of a previous attempt of the operation is continued.
+     * @param clusterKey the cluster
+     * @param operationId the id of the operation, the job id
+     */
+    public void open(ClusterKey clusterKey, String operationId) {
+        File segment = getSegment(clusterKey, operationId);
+        File clusterDir = segment.getParentFile();
+        if (!clusterDir.exists() && !clusterDir.mkdirs()) {
+            throw new InternalServiceException("Unable to create directory " + clusterDir);
+        }
+        try {
+            SegmentWriter previous = writers.put(clusterKey, new SegmentWriter(operationId, segment, getIndex(segment)));
+            if (previous != null) {
+                previous.close();
+            }
+        } catch (IOException e) {
+            throw new InternalServiceException("Unable to open the log of operation " + operationId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Adds an output line to the log of the running operation of a cluster
+     * @param clusterKey the cluster
+     * @param line the output line
+     */
+    public void append(ClusterKey clusterKey, String line) {
+        SegmentWriter writer = writers.get(clusterKey);
+        if (writer != null) {
+            writer.append(line);
+        }
+    }
+
+    /**
+     * Writes the rest of the log of the running operation of a cluster and closes it
+     * @param clusterKey the cluster
+     */
+    public void close(ClusterKey clusterKey) {
+        SegmentWriter writer = writers.remove(clusterKey);
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    /**
+     * @param clusterKey the cluster
+     * @param operationId the id of the operation
+     * @return true if the log of the operation is kept by this replica
+     */
+    public boolean contains(ClusterKey clusterKey, String operationId) {
+        return getSegment(clusterKey, operationId).exists();
+    }
+
+    /**
+     * @param clusterKey the cluster
+     * @return the logs of the operations of a cluster kept by this replica, the latest first
+     */
+    public List<OperationLogDTO> list(ClusterKey clusterKey) {
+        File[] segments = getClusterDir(clusterKey).listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (segments == null) {
+            return List.of();
+        }
+        List<OperationLogDTO> logs = new ArrayList<>();
+        for (File segment : segments) {
+            String operationId = segment.getName().substring(0, segment.getName().length() - SEGMENT_SUFFIX.length());
+            try {
+                logs.add(describe(clusterKey, operationId, segment));
+            } catch (IOException e) {
+                logger.warn("Unable to read the index of log {}: {}", segment, e.getMessage());
+            }
+        }
+        logs.sort(Comparator.comparing(OperationLogDTO::getLastModified).reversed());
+        return logs;
+    }
+
+    /**
+     * Reads a range of lines of an operation log
+     * @param clusterKey the cluster
+     * @param operationId the id of the operation
+     * @param fromLine the number of the first line, starting at 0
+     * @param count the maximum number of lines
+     * @return the lines
+     */
+    public LogLinesDTO readLines(ClusterKey clusterKey, String operationId, long fromLine, int count) {
+        if (fromLine < 0 || count < 0) {
+            throw new PayloadNotValidException("The line range must not be negative");
+        }
+        File segment = getExistingSegment(clusterKey, operationId);
+        int limit = Math.min(count, MAXIMUM_READ_LINES);
+        try {
+            LogView view = readView(clusterKey, operationId, segment);
+            List<String> lines = new ArrayList<>();
+            try (RandomAccessFile file = new RandomAccessFile(segment, "r")) {
+                for (Block block : view.blocks()) {
+                    if (lines.size() >= limit) {
+                        break;
+                    }
+                    if (block.firstLine() + block.lineCount() <= fromLine) {
+                        continue;
+                    }
+                    String[] blockLines = new String(view.read(file, block), StandardCharsets.UTF_8).split("\n", -1);
+                    // the block ends with a newline, so the last element is empty
+                    int start = (int) Math.max(0, fromLine - block.firstLine());
+                    for (int i = start; i < block.lineCount() && lines.size() < limit; i++) {
+                        lines.add(blockLines[i]);
+                    }
+                }
+            }
+            long totalLines = view.endLine();
+            return new LogLinesDTO(operationId, Math.min(fromLine, totalLines), lines, totalLines, view.running());
+        } catch (IOException e) {
+            throw new InternalServiceException("Unable to read the log of operation " + operationId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the last lines of an operation log
+     * @param clusterKey the cluster
+     * @param operationId the id of the operation
+     * @param count the number of lines
+     * @return the lines
+     */
+    public LogLinesDTO tail(ClusterKey clusterKey, String operationId, int count) {
+        if (count < 0) {
+            throw new PayloadNotValidException("The number of lines must not be negative");
+        }
+        File segment = getExistingSegment(clusterKey, operationId);
+        try {
+            long totalLines = readView(clusterKey, operationId, segment).endLine();
+            int limit = Math.min(count, MAXIMUM_READ_LINES);
+            return readLines(clusterKey, operationId, Math.max(0, totalLines - limit), limit);
+        } catch (IOException e) {
+            throw new InternalServiceException("Unable to read the log of operation " + operationId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads a range of bytes of the uncompressed output of an operation
+     * @param clusterKey the cluster
+     * @param operationId the id of the operation
+     * @param offset the position of the first byte
+     * @param length the maximum number of bytes
+     * @return the bytes, fewer than length at the end of the log
+     */
+    public byte[] readBytes(ClusterKey clusterKey, String operationId, long offset, int length) {
+        if (offset < 0 || length < 0) {
+            throw new PayloadNotValidException("The byte range must not be negative");
+        }
+        File segment = getExistingSegment(clusterKey, operationId);
+        long end = offset + Math.min(length, MAXIMUM_READ_BYTES);
+        ByteArrayOutputStream range = new ByteArrayOutputStream();
+        try (RandomAccessFile file = new RandomAccessFile(segment, "r")) {
+            LogView view = readView(clusterKey, operationId, segment);
+            for (Block block : view.blocks()) {
+                if (block.firstByte() >= end) {
+                    break;
+                }
+                if (block.endByte() <= offset) {
+                    continue;
+                }
+                byte[] content = view.read(file, block);
+                int start = (int) Math.max(0, offset - block.firstByte());
+                int stop = (int) Math.min(content.length, end - block.firstByte());
+                range.write(content, start, stop - start);
+            }
+            return range.toByteArray();
+        } catch (IOException e) {
+            throw new InternalServiceException("Unable to read the log of operation " + operationId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param clusterKey the cluster
+     * @param operationId the id of the operation
+     * @return the uncompressed size of the output of an operation in bytes
+     */
+    public long getSize(ClusterKey clusterKey, String operationId) {
+        File segment = getExistingSegment(clusterKey, operationId);
+        try {
+            return readView(clusterKey, operationId, segment).endByte();
+        } catch (IOException e) {
+            throw new InternalServiceException("Unable to read the log of operation " + operationId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Removes the logs that were not written to within the retention time
+     */
+    @Scheduled(fixedDelayString = "${terraform.logs.cleanup-interval:3600000}")
+    public void removeExpiredLogs() {
+        long expiry = System.currentTimeMillis() - retention;
+        List<File> openSegments = writers.values().stream().map(writer -> writer.segment).toList();
+        for (File segment : findSegments(logsDir)) {
+            if (segment.lastModified() < expiry && !openSegments.contains(segment)) {
+                File index = getIndex(segment);
+                if (segment.delete() && (!index.exists() || index.delete())) {
+                    logger.info("Removed expired log {}", segment);
+                } else {
+                    logger.warn("Unable to remove expired log {}", segment);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writers.keySet().forEach(this::close);
+    }
+
+    private OperationLogDTO describe(ClusterKey clusterKey, String operationId, File segment) throws IOException {
+        LogView view = readView(clusterKey, operationId, segment);
+        LocalDateTime lastModified = LocalDateTime.ofInstant(Instant.ofEpochMilli(segment.lastModified()), ZoneId.systemDefault());
+        return new OperationLogDTO(operationId, view.running(), view.endByte(), view.compressedSize(), view.endLine(), lastModified, null);
+    }
+
+    /**
+     * Reads the blocks of a log. The lines of the running operation that are not in a block yet are added as
+     * a last block that is kept in memory, they are taken before the index is read, so a block written in between
+     * is left out.
+     */
+    private LogView readView(ClusterKey clusterKey, String operationId, File segment) throws IOException {
+        SegmentWriter writer = writers.get(clusterKey);
+        PendingBlock pending = writer != null && writer.operationId.equals(operationId) ? writer.getPending() : null;
+        List<Block> blocks = readIndex(getIndex(segment));
+        if (pending == null) {
+            return new LogView(blocks, null, false);
+        }
+        blocks.removeIf(block -> block.endLine() > pending.block().firstLine());
+        if (pending.block().lineCount() > 0) {
+            blocks.add(pending.block());
+        }
+        return new LogView(blocks, pending, true);
+    }
+
+    private File getExistingSegment(ClusterKey clusterKey, String operationId) {
+        File segment = getSegment(clusterKey, operationId);
+        if (!segment.exists()) {
+            throw new ResourceNotFoundException("No log found for operation " + operationId + " of cluster " + clusterKey);
+        }
+        return segment;
+    }
+
+    private File getSegment(ClusterKey clusterKey, String operationId) {
+        if (operationId == null || !OPERATION_ID_PATTERN.matcher(operationId).matches()) {
+            throw new PayloadNotValidException("Invalid operation id " + operationId);
+        }
+        return new File(getClusterDir(clusterKey), operationId + SEGMENT_SUFFIX);
+    }
+
+    private File getClusterDir(ClusterKey clusterKey) {
+        File clusterDir = new File(logsDir, clusterKey.cloudProvider().toString().toLowerCase() + File.separator
+                + clusterKey.region() + File.separator + clusterKey.clusterName());
+        try {
+            if (!clusterDir.getCanonicalPath().startsWith(logsDir.getCanonicalPath() + File.separator)) {
+                throw new PayloadNotValidException("Invalid cluster " + clusterKey);
+            }
+        } catch (IOException e) {
+            throw new InternalServiceException("Unable to resolve the log directory of cluster " + clusterKey);
+        }
+        return clusterDir;
+    }
+
+    private static File getIndex(File segment) {
+        String name = segment.getName();
+        return new File(segment.getParentFile(), name.substring(0, name.length() - SEGMENT_SUFFIX.length()) + INDEX_SUFFIX);
+    }
+
+    private static List<File> findSegments(File dir) {
+        List<File> segments = new ArrayList<>();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            Arrays.stream(files).forEach(file -> {
+                if (file.isDirectory()) {
+                    segments.addAll(findSegments(file));
+                } else if (file.getName().endsWith(SEGMENT_SUFFIX)) {
+                    segments.add(file);
+                }
+            });
+        }
+        return segments;
+    }
+
+    /**
+     * Reads the complete entries of an index file, a partly written last entry is ignored
+     */
+    private static List<Block> readIndex(File index) throws IOException {
+        List<Block> blocks = new ArrayList<>();
+        if (!index.exists()) {
+            return blocks;
+        }
+        long entries = index.length() / INDEX_ENTRY_SIZE;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(index)))) {
+            for (long i = 0; i < entries; i++) {
+                blocks.add(new Block(input.readLong(), input.readInt(), input.readLong(), input.readInt(), input.readLong(), input.readInt()));
+            }
+        }
+        return blocks;
+    }
+
+    private static byte[] readBlock(RandomAccessFile file, Block block) throws IOException {
+        byte[] compressed = new byte[block.compressedLength()];
+        file.seek(block.compressedOffset());
+        file.readFully(compressed);
+        try (InputStream input = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return input.readAllBytes();
+        }
+    }
+
+    /**
+     * An index entry, the position of a compressed block in the segment and the range of the output it contains
+     */
+    private record Block(long compressedOffset, int compressedLength, long firstByte, int byteLength, long firstLine, int lineCount) {
+
+        long endByte() {
+            return firstByte + byteLength;
+        }
+
+        long endLine() {
+            return firstLine + lineCount;
+        }
+    }
+
+    /**
+     * The lines of the running operation that are not written to the segment yet, as a block without a compressed position
+     */
+    private record PendingBlock(Block block, byte[] content) {
+    }
+
+    /**
+     * The blocks of a log at the time of a read, the last block of a running operation may be kept in memory
+     */
+    private record LogView(List<Block> blocks, PendingBlock pending, boolean running) {
+
+        byte[] read(RandomAccessFile file, Block block) throws IOException {
+            return pending != null && block == pending.block() ? pending.content() : readBlock(file, block);
+        }
+
+        long endByte() {
+            return blocks.isEmpty() ? 0 : blocks.get(blocks.size() - 1).endByte();
+        }
+
+        long endLine() {
+            return blocks.isEmpty() ? 0 : blocks.get(blocks.size() - 1).endLine();
+        }
+
+        long compressedSize() {
+            return blocks.stream().filter(block -> pending == null || block != pending.block())
+                    .mapToLong(block -> block.compressedOffset() + block.compressedLength()).max().orElse(0);
+        }
+    }
+
+    /**
+     * Appends the blocks of the running operation of a cluster to its segment. The block is written to the segment
+     * before its index entry, so a reader only finds entries of complete blocks.
+     */
+    private class SegmentWriter {
+
+        private final String operationId;
+        private final File segment;
+        private final FileChannel segmentChannel;
+        private final FileChannel indexChannel;
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        private int pendingLines;
+        private long compressedSize;
+        private long bytes;
+        private long lines;
+        private boolean failed;
+
+        SegmentWriter(String operationId, File segment, File index) throws IOException {
+            this.operationId = operationId;
+            this.segment = segment;
+            List<Block> blocks = readIndex(index);
+            if (!blocks.isEmpty()) {
+                Block last = blocks.get(blocks.size() - 1);
+                compressedSize = last.compressedOffset() + last.compressedLength();
+                bytes = last.endByte();
+                lines = last.endLine();
+            }
+            this.segmentChannel = FileChannel.open(segment.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            this.indexChannel = FileChannel.open(index.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            // a block or entry written only partly by a stopped replica is overwritten
+            segmentChannel.truncate(compressedSize);
+            segmentChannel.position(compressedSize);
+            indexChannel.truncate((long) blocks.size() * INDEX_ENTRY_SIZE);
+            indexChannel.position((long) blocks.size() * INDEX_ENTRY_SIZE);
+        }
+
+        synchronized void append(String line) {
+            if (failed) {
+                return;
+            }
+            pending.writeBytes(line.getBytes(StandardCharsets.UTF_8));
+            pending.write('\n');
+            pendingLines++;
+            if (pending.size() >= blockSize) {
+                flush();
+            }
+        }
+
+        synchronized void flush() {
+            if (failed || pendingLines == 0) {
+                return;
+            }
+            try {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                    pending.writeTo(gzip);
+                }
+                segmentChannel.write(ByteBuffer.wrap(compressed.toByteArray()));
+                ByteArrayOutputStream entry = new ByteArrayOutputStream(INDEX_ENTRY_SIZE);
+                try (DataOutputStream output = new DataOutputStream(entry)) {
+                    output.writeLong(compressedSize);
+                    output.writeInt(compressed.size());
+                    output.writeLong(bytes);
+                    output.writeInt(pending.size());
+                    output.writeLong(lines);
+                    output.writeInt(pendingLines);
+                }
+                indexChannel.write(ByteBuffer.wrap(entry.toByteArray()));
+                compressedSize += compressed.size();
+                bytes += pending.size();
+                lines += pendingLines;
+            } catch (IOException e) {
+                failed = true;
+                logger.error("Writing the log of operation {} failed: {}", operationId, e.getMessage());
+            } finally {
+                pending.reset();
+                pendingLines = 0;
+            }
+        }
+
+        /**
+         * @return a copy of the lines that are not in a block yet, positioned after the last written block
+         */
+        synchronized PendingBlock getPending() {
+            return new PendingBlock(new Block(-1, 0, bytes, pending.size(), lines, pendingLines), pending.toByteArray());
+        }
+
+        synchronized void close() {
+            flush();
+            try {
+                segmentChannel.close();
+                indexChannel.close();
+            } catch (IOException e) {
+                logger.warn("Closing the log of operation {} failed: {}", operationId, e.getMessage());
+            }
+        }
+    }
+}
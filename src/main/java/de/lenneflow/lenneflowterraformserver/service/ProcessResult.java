@@ -0,0 +1,39 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * The result of a finished child process
+ * @param exitCode the exit code, the signal exit code if the process was killed
+ * @param stdoutTail the last lines of the standard output
+ * @param stderrTail the last lines of the error output
+ * @param duration the time from the start to the exit of the process
+ * @param timedOut true if the process was killed because its timeout expired
+ * @param cancelled true if the process was killed because it was cancelled
+ */
+public record ProcessResult(int exitCode, List<String> stdoutTail, List<String> stderrTail, Duration duration,
+                            boolean timedOut, boolean cancelled) {
+
+    /**
+     * @return true if the process exited by itself with exit code 0
+     */
+    public boolean isSuccess() {
+        return exitCode == 0 && !timedOut && !cancelled;
+    }
+
+    /**
+     * @return why the process failed and the last line of its error output
+     */
+    public String getFailure() {
+        String reason;
+        if (timedOut) {
+            reason = "timed out after " + duration.toSeconds() + "s";
+        } else if (cancelled) {
+            reason = "cancelled after " + duration.toSeconds() + "s";
+        } else {
+            reason = "exit code " + exitCode;
+        }
+        return stderrTail.isEmpty() ? reason : reason + ": " + stderrTail.get(stderrTail.size() - 1);
+    }
+}
@@ -0,0 +1,370 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs child processes without a thread per process or stream. A single drainer thread polls the stdout and stderr
+ * pipes of all running processes, so no child blocks on a full pipe. Complete lines are queued for the listener of
+ * the process and the last lines of both streams are kept for the result. The listeners are called by the output
+ * threads, one process at a time in the order of its lines, so a slow listener never delays the drainer. The pipes
+ * of a process are not read while its queue is full, the process then waits on its pipe until the listener caught up.
+ * The drainer also enforces the timeouts: an expired or cancelled process is asked to stop and its whole process
+ * tree is killed after the grace period.
+ */
+@Component
+public class ProcessRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProcessRunner.class);
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private final Duration killGracePeriod;
+    private final int tailLines;
+    private final int outputQueueSize;
+    private final Set<RunningProcess> runningProcesses = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService drainer;
+    private final ExecutorService outputDelivery;
+
+    public ProcessRunner(@Value("${process.poll-interval:20}") long pollInterval,
+                         @Value("${process.kill-grace-period:30000}") long killGracePeriod,
+                         @Value("${process.tail-lines:50}") int tailLines,
+                         @Value("${process.output-queue-size:1000}") int outputQueueSize,
+                         @Value("${process.output-threads:2}") int outputThreads) {
+        this.killGracePeriod = Duration.ofMillis(killGracePeriod);
+        this.tailLines = tailLines;
+        this.outputQueueSize = Math.max(1, outputQueueSize);
+        this.drainer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "process-drainer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger outputThreadCounter = new AtomicInteger();
+        this.outputDelivery = Executors.newFixedThreadPool(Math.max(1, outputThreads), runnable -> {
+            Thread thread = new Thread(runnable, "process-output-" + outputThreadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        drainer.scheduleWithFixedDelay(this::drain, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts a child process
+     * @param command the command and its arguments
+     * @param directory the working directory
+     * @param environment the variables added to the environment of the process
+     * @param timeout the time after which the process is killed
+     * @param outputListener receives the lines of stdout and stderr on an output thread while the process is running
+     * @return the running process
+     * @throws IOException if the process could not be started
+     */
+    public RunningProcess start(List<String> command, File directory, Map<String, String> environment, Duration timeout,
+                                Consumer<String> outputListener) throws IOException {
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        processBuilder.environment().putAll(environment);
+        processBuilder.directory(directory);
+        RunningProcess runningProcess = new RunningProcess(processBuilder.start(), timeout, outputListener);
+        runningProcesses.add(runningProcess);
+        return runningProcess;
+    }
+
+    /**
+     * Runs a child process and waits for its exit
+     * @param command the command and its arguments
+     * @param directory the working directory
+     * @param environment the variables added to the environment of the process
+     * @param timeout the time after which the process is killed
+     * @param outputListener receives the lines of stdout and stderr on an output thread while the process is running
+     * @return the result of the process
+     * @throws IOException if the process could not be started
+     * @throws InterruptedException if the calling thread was interrupted, the process is then cancelled
+     */
+    public ProcessResult run(List<String> command, File directory, Map<String, String> environment, Duration timeout,
+                             Consumer<String> outputListener) throws IOException, InterruptedException {
+        return start(command, directory, environment, timeout, outputListener).await();
+    }
+
+    /**
+     * @return the number of running child processes
+     */
+    public int getRunningCount() {
+        return runningProcesses.size();
+    }
+
+    /**
+     * Reads the available output of every running process and finishes the processes that exited
+     */
+    private void drain() {
+        for (RunningProcess runningProcess : runningProcesses) {
+            try {
+                boolean exited = !runningProcess.process.isAlive();
+                // after the exit the rest of the output is still in the pipe, so it is read until the pipes are empty
+                boolean stdoutDrained = runningProcess.stdout.read();
+                boolean stderrDrained = runningProcess.stderr.read();
+                if (exited && stdoutDrained && stderrDrained) {
+                    runningProcesses.remove(runningProcess);
+                    runningProcess.finish();
+                } else if (!exited) {
+                    runningProcess.enforceDeadlines();
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.error("Reading the output of process {} failed: {}", runningProcess.process.pid(), e.getMessage());
+                runningProcesses.remove(runningProcess);
+                runningProcess.killTree();
+                runningProcess.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        drainer.shutdownNow();
+        outputDelivery.shutdownNow();
+        runningProcesses.forEach(RunningProcess::killTree);
+    }
+
+    /**
+     * A started child process
+     */
+    public class RunningProcess {
+
+        private final Process process;
+        private final long started = System.nanoTime();
+        private final long deadline;
+        private final OutputTail stdout;
+        private final OutputTail stderr;
+        private final CompletableFuture<ProcessResult> result = new CompletableFuture<>();
+        private final Consumer<String> outputListener;
+        private final Queue<String> pendingLines = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendingCount = new AtomicInteger();
+        private final AtomicBoolean delivering = new AtomicBoolean();
+        private volatile ProcessResult exitResult;
+        private volatile boolean timedOut;
+        private volatile boolean cancelled;
+        private volatile long killDeadline;
+
+        private RunningProcess(Process process, Duration timeout, Consumer<String> outputListener) {
+            this.process = process;
+            this.deadline = started + timeout.toNanos();
+            this.outputListener = outputListener;
+            this.stdout = new OutputTail(process.getInputStream(), this);
+            this.stderr = new OutputTail(process.getErrorStream(), this);
+        }
+
+        /**
+         * @return the process id
+         */
+        public long getPid() {
+            return process.pid();
+        }
+
+        /**
+         * @return the result, completed when the process exited and its output was read
+         */
+        public CompletableFuture<ProcessResult> getResult() {
+            return result;
+        }
+
+        /**
+         * Waits for the exit of the process
+         * @return the result of the process
+         * @throws IOException if the output of the process could not be read
+         * @throws InterruptedException if the calling thread was interrupted, the process is then cancelled
+         */
+        public ProcessResult await() throws IOException, InterruptedException {
+            try {
+                return result.get();
+            } catch (InterruptedException e) {
+                cancel();
+                throw e;
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException cause ? cause : new IOException(e.getCause());
+            }
+        }
+
+        /**
+         * Asks the process to stop, the process tree is killed if it is still running after the grace period
+         */
+        public void cancel() {
+            if (!timedOut && !cancelled) {
+                cancelled = true;
+                terminate();
+            }
+        }
+
+        private void enforceDeadlines() {
+            long now = System.nanoTime();
+            if (!timedOut && !cancelled && now - deadline > 0) {
+                timedOut = true;
+                logger.warn("Process {} timed out, terminating it", process.pid());
+                terminate();
+            } else if (killDeadline != 0 && now - killDeadline > 0) {
+                logger.warn("Process {} did not stop within {}s, killing its process tree", process.pid(), killGracePeriod.toSeconds());
+                killTree();
+                killDeadline = 0;
+            }
+        }
+
+        private void terminate() {
+            killDeadline = System.nanoTime() + killGracePeriod.toNanos();
+            // the process stops its own children on SIGTERM, they are only killed if it does not stop in time.
+            // The signals are sent through the handle, Process.destroy would close the pipes that are still drained.
+            process.toHandle().destroy();
+        }
+
+        private void killTree() {
+            process.descendants().forEach(ProcessHandle::destroyForcibly);
+            process.toHandle().destroyForcibly();
+        }
+
+        /**
+         * Completes the result once the listener received the last lines of the process
+         */
+        private void finish() {
+            stdout.flush();
+            stderr.flush();
+            Duration duration = Duration.ofNanos(System.nanoTime() - started);
+            exitResult = new ProcessResult(process.exitValue(), stdout.getLines(), stderr.getLines(), duration, timedOut, cancelled);
+            scheduleDelivery();
+        }
+
+        private boolean isBacklogged() {
+            return pendingCount.get() >= outputQueueSize;
+        }
+
+        private void offer(String line) {
+            pendingLines.add(line);
+            pendingCount.incrementAndGet();
+            scheduleDelivery();
+        }
+
+        private void scheduleDelivery() {
+            if (delivering.compareAndSet(false, true)) {
+                try {
+                    outputDelivery.execute(this::deliver);
+                } catch (RejectedExecutionException e) {
+                    delivering.set(false);
+                }
+            }
+        }
+
+        private void deliver() {
+            String line;
+            while ((line = pendingLines.poll()) != null) {
+                pendingCount.decrementAndGet();
+                logger.debug(line);
+                try {
+                    outputListener.accept(line);
+                } catch (RuntimeException e) {
+                    logger.warn("Output listener failed: {}", e.getMessage());
+                }
+            }
+            delivering.set(false);
+            // a line queued after the last poll would otherwise wait for the next line of the process
+            if (!pendingLines.isEmpty()) {
+                scheduleDelivery();
+            } else if (exitResult != null) {
+                result.complete(exitResult);
+            }
+        }
+    }
+
+    /**
+     * Splits the output of a stream into lines and keeps the last lines that are not blank
+     */
+    private class OutputTail {
+
+        private final InputStream inputStream;
+        private final RunningProcess runningProcess;
+        private final byte[] buffer = new byte[READ_BUFFER_SIZE];
+        private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+        private final Deque<String> lines = new ArrayDeque<>();
+
+        OutputTail(InputStream inputStream, RunningProcess runningProcess) {
+            this.inputStream = inputStream;
+            this.runningProcess = runningProcess;
+        }
+
+        /**
+         * Reads the output that is available without blocking, until the queue of the process is full
+         * @return true if the stream has no more output available
+         */
+        boolean read() throws IOException {
+            int available;
+            while ((available = inputStream.available()) > 0) {
+                if (runningProcess.isBacklogged()) {
+                    return false;
+                }
+                int count = inputStream.read(buffer, 0, Math.min(available, buffer.length));
+                if (count < 0) {
+                    return true;
+                }
+                int lineStart = 0;
+                for (int i = 0; i < count; i++) {
+                    if (buffer[i] == '\n') {
+                        partialLine.write(buffer, lineStart, i - lineStart);
+                        emitLine();
+                        lineStart = i + 1;
+                    }
+                }
+                partialLine.write(buffer, lineStart, count - lineStart);
+            }
+            return true;
+        }
+
+        void flush() {
+            if (partialLine.size() > 0) {
+                emitLine();
+            }
+        }
+
+        synchronized List<String> getLines() {
+            return new ArrayList<>(lines);
+        }
+
+        private void emitLine() {
+            String line = partialLine.toString(StandardCharsets.UTF_8);
+            partialLine.reset();
+            if (line.endsWith("\r")) {
+                line = line.substring(0, line.length() - 1);
+            }
+            if (!line.isBlank()) {
+                synchronized (this) {
+                    lines.addLast(line);
+                    if (lines.size() > tailLines) {
+                        lines.removeFirst();
+                    }
+                }
+            }
+            runningProcess.offer(line);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.exception.OperationOnOtherReplicaException;
+import de.lenneflow.lenneflowterraformserver.model.ClusterJob;
+import de.lenneflow.lenneflowterraformserver.model.ClusterKey;
+import de.lenneflow.lenneflowterraformserver.repository.ClusterJobRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import org.springframework.web.util.UriComponents;
+import org.springframework.web.util.UriComponentsBuilder;
+
+/**
+ * Sends the requests for the output of an operation to the replica that ran it. The live output and the stored
+ * log of an operation are only kept on the replica that claimed its job, the job records the address of that
+ * replica. A request for the output of a job of another replica is redirected with the same path and query.
+ * The output of a replica that is gone is not available anymore.
+ */
+@Component
+public class ReplicaRouter {
+
+    private final ClusterJobRepository jobRepository;
+    private final ClusterJobWorker jobWorker;
+
+    public ReplicaRouter(ClusterJobRepository jobRepository, ClusterJobWorker jobWorker) {
+        this.jobRepository = jobRepository;
+        this.jobWorker = jobWorker;
+    }
+
+    /**
+     * Redirects the current request if the operation ran on another replica
+     * @param operationId the id of the operation, the job id
+     * @throws OperationOnOtherReplicaException if the operation ran on another replica
+     */
+    public void redirectToOwner(String operationId) {
+        redirectToOwner(jobRepository.findByUid(operationId));
+    }
+
+    /**
+     * Redirects the current request if the running or the last operation of a cluster ran on another replica
+     * @param clusterKey the cluster
+     * @throws OperationOnOtherReplicaException if the operation ran on another replica
+     */
+    public void redirectToOwner(ClusterKey clusterKey) {
+        redirectToOwner(jobRepository.findFirstByCloudProviderAndRegionAndClusterNameOrderByCreatedDesc(clusterKey.cloudProvider(),
+                clusterKey.region(), clusterKey.clusterName()));
+    }
+
+    /**
+     * @param job the job
+     * @return the address of the replica that ran the job or null if it ran on this replica or was not claimed yet
+     */
+    public String getRemoteOwner(ClusterJob job) {
+        if (job == null || job.getOwnerAddress() == null || job.getOwnerAddress().equals(jobWorker.getReplicaAddress())) {
+            return null;
+        }
+        return job.getOwnerAddress();
+    }
+
+    /**
+     * @param ownerAddress the address of the replica
+     * @param path the path below the current request path or an empty string
+     * @return the URL of the current request on the replica
+     */
+    public String getLocation(String ownerAddress, String path) {
+        UriComponents request = ServletUriComponentsBuilder.fromCurrentRequest().build();
+        return UriComponentsBuilder.fromUriString(ownerAddress)
+                .path(request.getPath() + path)
+                .query(path.isEmpty() ? request.getQuery() : null)
+                .build().toUriString();
+    }
+
+    private void redirectToOwner(ClusterJob job) {
+        String ownerAddress = getRemoteOwner(job);
+        if (ownerAddress != null) {
+            throw new OperationOnOtherReplicaException(getLocation(ownerAddress, ""));
+        }
+    }
+}
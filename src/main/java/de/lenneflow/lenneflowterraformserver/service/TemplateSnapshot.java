@@ -0,0 +1,21 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.enums.CloudProvider;
+
+import java.io.File;
+
+/**
+ * An immutable checkout of the terraform template repository at one commit.
+ * @param commitId the commit the files were checked out from
+ * @param directory the directory containing the files
+ */
+public record TemplateSnapshot(String commitId, File directory) {
+
+    /**
+     * @param cloudProvider the cloud provider
+     * @return the directory with the terraform files of the cloud provider
+     */
+    public File getProviderDir(CloudProvider cloudProvider) {
+        return new File(directory, cloudProvider.toString().toLowerCase());
+    }
+}
@@ -0,0 +1,190 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.exception.InternalServiceException;
+import de.lenneflow.lenneflowterraformserver.util.Util;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+
+/**
+ * Keeps a local copy of the terraform template repository and provides immutable snapshots of it.
+ * The repository is cloned once and then updated with incremental fetches in the background. Every commit
+ * is checked out into its own directory that is never modified afterward, so cluster directories can be
+ * created from a snapshot while the repository is being refreshed.
+ */
+@Component
+public class TemplateStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(TemplateStore.class);
+
+    private final String repositoryUrl;
+    private final String branch;
+    private final File repositoryDir;
+    private final File snapshotsDir;
+
+    private volatile TemplateSnapshot currentSnapshot;
+
+    public TemplateStore(@Value("${git.repository.url}") String repositoryUrl,
+                         @Value("${git.repository.branch}") String branch,
+                         @Value("${git.repository.local-dir:}") String localDir) {
+        this.repositoryUrl = repositoryUrl;
+        this.branch = branch;
+        File storeDir = new File(localDir == null || localDir.isBlank() ? Util.getBaseDir() + File.separator + "Templates" : localDir);
+        this.repositoryDir = new File(storeDir, "repository");
+        this.snapshotsDir = new File(storeDir, "snapshots");
+        if (!snapshotsDir.exists() && !snapshotsDir.mkdirs()) {
+            throw new InternalServiceException("Unable to create directory " + snapshotsDir);
+        }
+    }
+
+    /**
+     * Returns the snapshot of the latest fetched commit. The repository is only fetched here if it was never fetched before.
+     * @return the current snapshot
+     */
+    public TemplateSnapshot getSnapshot() {
+        TemplateSnapshot snapshot = currentSnapshot;
+        if (snapshot == null) {
+            snapshot = refresh();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns the snapshot of a given commit. If no commit is given, the current snapshot is returned.
+     * The commit may have been pinned by another replica after the last fetch of this one, so the branch
+     * is fetched when the commit is not in the local repository.
+     * @param commitId the commit id
+     * @return the snapshot of the commit
+     */
+    public TemplateSnapshot getSnapshot(String commitId) {
+        if (commitId == null || commitId.isEmpty()) {
+            return getSnapshot();
+        }
+        TemplateSnapshot snapshot = currentSnapshot;
+        if (snapshot != null && snapshot.commitId().equals(commitId)) {
+            return snapshot;
+        }
+        File snapshotDir = new File(snapshotsDir, commitId);
+        if (snapshotDir.exists()) {
+            return new TemplateSnapshot(commitId, snapshotDir);
+        }
+        synchronized (this) {
+            try (Git git = openOrClone()) {
+                ObjectId commit = ObjectId.fromString(commitId);
+                if (!git.getRepository().getObjectDatabase().has(commit)) {
+                    fetch(git);
+                }
+                return materialize(git.getRepository(), commit);
+            } catch (Exception e) {
+                throw new InternalServiceException("Unable to check out template commit " + commitId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Fetches the latest changes of the branch and creates the snapshot of its head commit if needed.
+     * @return the current snapshot
+     */
+    public synchronized TemplateSnapshot refresh() {
+        try (Git git = openOrClone()) {
+            fetch(git);
+            ObjectId head = git.getRepository().resolve("refs/heads/" + branch);
+            if (head == null) {
+                throw new InternalServiceException("Branch " + branch + " not found in " + repositoryUrl);
+            }
+            if (currentSnapshot == null || !currentSnapshot.commitId().equals(head.getName())) {
+                currentSnapshot = materialize(git.getRepository(), head);
+                logger.info("Terraform templates updated to commit {}", head.getName());
+            }
+            return currentSnapshot;
+        } catch (InternalServiceException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new InternalServiceException("Unable to fetch terraform templates: " + e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${git.repository.refresh-interval:300000}", initialDelayString = "${git.repository.refresh-interval:300000}")
+    public void scheduledRefresh() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            logger.error("Template refresh failed, keeping commit {}: {}", currentSnapshot == null ? null : currentSnapshot.commitId(), e.getMessage());
+        }
+    }
+
+    private void fetch(Git git) throws GitAPIException {
+        git.fetch().setRemote("origin").setRefSpecs(new RefSpec("+refs/heads/" + branch + ":refs/heads/" + branch)).call();
+    }
+
+    private Git openOrClone() throws IOException, GitAPIException {
+        if (new File(repositoryDir, "HEAD").exists()) {
+            return Git.open(repositoryDir);
+        }
+        FileUtils.deleteDirectory(repositoryDir);
+        return Git.cloneRepository().setURI(repositoryUrl).setBranch(branch).setBare(true).setDirectory(repositoryDir).call();
+    }
+
+    /**
+     * Writes the files of a commit into the snapshot directory of the commit. The files are written into a
+     * temporary directory first which is then moved to its final place, so a snapshot directory is always complete.
+     */
+    private TemplateSnapshot materialize(Repository repository, ObjectId commitId) throws IOException {
+        File snapshotDir = new File(snapshotsDir, commitId.getName());
+        if (snapshotDir.exists()) {
+            return new TemplateSnapshot(commitId.getName(), snapshotDir);
+        }
+        File tempDir = new File(snapshotsDir, ".tmp-" + UUID.randomUUID());
+        try (RevWalk revWalk = new RevWalk(repository); TreeWalk treeWalk = new TreeWalk(repository)) {
+            RevCommit commit = revWalk.parseCommit(commitId);
+            treeWalk.addTree(commit.getTree());
+            treeWalk.setRecursive(true);
+            while (treeWalk.next()) {
+                if (treeWalk.getFileMode(0) == FileMode.GITLINK) {
+                    continue;
+                }
+                File file = new File(tempDir, treeWalk.getPathString());
+                if (!file.getParentFile().exists() && !file.getParentFile().mkdirs()) {
+                    throw new InternalServiceException("Unable to create directory " + file.getParentFile());
+                }
+                ObjectLoader loader = repository.open(treeWalk.getObjectId(0));
+                try (OutputStream out = new FileOutputStream(file)) {
+                    loader.copyTo(out);
+                }
+                if (treeWalk.getFileMode(0) == FileMode.EXECUTABLE_FILE) {
+                    file.setExecutable(true);
+                }
+            }
+        }
+        try {
+            Files.move(tempDir.toPath(), snapshotDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            FileUtils.deleteDirectory(tempDir);
+            if (!snapshotDir.exists()) {
+                throw e;
+            }
+        }
+        return new TemplateSnapshot(commitId.getName(), snapshotDir);
+    }
+}
@@ -0,0 +1,312 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.dto.AdmissionStatusDTO;
+import de.lenneflow.lenneflowterraformserver.exception.OperationCancelledException;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+/**
+ * Admits the terraform processes of this replica within a memory and cpu budget. Every operation type (the terraform
+ * subcommand) reserves its estimated cost while it runs, a new process waits until the reservations of the running
+ * processes leave room for it. The estimates are moving averages of the peak memory and the cpu usage measured on
+ * the process trees of past runs. The terraform parallelism of a process is reduced while the cpu budget is in use.
+ */
+@Component
+public class TerraformAdmission {
+
+    private static final Logger logger = LoggerFactory.getLogger(TerraformAdmission.class);
+    private static final long WAIT_INTERVAL_MS = 500;
+    private static final long KILOBYTE = 1024;
+
+    private final long memoryBudget;
+    private final double cpuBudget;
+    private final int minimumParallelism;
+    private final int maximumParallelism;
+    private final Cost initialCost;
+    private final double smoothing;
+    private final Map<String, Cost> costs = new ConcurrentHashMap<>();
+    private final Set<Admission> admitted = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final ScheduledExecutorService sampler;
+    private long reservedMemory;
+    private double reservedCpu;
+    private int waiting;
+
+    public TerraformAdmission(@Value("${terraform.admission.memory-budget:0}") long memoryBudget,
+                              @Value("${terraform.admission.cpu-budget:1.0}") double cpuBudget,
+                              @Value("${terraform.admission.min-parallelism:2}") int minimumParallelism,
+                              @Value("${terraform.admission.max-parallelism:10}") int maximumParallelism,
+                              @Value("${terraform.admission.initial-memory:536870912}") long initialMemory,
+                              @Value("${terraform.admission.initial-cpu:0.5}") double initialCpu,
+                              @Value("${terraform.admission.smoothing:0.3}") double smoothing,
+                              @Value("${terraform.admission.sample-interval:1000}") long sampleInterval) {
+        this.memoryBudget = memoryBudget > 0 ? memoryBudget : getTotalMemory() / 4 * 3;
+        this.cpuBudget = Runtime.getRuntime().availableProcessors() * cpuBudget;
+        this.minimumParallelism = Math.max(1, minimumParallelism);
+        this.maximumParallelism = Math.max(this.minimumParallelism, maximumParallelism);
+        this.initialCost = new Cost(initialMemory, initialCpu);
+        this.smoothing = smoothing;
+        this.sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "admission-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleWithFixedDelay(this::sample, sampleInterval, sampleInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Waits until the budget has room for the estimated cost of an operation. A process is always admitted
+     * when no other process is running, so an estimate above the budget does not block it forever.
+     * @param operation the operation type, the terraform subcommand
+     * @param cancelled checked while waiting, the admission is given up when it returns true
+     * @return the admission, it has to be closed when the process exited
+     * @throws InterruptedException if the calling thread was interrupted while waiting
+     * @throws OperationCancelledException if the operation was cancelled while waiting
+     */
+    public Admission admit(String operation, BooleanSupplier cancelled) throws InterruptedException {
+        Cost cost = getCost(operation);
+        lock.lockInterruptibly();
+        try {
+            if (!hasHeadroom(cost)) {
+                logger.info("Terraform {} waits for admission, {} MB and {} cpus are reserved", operation,
+                        reservedMemory / KILOBYTE / KILOBYTE, String.format("%.2f", reservedCpu));
+                waiting++;
+                try {
+                    while (!hasHeadroom(cost)) {
+                        if (cancelled.getAsBoolean()) {
+                            throw new OperationCancelledException("terraform " + operation + " was cancelled while waiting for admission");
+                        }
+                        released.await(WAIT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                    }
+                } finally {
+                    waiting--;
+                }
+            }
+            Admission admission = new Admission(operation, cost, getParallelism());
+            reservedMemory += cost.memory();
+            reservedCpu += cost.cpu();
+            admitted.add(admission);
+            return admission;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the budgets, the reservations and the estimated cost of every operation type
+     */
+    public AdmissionStatusDTO getStatus() {
+        Map<String, Long> memoryEstimates = new TreeMap<>();
+        Map<String, Double> cpuEstimates = new TreeMap<>();
+        costs.forEach((operation, cost) -> {
+            memoryEstimates.put(operation, cost.memory());
+            cpuEstimates.put(operation, cost.cpu());
+        });
+        lock.lock();
+        try {
+            return new AdmissionStatusDTO(memoryBudget, cpuBudget, reservedMemory, reservedCpu, admitted.size(), waiting,
+                    getParallelism(), memoryEstimates, cpuEstimates);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param operation the operation type
+     * @return the estimated cost, the initial cost until a run of the operation type was measured
+     */
+    Cost getCost(String operation) {
+        return costs.getOrDefault(operation, initialCost);
+    }
+
+    /**
+     * Adds the measured cost of a finished run to the moving average of its operation type
+     * @param operation the operation type
+     * @param memory the peak memory of the process tree in bytes, 0 if it was not measured
+     * @param cpu the average number of cpus used by the process tree
+     */
+    void record(String operation, long memory, double cpu) {
+        costs.compute(operation, (key, cost) -> {
+            if (cost == null) {
+                return new Cost(memory > 0 ? memory : initialCost.memory(), cpu);
+            }
+            long averageMemory = memory > 0 ? Math.round(smoothing * memory + (1 - smoothing) * cost.memory()) : cost.memory();
+            return new Cost(averageMemory, smoothing * cpu + (1 - smoothing) * cost.cpu());
+        });
+    }
+
+    private boolean hasHeadroom(Cost cost) {
+        return admitted.isEmpty()
+                || (reservedMemory + cost.memory() <= memoryBudget && reservedCpu + cost.cpu() <= cpuBudget);
+    }
+
+    /**
+     * Scales the parallelism down from the maximum with the share of the cpu budget that is reserved
+     */
+    private int getParallelism() {
+        double load = cpuBudget > 0 ? Math.min(1.0, reservedCpu / cpuBudget) : 1.0;
+        return Math.max(minimumParallelism, (int) Math.round(maximumParallelism * (1 - load)));
+    }
+
+    private void release(Admission admission) {
+        lock.lock();
+        try {
+            if (admitted.remove(admission)) {
+                reservedMemory -= admission.cost.memory();
+                reservedCpu -= admission.cost.cpu();
+                released.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void sample() {
+        for (Admission admission : admitted) {
+            try {
+                admission.sample();
+            } catch (RuntimeException e) {
+                logger.warn("Sampling the process of terraform {} failed: {}", admission.operation, e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sampler.shutdownNow();
+    }
+
+    /**
+     * Reads the resident memory of a process from procfs
+     * @param pid the process id
+     * @return the resident memory in bytes, 0 if it is not available on this platform or the process exited
+     */
+    static long getResidentMemory(long pid) {
+        try {
+            List<String> lines = Files.readAllLines(Path.of("/proc", String.valueOf(pid), "status"));
+            for (String line : lines) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.substring("VmRSS:".length()).replace("kB", "").trim()) * KILOBYTE;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            logger.trace("Resident memory of process {} is not available: {}", pid, e.getMessage());
+        }
+        return 0;
+    }
+
+    private static long getTotalMemory() {
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean osBean) {
+            return osBean.getTotalMemorySize();
+        }
+        return Runtime.getRuntime().maxMemory();
+    }
+
+    /**
+     * The estimated cost of an operation type
+     * @param memory the peak memory of the process tree in bytes
+     * @param cpu the average number of cpus used by the process tree
+     */
+    record Cost(long memory, double cpu) {
+    }
+
+    /**
+     * The reservation of an admitted process. The process tree is sampled while it runs, the measured cost is
+     * recorded for the operation type when the process succeeded.
+     */
+    public class Admission implements AutoCloseable {
+
+        private final String operation;
+        private final Cost cost;
+        private final int parallelism;
+        private final Map<Long, Duration> cpuTimes = new ConcurrentHashMap<>();
+        private volatile ProcessHandle process;
+        private volatile long started;
+        private volatile long peakMemory;
+        private volatile boolean succeeded;
+
+        private Admission(String operation, Cost cost, int parallelism) {
+            this.operation = operation;
+            this.cost = cost;
+            this.parallelism = parallelism;
+        }
+
+        /**
+         * @return the terraform parallelism for the process
+         */
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        /**
+         * Starts measuring the process tree of the admitted process
+         * @param pid the process id
+         */
+        public void track(long pid) {
+            started = System.nanoTime();
+            process = ProcessHandle.of(pid).orElse(null);
+            sample();
+        }
+
+        /**
+         * Marks the run as successful, only successful runs are recorded for the operation type
+         */
+        public void succeeded() {
+            succeeded = true;
+        }
+
+        private void sample() {
+            ProcessHandle root = process;
+            if (root == null) {
+                return;
+            }
+            long memory = 0;
+            // the providers run as children of terraform and use most of the memory
+            for (ProcessHandle handle : Stream.concat(Stream.of(root), root.descendants()).toList()) {
+                memory += getResidentMemory(handle.pid());
+                handle.info().totalCpuDuration().ifPresent(cpuTime -> cpuTimes.merge(handle.pid(), cpuTime,
+                        (previous, current) -> current.compareTo(previous) > 0 ? current : previous));
+            }
+            if (memory > peakMemory) {
+                peakMemory = memory;
+            }
+        }
+
+        /**
+         * Releases the reservation and records the measured cost
+         */
+        @Override
+        public void close() {
+            release(this);
+            long elapsed = System.nanoTime() - started;
+            if (succeeded && process != null && elapsed > 0) {
+                long cpuNanos = cpuTimes.values().stream().mapToLong(Duration::toNanos).sum();
+                double cpu = (double) cpuNanos / elapsed;
+                record(operation, peakMemory, cpu);
+                logger.debug("Terraform {} used {} MB and {} cpus", operation, peakMemory / KILOBYTE / KILOBYTE, String.format("%.2f", cpu));
+            }
+        }
+    }
+}
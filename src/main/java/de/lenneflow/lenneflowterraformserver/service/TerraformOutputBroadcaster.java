@@ -0,0 +1,385 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.exception.OperationRejectedException;
+import de.lenneflow.lenneflowterraformserver.exception.ResourceNotFoundException;
+import de.lenneflow.lenneflowterraformserver.model.ClusterKey;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publishes the output of the terraform processes of a cluster operation to Server-Sent Events subscribers.
+ * The lines of every operation are kept in a ring buffer of fixed size, so subscribers that connect late get
+ * the most recent lines first. The process reader only writes into the buffer and the queues of the subscribers
+ * and never waits for a subscriber. Every subscriber has a bounded queue that is sent by the delivery threads,
+ * one subscriber at a time. A send that does not finish within the stall timeout interrupts its delivery thread and
+ * completes the stream with an error, so a stalled client holds a delivery thread for the stall timeout at most.
+ * The oldest lines of a full queue are dropped and the subscriber gets an event with the number of dropped lines.
+ */
+@Component
+public class TerraformOutputBroadcaster {
+
+    private final Map<ClusterKey, OutputBuffer> buffers = new ConcurrentHashMap<>();
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final Set<Subscription> activeSubscriptions = ConcurrentHashMap.newKeySet();
+    private final ExecutorService delivery;
+    private final ScheduledExecutorService stallCheck;
+    private final int bufferLines;
+    private final int maximumSubscribers;
+    private final int subscriberQueueSize;
+    private final long stallTimeout;
+    private final long streamTimeout;
+    private final long retention;
+
+    public TerraformOutputBroadcaster(@Value("${terraform.output.buffer-lines:2000}") int bufferLines,
+                                      @Value("${terraform.output.max-subscribers:500}") int maximumSubscribers,
+                                      @Value("${terraform.output.subscriber-queue-size:1000}") int subscriberQueueSize,
+                                      @Value("${terraform.output.delivery-threads:8}") int deliveryThreads,
+                                      @Value("${terraform.output.stall-timeout:10000}") long stallTimeout,
+                                      @Value("${terraform.output.stream-timeout:1800000}") long streamTimeout,
+                                      @Value("${terraform.output.retention:600000}") long retention) {
+        this.bufferLines = bufferLines;
+        this.maximumSubscribers = maximumSubscribers;
+        this.subscriberQueueSize = Math.max(1, subscriberQueueSize);
+        this.stallTimeout = Math.max(1, stallTimeout);
+        this.streamTimeout = streamTimeout;
+        this.retention = retention;
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.delivery = Executors.newFixedThreadPool(Math.max(1, deliveryThreads), runnable -> {
+            Thread thread = new Thread(runnable, "terraform-output-stream-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.stallCheck = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "terraform-output-stall-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long checkInterval = Math.max(10, this.stallTimeout / 4);
+        stallCheck.scheduleWithFixedDelay(this::interruptStalledSends, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts a new operation of a cluster. The output of the previous operation is discarded, its subscribers
+     * that are still connected follow the new operation.
+     * @param clusterKey the cluster
+     */
+    public void startOperation(ClusterKey clusterKey) {
+        OutputBuffer buffer = new OutputBuffer(bufferLines);
+        OutputBuffer previous = buffers.put(clusterKey, buffer);
+        if (previous != null) {
+            buffer.takeOver(previous);
+        }
+    }
+
+    /**
+     * Adds an output line to the current operation of a cluster.
+     * @param clusterKey the cluster
+     * @param line the output line
+     */
+    public void publish(ClusterKey clusterKey, String line) {
+        OutputBuffer buffer = buffers.get(clusterKey);
+        if (buffer != null) {
+            buffer.append(line);
+        }
+    }
+
+    /**
+     * Marks the current operation of a cluster as finished. Its output stays available until the retention time is over.
+     * @param clusterKey the cluster
+     */
+    public void finishOperation(ClusterKey clusterKey) {
+        OutputBuffer buffer = buffers.get(clusterKey);
+        if (buffer != null) {
+            buffer.finish();
+        }
+    }
+
+    /**
+     * Creates an event stream that sends the recent and the upcoming output lines of a cluster.
+     * The stream is completed when the running operation is finished, the stream of a finished operation
+     * only sends its recent lines.
+     * @param clusterKey the cluster
+     * @return the event stream
+     * @throws ResourceNotFoundException if the cluster has no running or recent operation on this replica
+     */
+    public SseEmitter subscribe(ClusterKey clusterKey) {
+        OutputBuffer buffer = buffers.get(clusterKey);
+        if (buffer == null) {
+            throw new ResourceNotFoundException("No running or recent operation of cluster " + clusterKey);
+        }
+        if (subscribers.incrementAndGet() > maximumSubscribers) {
+            subscribers.decrementAndGet();
+            throw new OperationRejectedException("Too many output stream subscribers, please retry later");
+        }
+        SseEmitter emitter = createEmitter(streamTimeout);
+        Subscription subscription = new Subscription(clusterKey, emitter);
+        emitter.onCompletion(subscription::cancel);
+        emitter.onTimeout(subscription::cancel);
+        emitter.onError(e -> subscription.cancel());
+        activeSubscriptions.add(subscription);
+        buffer.subscribe(subscription);
+        // an operation started during the subscription did not take over the new subscriber
+        OutputBuffer current = buffers.get(clusterKey);
+        if (current != null && current != buffer) {
+            current.takeOver(buffer);
+        }
+        return emitter;
+    }
+
+    @Scheduled(fixedDelayString = "${terraform.output.retention:600000}")
+    public void removeFinishedOperations() {
+        long now = System.currentTimeMillis();
+        buffers.values().removeIf(buffer -> buffer.finishedAt > 0 && now - buffer.finishedAt > retention);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stallCheck.shutdownNow();
+        delivery.shutdownNow();
+    }
+
+    private void interruptStalledSends() {
+        long now = System.nanoTime();
+        for (Subscription subscription : activeSubscriptions) {
+            subscription.interruptIfStalled(now);
+        }
+    }
+
+    SseEmitter createEmitter(long timeout) {
+        return new SseEmitter(timeout);
+    }
+
+    /**
+     * A connected client with the lines that are not sent to it yet
+     */
+    private class Subscription {
+
+        private final ClusterKey clusterKey;
+        private final SseEmitter emitter;
+        private final Deque<Event> pending = new ArrayDeque<>();
+        private final AtomicBoolean delivering = new AtomicBoolean();
+        private final AtomicInteger cancelled = new AtomicInteger();
+        private long dropped;
+        private Thread sendingThread;
+        private long sendStarted;
+        private boolean stalled;
+
+        Subscription(ClusterKey clusterKey, SseEmitter emitter) {
+            this.clusterKey = clusterKey;
+            this.emitter = emitter;
+        }
+
+        /**
+         * Queues an event without waiting for the client, the oldest line is dropped if the queue is full
+         */
+        void offer(Event event) {
+            synchronized (pending) {
+                if (pending.size() >= subscriberQueueSize && pending.peekFirst().line() != null) {
+                    pending.removeFirst();
+                    dropped++;
+                }
+                pending.addLast(event);
+            }
+            scheduleDelivery();
+        }
+
+        boolean isCancelled() {
+            return cancelled.get() > 0;
+        }
+
+        private void scheduleDelivery() {
+            if (!isCancelled() && delivering.compareAndSet(false, true)) {
+                try {
+                    delivery.execute(this::deliver);
+                } catch (RejectedExecutionException e) {
+                    delivering.set(false);
+                }
+            }
+        }
+
+        private void deliver() {
+            try {
+                while (!isCancelled()) {
+                    Event event;
+                    long droppedLines;
+                    synchronized (pending) {
+                        event = pending.pollFirst();
+                        droppedLines = dropped;
+                        dropped = 0;
+                    }
+                    if (droppedLines > 0) {
+                        send(SseEmitter.event().name("dropped").data(droppedLines));
+                    }
+                    if (event == null) {
+                        break;
+                    }
+                    if (event.line() == null) {
+                        send(SseEmitter.event().name("end").data(clusterKey.toString()));
+                        emitter.complete();
+                        cancel();
+                    } else {
+                        send(SseEmitter.event().id(String.valueOf(event.sequence())).data(event.line()));
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                emitter.completeWithError(e);
+                cancel();
+            } finally {
+                delivering.set(false);
+            }
+            // an event queued after the last poll would otherwise wait for the next event
+            synchronized (pending) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+            }
+            scheduleDelivery();
+        }
+
+        /**
+         * Sends an event, the send is interrupted by the stall check if the client does not take it within the stall timeout
+         */
+        private void send(SseEmitter.SseEventBuilder event) throws IOException {
+            synchronized (this) {
+                sendingThread = Thread.currentThread();
+                sendStarted = System.nanoTime();
+            }
+            boolean interrupted;
+            try {
+                emitter.send(event);
+            } finally {
+                synchronized (this) {
+                    sendingThread = null;
+                    interrupted = stalled;
+                    if (interrupted) {
+                        // the interrupt is meant for this send only, the delivery thread serves other subscribers next
+                        Thread.interrupted();
+                    }
+                }
+            }
+            if (interrupted) {
+                throw new IOException("The client of " + clusterKey + " did not take the output within " + stallTimeout + " ms");
+            }
+        }
+
+        synchronized void interruptIfStalled(long now) {
+            if (sendingThread != null && !stalled && now - sendStarted > TimeUnit.MILLISECONDS.toNanos(stallTimeout)) {
+                stalled = true;
+                sendingThread.interrupt();
+            }
+        }
+
+        void cancel() {
+            if (cancelled.getAndIncrement() == 0) {
+                activeSubscriptions.remove(this);
+                subscribers.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * An output line with its sequence number, the end of the operation has no line
+     */
+    private record Event(long sequence, String line) {
+    }
+
+    /**
+     * Fixed size ring buffer of the output lines of one operation. Every line gets a sequence number,
+     * readers pass the next sequence number they want to read. The lines are passed on to the subscribers
+     * while the buffer is locked, so a new subscriber gets every line exactly once.
+     */
+    static final class OutputBuffer {
+
+        private final String[] lines;
+        private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+        private long nextSequence;
+        private volatile long finishedAt;
+
+        OutputBuffer(int capacity) {
+            this.lines = new String[capacity];
+        }
+
+        synchronized void append(String line) {
+            long sequence = nextSequence++;
+            lines[(int) (sequence % lines.length)] = line;
+            for (Iterator<Subscription> iterator = subscriptions.iterator(); iterator.hasNext(); ) {
+                Subscription subscription = iterator.next();
+                if (subscription.isCancelled()) {
+                    iterator.remove();
+                } else {
+                    subscription.offer(new Event(sequence, line));
+                }
+            }
+        }
+
+        /**
+         * Copies the lines starting at a sequence number. Lines that are already overwritten are skipped.
+         * @return the sequence number of the first copied line
+         */
+        synchronized long read(long fromSequence, List<String> target) {
+            long first = Math.max(fromSequence, nextSequence - lines.length);
+            for (long sequence = first; sequence < nextSequence; sequence++) {
+                target.add(lines[(int) (sequence % lines.length)]);
+            }
+            return first;
+        }
+
+        /**
+         * Queues the recent lines for a new subscriber and passes it the upcoming ones
+         */
+        synchronized void subscribe(Subscription subscription) {
+            List<String> recent = new ArrayList<>();
+            long first = read(0, recent);
+            for (int i = 0; i < recent.size(); i++) {
+                subscription.offer(new Event(first + i, recent.get(i)));
+            }
+            if (isFinished()) {
+                subscription.offer(new Event(nextSequence, null));
+            } else {
+                subscriptions.add(subscription);
+            }
+        }
+
+        /**
+         * Moves the subscribers of the previous operation of the cluster that are still connected to this buffer
+         */
+        synchronized void takeOver(OutputBuffer previous) {
+            synchronized (previous) {
+                previous.subscriptions.stream().filter(subscription -> !subscription.isCancelled()).forEach(subscriptions::add);
+                previous.subscriptions.clear();
+            }
+        }
+
+        synchronized void finish() {
+            finishedAt = System.currentTimeMillis();
+            for (Subscription subscription : subscriptions) {
+                subscription.offer(new Event(nextSequence, null));
+            }
+            subscriptions.clear();
+        }
+
+        boolean isFinished() {
+            return finishedAt > 0;
+        }
+    }
+}
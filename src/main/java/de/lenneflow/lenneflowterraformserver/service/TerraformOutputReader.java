@@ -0,0 +1,122 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import de.lenneflow.lenneflowterraformserver.dto.OutputDTO;
+import de.lenneflow.lenneflowterraformserver.exception.InternalServiceException;
+import de.lenneflow.lenneflowterraformserver.exception.ResourceNotFoundException;
+import de.lenneflow.lenneflowterraformserver.model.Cluster;
+import de.lenneflow.lenneflowterraformserver.model.ClusterKey;
+import de.lenneflow.lenneflowterraformserver.util.Util;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads the outputs of a cluster directly from its terraform state instead of starting terraform output -json.
+ * The state is read from the state backend or from the local terraform.tfstate of the cluster directory. It is parsed
+ * as a stream and only up to the end of the outputs section, the resources that follow it are never read.
+ */
+@Component
+public class TerraformOutputReader {
+
+    static final String SENSITIVE_VALUE = "(sensitive value)";
+    private static final String OUTPUTS = "outputs";
+    private static final String LOCAL_STATE_FILE = "terraform.tfstate";
+
+    private final TerraformStateStore stateStore;
+    private final TerraformStateBackend stateBackend;
+    private final ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    public TerraformOutputReader(TerraformStateStore stateStore, TerraformStateBackend stateBackend) {
+        this.stateStore = stateStore;
+        this.stateBackend = stateBackend;
+    }
+
+    /**
+     * @param cluster the cluster
+     * @return the outputs the cluster data is taken from
+     * @throws ResourceNotFoundException if the cluster has no state
+     */
+    public OutputDTO getOutputData(Cluster cluster) {
+        try {
+            return mapper.treeToValue(readOutputs(cluster), OutputDTO.class);
+        } catch (IOException e) {
+            throw new InternalServiceException("Unable to read the outputs of cluster " + cluster.getClusterName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns all outputs of a cluster with their value and type. The values of sensitive outputs are masked.
+     * @param cluster the cluster
+     * @return the outputs by name
+     * @throws ResourceNotFoundException if the cluster has no state
+     */
+    public Map<String, JsonNode> getOutputs(Cluster cluster) {
+        Map<String, JsonNode> outputs = new LinkedHashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> fields = readOutputs(cluster).fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode output = field.getValue();
+            if (output.path("sensitive").asBoolean() && output instanceof ObjectNode sensitiveOutput) {
+                sensitiveOutput.set("value", TextNode.valueOf(SENSITIVE_VALUE));
+            }
+            outputs.put(field.getKey(), output);
+        }
+        return outputs;
+    }
+
+    private ObjectNode readOutputs(Cluster cluster) {
+        ClusterKey clusterKey = ClusterKey.of(cluster);
+        try (InputStream state = openState(cluster)) {
+            if (state == null) {
+                throw new ResourceNotFoundException("No state found for cluster " + clusterKey);
+            }
+            return readOutputs(state);
+        } catch (IOException e) {
+            throw new InternalServiceException("Unable to read the state of cluster " + clusterKey + ": " + e.getMessage());
+        }
+    }
+
+    private InputStream openState(Cluster cluster) throws IOException {
+        if (stateBackend.isEnabled()) {
+            return stateStore.openState(ClusterKey.of(cluster).toString());
+        }
+        File localState = new File(Util.getClusterDir(cluster.getCloudProvider(), cluster.getClusterName(), cluster.getRegion()), LOCAL_STATE_FILE);
+        return localState.exists() ? new FileInputStream(localState) : null;
+    }
+
+    /**
+     * Reads the outputs section of a state and skips every other top level field without building it
+     * @param state the state
+     * @return the outputs section or an empty object if the state has none
+     * @throws IOException
+     */
+    ObjectNode readOutputs(InputStream state) throws IOException {
+        try (JsonParser parser = mapper.getFactory().createParser(state)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("The state is not a json object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (OUTPUTS.equals(field) && value == JsonToken.START_OBJECT) {
+                    return mapper.readTree(parser);
+                }
+                parser.skipChildren();
+            }
+        }
+        return mapper.createObjectNode();
+    }
+}
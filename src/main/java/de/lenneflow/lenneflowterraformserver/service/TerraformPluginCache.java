@@ -0,0 +1,109 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.dto.PluginCacheStatusDTO;
+import de.lenneflow.lenneflowterraformserver.exception.InternalServiceException;
+import de.lenneflow.lenneflowterraformserver.util.Util;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Manages the provider plugin cache shared by all cluster directories. Terraform only downloads a provider
+ * into the cache once and links it into the .terraform directory of every cluster afterward.
+ * Terraform does not synchronize concurrent writes to the cache, so every init runs under a lock that is
+ * held in this JVM and on a lock file for other processes using the same cache.
+ * Whether an init downloaded a provider is taken from its output, terraform reports every provider it installs
+ * instead of taking it from the shared cache directory.
+ */
+@Component
+public class TerraformPluginCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(TerraformPluginCache.class);
+
+    private static final String LOCK_FILE = ".lock";
+    private static final String INSTALLING_PROVIDER = "- Installing ";
+
+    private final File cacheDir;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public TerraformPluginCache(@Value("${terraform.plugin-cache.dir:}") String cacheDir) {
+        this.cacheDir = new File(cacheDir == null || cacheDir.isBlank() ? Util.getBaseDir() + File.separator + "plugin-cache" : cacheDir);
+        if (!this.cacheDir.exists() && !this.cacheDir.mkdirs()) {
+            throw new InternalServiceException("Unable to create directory " + this.cacheDir);
+        }
+    }
+
+    /**
+     * @return the environment variables a terraform process needs to use the cache
+     */
+    public Map<String, String> getEnvironment() {
+        return Map.of("TF_PLUGIN_CACHE_DIR", cacheDir.getAbsolutePath());
+    }
+
+    /**
+     * Runs a terraform init while holding the cache lock and records whether the providers were already cached.
+     * @param init the init command to run
+     * @return the exit code of the init command
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public int runInit(InitCommand init) throws IOException, InterruptedException {
+        lock.lockInterruptibly();
+        try (FileChannel channel = FileChannel.open(new File(cacheDir, LOCK_FILE).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock ignored = channel.lock()) {
+            AtomicBoolean downloaded = new AtomicBoolean();
+            int exitCode = init.run(line -> {
+                if (line.contains(INSTALLING_PROVIDER)) {
+                    downloaded.set(true);
+                }
+            });
+            if (exitCode == 0) {
+                if (downloaded.get()) {
+                    misses.incrementAndGet();
+                    logger.info("Providers downloaded into plugin cache {}", cacheDir);
+                } else {
+                    hits.incrementAndGet();
+                }
+            }
+            return exitCode;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the size and the hit rate of the cache
+     */
+    public PluginCacheStatusDTO getStatus() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long total = hitCount + missCount;
+        return new PluginCacheStatusDTO(cacheDir.getAbsolutePath(), FileUtils.sizeOfDirectory(cacheDir), hitCount, missCount,
+                total == 0 ? 0 : (double) hitCount / total);
+    }
+
+    @FunctionalInterface
+    public interface InitCommand {
+
+        /**
+         * @param outputObserver has to receive the output lines of the init
+         * @return the exit code of the init
+         */
+        int run(Consumer<String> outputObserver) throws IOException, InterruptedException;
+    }
+}
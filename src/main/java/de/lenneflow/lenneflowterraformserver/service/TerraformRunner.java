@@ -0,0 +1,224 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.exception.OperationCancelledException;
+import de.lenneflow.lenneflowterraformserver.model.ClusterKey;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Starts the terraform processes of the cluster operations with the environment every terraform child needs
+ * and publishes their output to the subscribers and the operation log of the cluster. Every command is killed when
+ * the timeout of its subcommand expires. A cancelled cluster gets no new terraform processes until its cancel is
+ * cleared. Every process waits for its admission within the resource budget of the replica, plans and applies get
+ * the parallelism of their admission. An init is admitted once it holds the lock of the plugin cache.
+ */
+@Component
+public class TerraformRunner {
+
+    private static final Set<String> PARALLEL_SUBCOMMANDS = Set.of("plan", "apply");
+
+    private final TerraformPluginCache pluginCache;
+    private final TerraformOutputBroadcaster outputBroadcaster;
+    private final OperationLogStore logStore;
+    private final TerraformStateBackend stateBackend;
+    private final ProcessRunner processRunner;
+    private final TerraformAdmission terraformAdmission;
+    private final Duration initTimeout;
+    private final Duration planTimeout;
+    private final Duration applyTimeout;
+    private final Map<ClusterKey, Set<ProcessRunner.RunningProcess>> runningProcesses = new ConcurrentHashMap<>();
+    private final Set<ClusterKey> cancelledClusters = ConcurrentHashMap.newKeySet();
+
+    public TerraformRunner(TerraformPluginCache pluginCache, TerraformOutputBroadcaster outputBroadcaster, OperationLogStore logStore,
+                           TerraformStateBackend stateBackend, ProcessRunner processRunner, TerraformAdmission terraformAdmission,
+                           @Value("${terraform.timeout.init:900000}") long initTimeout,
+                           @Value("${terraform.timeout.plan:1800000}") long planTimeout,
+                           @Value("${terraform.timeout.apply:5400000}") long applyTimeout) {
+        this.pluginCache = pluginCache;
+        this.outputBroadcaster = outputBroadcaster;
+        this.logStore = logStore;
+        this.stateBackend = stateBackend;
+        this.processRunner = processRunner;
+        this.terraformAdmission = terraformAdmission;
+        this.initTimeout = Duration.ofMillis(initTimeout);
+        this.planTimeout = Duration.ofMillis(planTimeout);
+        this.applyTimeout = Duration.ofMillis(applyTimeout);
+    }
+
+    /**
+     * Runs terraform init in a cluster directory using the shared plugin cache and the state backend.
+     * @param clusterKey the cluster
+     * @param clusterDir the cluster directory
+     * @return the result of the process
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public ProcessResult init(ClusterKey clusterKey, String clusterDir) throws IOException, InterruptedException {
+        return init(clusterKey, clusterDir, publisher(clusterKey));
+    }
+
+    /**
+     * Runs terraform init in a cluster directory and passes its output to a listener instead of the subscribers of the cluster
+     * @param clusterKey the cluster
+     * @param clusterDir the cluster directory
+     * @param outputListener receives the output lines
+     * @return the result of the process
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public ProcessResult init(ClusterKey clusterKey, String clusterDir, Consumer<String> outputListener) throws IOException, InterruptedException {
+        stateBackend.configure(clusterDir);
+        String command = "terraform init -input=false" + stateBackend.getInitOptions();
+        checkCancelled(clusterKey, command);
+        // only one init runs at a time, the inits queued on the cache lock must not hold reservations a plan or an apply could use
+        AtomicReference<ProcessResult> result = new AtomicReference<>();
+        pluginCache.runInit(outputObserver -> {
+            try (TerraformAdmission.Admission admission = admit(clusterKey, command)) {
+                result.set(execute(clusterKey, command, clusterDir, outputListener.andThen(outputObserver), admission));
+                return result.get().exitCode();
+            }
+        });
+        return result.get();
+    }
+
+    /**
+     * Runs a terraform command in a cluster directory
+     * @param clusterKey the cluster
+     * @param command the terraform command
+     * @param clusterDir the cluster directory
+     * @return the result of the process
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public ProcessResult run(ClusterKey clusterKey, String command, String clusterDir) throws IOException, InterruptedException {
+        return run(clusterKey, command, clusterDir, publisher(clusterKey));
+    }
+
+    /**
+     * Runs a terraform command in a cluster directory and passes its output to a listener instead of the subscribers of the cluster
+     * @param clusterKey the cluster
+     * @param command the terraform command
+     * @param clusterDir the cluster directory
+     * @param outputListener receives the output lines
+     * @return the result of the process
+     * @throws IOException
+     * @throws InterruptedException
+     * @throws OperationCancelledException if the cluster was cancelled before or while the command waited for admission or ran
+     */
+    public ProcessResult run(ClusterKey clusterKey, String command, String clusterDir, Consumer<String> outputListener) throws IOException, InterruptedException {
+        checkCancelled(clusterKey, command);
+        try (TerraformAdmission.Admission admission = admit(clusterKey, command)) {
+            return execute(clusterKey, command, clusterDir, outputListener, admission);
+        }
+    }
+
+    /**
+     * Cancels the terraform processes of a cluster. Terraform gets SIGTERM, it stops creating resources and releases
+     * the state lock, the process tree is killed if it does not stop within the grace period of the process runner.
+     * @param clusterKey the cluster
+     */
+    public void cancel(ClusterKey clusterKey) {
+        cancelledClusters.add(clusterKey);
+        Set<ProcessRunner.RunningProcess> processes = runningProcesses.get(clusterKey);
+        if (processes != null) {
+            processes.forEach(ProcessRunner.RunningProcess::cancel);
+        }
+    }
+
+    /**
+     * Allows new terraform processes of a cancelled cluster again
+     * @param clusterKey the cluster
+     */
+    public void clearCancel(ClusterKey clusterKey) {
+        cancelledClusters.remove(clusterKey);
+    }
+
+    private TerraformAdmission.Admission admit(ClusterKey clusterKey, String command) throws InterruptedException {
+        return terraformAdmission.admit(getSubcommand(command), () -> cancelledClusters.contains(clusterKey));
+    }
+
+    /**
+     * Runs an admitted terraform command and waits for its exit
+     */
+    private ProcessResult execute(ClusterKey clusterKey, String command, String clusterDir, Consumer<String> outputListener,
+                                  TerraformAdmission.Admission admission) throws IOException, InterruptedException {
+        checkCancelled(clusterKey, command);
+        List<String> arguments = new ArrayList<>(List.of(command.split(" ")));
+        String subcommand = getSubcommand(command);
+        if (PARALLEL_SUBCOMMANDS.contains(subcommand)) {
+            arguments.add(2, "-parallelism=" + admission.getParallelism());
+        }
+        outputListener.accept("$ " + String.join(" ", arguments));
+        ProcessRunner.RunningProcess process = processRunner.start(arguments, new File(clusterDir), getEnvironment(clusterKey), getTimeout(subcommand), outputListener);
+        admission.track(process.getPid());
+        runningProcesses.compute(clusterKey, (key, processes) -> {
+            Set<ProcessRunner.RunningProcess> running = processes != null ? processes : ConcurrentHashMap.newKeySet();
+            running.add(process);
+            return running;
+        });
+        try {
+            // a cancel between the check and the registration did not see the process
+            if (cancelledClusters.contains(clusterKey)) {
+                process.cancel();
+            }
+            ProcessResult result = process.await();
+            if (result.cancelled()) {
+                outputListener.accept("The command was cancelled");
+                throw new OperationCancelledException(command + " was cancelled");
+            }
+            if (result.isSuccess()) {
+                admission.succeeded();
+            }
+            return result;
+        } finally {
+            runningProcesses.computeIfPresent(clusterKey, (key, processes) -> {
+                processes.remove(process);
+                return processes.isEmpty() ? null : processes;
+            });
+        }
+    }
+
+    private static String getSubcommand(String command) {
+        String[] arguments = command.split(" ");
+        return arguments.length > 1 ? arguments[1] : "";
+    }
+
+    private void checkCancelled(ClusterKey clusterKey, String command) {
+        if (cancelledClusters.contains(clusterKey)) {
+            throw new OperationCancelledException(command + " was not started, the operation was cancelled");
+        }
+    }
+
+    private Duration getTimeout(String subcommand) {
+        return switch (subcommand) {
+            case "init" -> initTimeout;
+            case "plan" -> planTimeout;
+            default -> applyTimeout;
+        };
+    }
+
+    private Consumer<String> publisher(ClusterKey clusterKey) {
+        return line -> {
+            outputBroadcaster.publish(clusterKey, line);
+            logStore.append(clusterKey, line);
+        };
+    }
+
+    private Map<String, String> getEnvironment(ClusterKey clusterKey) {
+        Map<String, String> environment = new HashMap<>(pluginCache.getEnvironment());
+        environment.putAll(stateBackend.getEnvironment(clusterKey));
+        return environment;
+    }
+}
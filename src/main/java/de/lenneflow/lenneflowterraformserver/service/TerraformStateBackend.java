@@ -0,0 +1,73 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.model.ClusterKey;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Configures the cluster workspaces to keep their state in the http backend of this server instead of a local
+ * terraform.tfstate file. The backend block is added as an override file, the addresses are passed as
+ * environment variables to every terraform process of the cluster.
+ */
+@Component
+public class TerraformStateBackend {
+
+    static final String OVERRIDE_FILE = "backend_override.tf";
+    private static final String OVERRIDE_CONTENT = "terraform {\n  backend \"http\" {}\n}\n";
+
+    private final boolean enabled;
+    private final String url;
+
+    public TerraformStateBackend(@Value("${terraform.state.backend.enabled:true}") boolean enabled,
+                                 @Value("${terraform.state.backend.url:http://localhost:${server.port:8787}/api/terraform/state}") String url) {
+        this.enabled = enabled;
+        this.url = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    /**
+     * @return true if the states are kept in the http backend
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Writes the backend override file into a cluster directory
+     * @param clusterDir the cluster directory
+     * @throws IOException
+     */
+    public void configure(String clusterDir) throws IOException {
+        if (enabled) {
+            Path overrideFile = new File(clusterDir, OVERRIDE_FILE).toPath();
+            // the file may be a hard link into a template snapshot, so it is replaced instead of overwritten
+            Files.deleteIfExists(overrideFile);
+            Files.writeString(overrideFile, OVERRIDE_CONTENT, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * @return the init options, an existing local state is copied into the backend on the first init
+     */
+    public String getInitOptions() {
+        return enabled ? " -migrate-state -force-copy" : "";
+    }
+
+    /**
+     * @param clusterKey the cluster
+     * @return the environment variables a terraform process of the cluster needs to reach the backend
+     */
+    public Map<String, String> getEnvironment(ClusterKey clusterKey) {
+        if (!enabled) {
+            return Map.of();
+        }
+        String address = url + "/" + clusterKey;
+        return Map.of("TF_HTTP_ADDRESS", address, "TF_HTTP_LOCK_ADDRESS", address, "TF_HTTP_UNLOCK_ADDRESS", address);
+    }
+}
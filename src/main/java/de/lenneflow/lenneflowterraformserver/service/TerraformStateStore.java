@@ -0,0 +1,187 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import de.lenneflow.lenneflowterraformserver.exception.InternalServiceException;
+import de.lenneflow.lenneflowterraformserver.exception.PayloadNotValidException;
+import de.lenneflow.lenneflowterraformserver.exception.StateLockedException;
+import de.lenneflow.lenneflowterraformserver.model.StateLock;
+import de.lenneflow.lenneflowterraformserver.repository.StateLockRepository;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsCriteria;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stores the terraform states of the clusters in GridFS, so every instance can run the operations of every cluster.
+ * Every saved state is a new gzip compressed version, only the latest versions of a state are kept.
+ * The locks of the states are documents with the name of the state as id, so only one lock per state can be inserted.
+ */
+@Component
+public class TerraformStateStore {
+
+    private static final String VERSION = "metadata.version";
+
+    private final GridFsTemplate gridFsTemplate;
+    private final StateLockRepository stateLockRepository;
+    private final int keptVersions;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public TerraformStateStore(GridFsTemplate gridFsTemplate, StateLockRepository stateLockRepository,
+                               @Value("${terraform.state.kept-versions:10}") int keptVersions) {
+        this.gridFsTemplate = gridFsTemplate;
+        this.stateLockRepository = stateLockRepository;
+        this.keptVersions = keptVersions;
+    }
+
+    /**
+     * Returns the latest version of a state
+     * @param name the name of the state
+     * @return the state or null if it was never saved
+     */
+    public byte[] getState(String name) {
+        try (InputStream inputStream = openState(name)) {
+            return inputStream == null ? null : inputStream.readAllBytes();
+        } catch (IOException e) {
+            throw new InternalServiceException("Unable to read state " + name + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Opens the latest version of a state for reading, the state is decompressed while it is read
+     * @param name the name of the state
+     * @return the stream of the state, to be closed by the caller, or null if the state was never saved
+     * @throws IOException
+     */
+    public InputStream openState(String name) throws IOException {
+        GridFSFile file = findLatest(name);
+        if (file == null) {
+            return null;
+        }
+        return new GZIPInputStream(gridFsTemplate.getResource(file).getInputStream());
+    }
+
+    /**
+     * @param name the name of the state
+     * @return true if at least one version of the state was saved
+     */
+    public boolean hasState(String name) {
+        return findLatest(name) != null;
+    }
+
+    /**
+     * Saves a new version of a state and removes the versions that are no longer kept
+     * @param name the name of the state
+     * @param state the state
+     * @param lockId the id of the lock the caller holds or null
+     * @throws StateLockedException if the state is locked by another lock
+     */
+    public void saveState(String name, byte[] state, String lockId) {
+        StateLock lock = stateLockRepository.findById(name).orElse(null);
+        if (lock != null && !lock.getLockId().equals(lockId)) {
+            throw new StateLockedException(lock.getInfo());
+        }
+        GridFSFile latest = findLatest(name);
+        long version = latest == null ? 1 : latest.getMetadata().getLong("version") + 1;
+        Document metadata = new Document("version", version).append("size", state.length).append("encoding", "gzip");
+        gridFsTemplate.store(new ByteArrayInputStream(compress(state)), name, "application/gzip", metadata);
+        gridFsTemplate.delete(Query.query(GridFsCriteria.whereFilename().is(name).and(VERSION).lte(version - keptVersions)));
+    }
+
+    /**
+     * Removes all versions and the lock of a state
+     * @param name the name of the state
+     */
+    public void deleteState(String name) {
+        gridFsTemplate.delete(Query.query(GridFsCriteria.whereFilename().is(name)));
+        stateLockRepository.deleteById(name);
+    }
+
+    /**
+     * Locks a state
+     * @param name the name of the state
+     * @param lockInfo the lock info sent by terraform
+     * @throws StateLockedException if the state is already locked
+     */
+    public void lock(String name, String lockInfo) {
+        try {
+            stateLockRepository.insert(new StateLock(name, getLockId(lockInfo), lockInfo, LocalDateTime.now()));
+        } catch (DuplicateKeyException e) {
+            StateLock lock = stateLockRepository.findById(name).orElse(null);
+            // the lock may have been released in the meantime, terraform retries with -lock-timeout
+            throw new StateLockedException(lock != null ? lock.getInfo() : lockInfo);
+        }
+    }
+
+    /**
+     * Unlocks a state
+     * @param name the name of the state
+     * @param lockInfo the lock info sent by terraform, it contains the id of the lock to release
+     * @throws StateLockedException if the state is locked by another lock
+     */
+    public void unlock(String name, String lockInfo) {
+        StateLock lock = stateLockRepository.findById(name).orElse(null);
+        if (lock == null) {
+            return;
+        }
+        if (!lock.getLockId().equals(getLockId(lockInfo))) {
+            throw new StateLockedException(lock.getInfo());
+        }
+        stateLockRepository.delete(lock);
+    }
+
+    /**
+     * Removes the lock of a state whatever lock id it has, e.g. the lock of an operation whose replica died
+     * @param name the name of the state
+     * @param lockedBefore only a lock created before this time is removed
+     * @return true if a lock was removed
+     */
+    public boolean forceUnlock(String name, LocalDateTime lockedBefore) {
+        StateLock lock = stateLockRepository.findById(name).orElse(null);
+        if (lock == null || !lock.getCreated().isBefore(lockedBefore)) {
+            return false;
+        }
+        stateLockRepository.delete(lock);
+        return true;
+    }
+
+    private GridFSFile findLatest(String name) {
+        return gridFsTemplate.findOne(Query.query(GridFsCriteria.whereFilename().is(name)).with(Sort.by(Sort.Direction.DESC, VERSION)).limit(1));
+    }
+
+    private String getLockId(String lockInfo) {
+        try {
+            JsonNode id = mapper.readTree(lockInfo).get("ID");
+            if (id == null || id.asText().isEmpty()) {
+                throw new PayloadNotValidException("The lock info has no ID");
+            }
+            return id.asText();
+        } catch (IOException e) {
+            throw new PayloadNotValidException("The lock info is not valid: " + e.getMessage());
+        }
+    }
+
+    private static byte[] compress(byte[] state) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(state.length / 4 + 64);
+        try (OutputStream outputStream = new GZIPOutputStream(compressed)) {
+            outputStream.write(state);
+        } catch (IOException e) {
+            throw new InternalServiceException("Unable to compress state: " + e.getMessage());
+        }
+        return compressed.toByteArray();
+    }
+}
@@ -0,0 +1,143 @@
+package de.lenneflow.lenneflowterraformserver.util;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+
+/**
+ * Creates presigned URLs with the AWS Signature Version 4 query string signing.
+ * See <a href="https://docs.aws.amazon.com/IAM/latest/UserGuide/create-signed-request.html">Create a signed AWS API request</a>
+ */
+public class AwsSigV4Signer {
+
+    public static final String ALGORITHM = "AWS4-HMAC-SHA256";
+    public static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+    public static final String EMPTY_PAYLOAD_HASH = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd").withZone(ZoneOffset.UTC);
+
+    private AwsSigV4Signer(){}
+
+    /**
+     * Creates a presigned https GET url
+     * @param host the host of the service endpoint
+     * @param path the path of the request
+     * @param queryParameters the query parameters of the request, without the signing parameters
+     * @param headers the headers that have to be sent with the request, without the host header
+     * @param region the region the request is signed for
+     * @param service the service name the request is signed for
+     * @param accessKey the access key
+     * @param secretKey the secret key
+     * @param time the signing time
+     * @param expiresInSeconds the validity of the url
+     * @param payloadHash the hex encoded SHA-256 hash of the payload or UNSIGNED-PAYLOAD
+     * @return the presigned url
+     */
+    public static String presignGetUrl(String host, String path, Map<String, String> queryParameters, Map<String, String> headers,
+                                       String region, String service, String accessKey, String secretKey,
+                                       Instant time, long expiresInSeconds, String payloadHash) {
+        String dateTime = DATE_TIME_FORMAT.format(time);
+        String date = DATE_FORMAT.format(time);
+        String scope = date + "/" + region + "/" + service + "/aws4_request";
+
+        Map<String, String> canonicalHeaders = new TreeMap<>();
+        canonicalHeaders.put("host", host);
+        headers.forEach((name, value) -> canonicalHeaders.put(name.toLowerCase(), value.trim()));
+        String signedHeaders = String.join(";", canonicalHeaders.keySet());
+
+        Map<String, String> parameters = new TreeMap<>();
+        queryParameters.forEach((name, value) -> parameters.put(uriEncode(name), uriEncode(value)));
+        parameters.put("X-Amz-Algorithm", ALGORITHM);
+        parameters.put("X-Amz-Credential", uriEncode(accessKey + "/" + scope));
+        parameters.put("X-Amz-Date", dateTime);
+        parameters.put("X-Amz-Expires", String.valueOf(expiresInSeconds));
+        parameters.put("X-Amz-SignedHeaders", uriEncode(signedHeaders));
+        StringJoiner canonicalQuery = new StringJoiner("&");
+        parameters.forEach((name, value) -> canonicalQuery.add(name + "=" + value));
+
+        StringBuilder canonicalRequest = new StringBuilder("GET\n")
+                .append(canonicalUri(path)).append('\n')
+                .append(canonicalQuery).append('\n');
+        canonicalHeaders.forEach((name, value) -> canonicalRequest.append(name).append(':').append(value).append('\n'));
+        canonicalRequest.append('\n').append(signedHeaders).append('\n').append(payloadHash);
+
+        String stringToSign = ALGORITHM + "\n" + dateTime + "\n" + scope + "\n" + sha256Hex(canonicalRequest.toString());
+        byte[] signingKey = deriveSigningKey(secretKey, date, region, service);
+        String signature = HexFormat.of().formatHex(hmacSha256(signingKey, stringToSign));
+
+        return "https://" + host + canonicalUri(path) + "?" + canonicalQuery + "&X-Amz-Signature=" + signature;
+    }
+
+    /**
+     * Derives the signing key of a day, region and service from the secret key
+     * @param secretKey the secret key
+     * @param date the date in the format yyyyMMdd
+     * @param region the region
+     * @param service the service name
+     * @return the signing key
+     */
+    public static byte[] deriveSigningKey(String secretKey, String date, String region, String service) {
+        byte[] dateKey = hmacSha256(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), date);
+        byte[] regionKey = hmacSha256(dateKey, region);
+        byte[] serviceKey = hmacSha256(regionKey, service);
+        return hmacSha256(serviceKey, "aws4_request");
+    }
+
+    /**
+     * Encodes every character except the unreserved characters of RFC 3986
+     * @param value the value to encode
+     * @return the encoded value
+     */
+    public static String uriEncode(String value) {
+        StringBuilder encoded = new StringBuilder();
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '_' || c == '.' || c == '~') {
+                encoded.append(c);
+            } else {
+                encoded.append('%').append(String.format("%02X", b & 0xFF));
+            }
+        }
+        return encoded.toString();
+    }
+
+    private static String canonicalUri(String path) {
+        if (path == null || path.isEmpty()) {
+            return "/";
+        }
+        StringJoiner segments = new StringJoiner("/");
+        for (String segment : path.split("/", -1)) {
+            segments.add(uriEncode(segment));
+        }
+        return segments.toString();
+    }
+
+    private static String sha256Hex(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] hmacSha256(byte[] key, String data) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
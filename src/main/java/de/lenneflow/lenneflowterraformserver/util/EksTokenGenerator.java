@@ -0,0 +1,43 @@
+package de.lenneflow.lenneflowterraformserver.util;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Map;
+
+/**
+ * Creates the bearer tokens of EKS clusters the same way as aws eks get-token does. A token is a presigned STS
+ * GetCallerIdentity url that contains the cluster name in the signed x-k8s-aws-id header.
+ */
+public class EksTokenGenerator {
+
+    public static final String TOKEN_PREFIX = "k8s-aws-v1.";
+    public static final String CLUSTER_ID_HEADER = "x-k8s-aws-id";
+
+    /**
+     * The presigned url is valid for 15 minutes, the token is reported to expire one minute earlier like the aws cli does
+     */
+    public static final Duration TOKEN_VALIDITY = Duration.ofMinutes(14);
+
+    private static final long URL_EXPIRATION_SECONDS = 60;
+
+    private EksTokenGenerator(){}
+
+    /**
+     * Creates the token of a cluster
+     * @param clusterName the name of the cluster
+     * @param region the region of the cluster
+     * @param accessKey the access key
+     * @param secretKey the secret key
+     * @param time the signing time
+     * @return the token
+     */
+    public static String generateToken(String clusterName, String region, String accessKey, String secretKey, Instant time) {
+        String url = AwsSigV4Signer.presignGetUrl("sts." + region + ".amazonaws.com", "/",
+                Map.of("Action", "GetCallerIdentity", "Version", "2011-06-15"),
+                Map.of(CLUSTER_ID_HEADER, clusterName),
+                region, "sts", accessKey, secretKey, time, URL_EXPIRATION_SECONDS, AwsSigV4Signer.EMPTY_PAYLOAD_HASH);
+        return TOKEN_PREFIX + Base64.getUrlEncoder().withoutPadding().encodeToString(url.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -6,18 +6,26 @@ import de.lenneflow.lenneflowterraformserver.exception.InternalServiceException;
 import de.lenneflow.lenneflowterraformserver.model.Credential;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.SystemUtils;
-import org.eclipse.jgit.api.Git;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 
 public class Util {
 
     private static final Logger logger = LoggerFactory.getLogger(Util.class);
 
+    private static final Set<String> PRIVATE_FILES = Set.of("terraform.tfvars", "terraform.tfstate", "terraform.tfstate.backup", ".terraform.lock.hcl", ".terraform",
+            "backend_override.tf");
+
     private Util(){}
 
     /**
@@ -50,52 +58,60 @@ public class Util {
     }
 
     /**
-     * This function will clone the terraform files from GitHub. If the files are already cloned,
-     * it will do a pull to get the all the changes.
-     * @param repositoryUrl the url of the repository
-     * @param branch the branch to clone
+     * Links the needed terraform files into the cluster directory if it is empty.
+     * @param templateDir the directory containing the terraform files of all cloud providers
+     * @param cloudProvider
+     * @param clusterName
+     * @param region
+     * @return the path of the cluster directory
      */
-    public static String gitClone(String repositoryUrl, String branch){
-        try {
-            String terraformDir = getBaseDir() + File.separator + "Terraform";
-            if(new File(terraformDir).exists()){
-                FileUtils.deleteDirectory(new File(terraformDir));
-            }
-            if(!new File(terraformDir).mkdirs()){
-                throw new InternalServiceException("Unable to create directory " + terraformDir);
-            }
-            Git.cloneRepository().setURI(repositoryUrl).setBranch(branch).setDirectory(new File(terraformDir)).call();
-            return terraformDir;
-        } catch (Exception e) {
-            throw new InternalServiceException(e.getMessage());
-        }
+    public static String initializeClusterDir(String templateDir, CloudProvider cloudProvider, String clusterName, String region){
+        return initializeDir(templateDir, cloudProvider, getClusterDir(cloudProvider, clusterName, region));
+    }
 
+    /**
+     * The drift checks of a cluster run in their own directory, so they never touch the files of a running operation.
+     * This function creates this directory and return the path.
+     * @param cloudProvider the cloud provider
+     * @param clusterName the name of the cluster
+     * @param region the region of the cluster
+     * @return the directory path
+     */
+    public static String getDriftDir(CloudProvider cloudProvider, String clusterName, String region){
+        String  driftDirPath = getBaseDir() + File.separator + "drift" + File.separator + cloudProvider.toString().toLowerCase() + File.separator + region + File.separator + clusterName;
+        if(!new File(driftDirPath).exists() && !new File(driftDirPath).mkdirs()){
+            throw new InternalServiceException("Unable to create directory " + driftDirPath);
+        }
+        return  driftDirPath;
     }
 
     /**
-     * Copies the needed terraform files to the cluster directory if it is empty.
+     * Links the needed terraform files into the drift directory of a cluster if it is empty.
+     * @param templateDir the directory containing the terraform files of all cloud providers
      * @param cloudProvider
      * @param clusterName
      * @param region
-     * @return the path of the cluster directory
+     * @return the path of the drift directory
      */
-    public static String initializeClusterDir(CloudProvider cloudProvider, String clusterName, String region){
+    public static String initializeDriftDir(String templateDir, CloudProvider cloudProvider, String clusterName, String region){
+        return initializeDir(templateDir, cloudProvider, getDriftDir(cloudProvider, clusterName, region));
+    }
+
+    private static String initializeDir(String templateDir, CloudProvider cloudProvider, String clusterDir){
         try {
-            String terraformDir = getBaseDir() + File.separator + "Terraform";
-            String clusterDir = getClusterDir(cloudProvider, clusterName, region);
             if(FileUtils.isEmptyDirectory(new File(clusterDir))){
                 switch(cloudProvider){
                     case AWS -> {
-                        String source = terraformDir + File.separator + "aws";
-                        FileUtils.copyDirectory(new File(source), new File(clusterDir));
+                        String source = templateDir + File.separator + "aws";
+                        linkDirectory(new File(source), new File(clusterDir));
                     }
                     case AZURE -> {
-                        String source = terraformDir + File.separator + "azure";
-                        FileUtils.copyDirectory(new File(source), new File(clusterDir));
+                        String source = templateDir + File.separator + "azure";
+                        linkDirectory(new File(source), new File(clusterDir));
                     }
                     case GOOGLE -> {
-                        String source = terraformDir + File.separator + "google";
-                        FileUtils.copyDirectory(new File(source), new File(clusterDir));
+                        String source = templateDir + File.separator + "google";
+                        linkDirectory(new File(source), new File(clusterDir));
                     }
                     default -> throw new InternalServiceException("Unknown cloud provider " + cloudProvider);
 
@@ -108,6 +124,50 @@ public class Util {
         }
     }
 
+    /**
+     * Recreates the directory tree of the source in the target and hard links the files into it, so that all cluster
+     * directories share the files of the template snapshot. The files terraform writes into a cluster directory
+     * (tfvars, state, lock file and .terraform) are copied. If the file system can not link the files, all files are copied.
+     * @param source the template directory
+     * @param target the cluster directory
+     * @throws IOException
+     */
+    public static void linkDirectory(File source, File target) throws IOException {
+        Path sourcePath = source.toPath();
+        Path targetPath = target.toPath();
+        boolean linkFiles = true;
+        try (Stream<Path> paths = Files.walk(sourcePath)) {
+            Iterator<Path> iterator = paths.iterator();
+            while (iterator.hasNext()) {
+                Path path = iterator.next();
+                Path relativePath = sourcePath.relativize(path);
+                Path destination = targetPath.resolve(relativePath.toString());
+                if (Files.isDirectory(path)) {
+                    Files.createDirectories(destination);
+                } else if (linkFiles && !isPrivateFile(relativePath)) {
+                    try {
+                        Files.createLink(destination, path);
+                    } catch (UnsupportedOperationException | IOException e) {
+                        logger.warn("Unable to link {}, copying the template files instead: {}", path, e.getMessage());
+                        linkFiles = false;
+                        Files.copy(path, destination, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                } else {
+                    Files.copy(path, destination, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    private static boolean isPrivateFile(Path relativePath) {
+        for (Path element : relativePath) {
+            if (PRIVATE_FILES.contains(element.toString())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Runs a command line command and return the exit code
      * @param command
@@ -121,6 +181,9 @@ public class Util {
         }
         ProcessBuilder processBuilder = new ProcessBuilder();
         processBuilder.command(command.split(" "));
+        // the output is not read, a child that writes more than the pipe buffer would block otherwise
+        processBuilder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        processBuilder.redirectError(ProcessBuilder.Redirect.DISCARD);
         Process process = processBuilder.start();
         return process.waitFor();
     }
@@ -139,71 +202,28 @@ public class Util {
         StringBuilder output = new StringBuilder();
         ProcessBuilder processBuilder = new ProcessBuilder();
         processBuilder.command(command.split(" "));
-
-        Process process = processBuilder.start();
-        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-
-        String line;
-        while ((line = reader.readLine()) != null) {
-            output.append(line).append("\n");
-        }
-        int exitCode = process.waitFor();
-        if(exitCode != 0){
-            throw new IOException("Exit code: " + exitCode + "\n" + process.getErrorStream().toString());
-        }
-        return output.toString();
-    }
-
-
-    /**
-     * Executes a terraform command line command
-     * @param command
-     * @param terraformFilesPath
-     * @return the exit code
-     * @throws IOException
-     * @throws InterruptedException
-     */
-    public static int runTerraformCommand(String command, String terraformFilesPath) throws IOException, InterruptedException {
-            ProcessBuilder processBuilder = new ProcessBuilder();
-            processBuilder.command(command.split(" "));
-
-            // Set the Terraform working directory (replace with your directory)
-            processBuilder.directory(new File(terraformFilesPath));
+        // stderr goes to a file, so the child never blocks on it while stdout is read
+        File errorFile = File.createTempFile("cmd", ".err");
+        processBuilder.redirectError(errorFile);
+        try {
             Process process = processBuilder.start();
-
-            // Capture the command output
             BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+
             String line;
             while ((line = reader.readLine()) != null) {
-                logger.info(line);
+                output.append(line).append("\n");
             }
-            // Wait for the process to complete
             int exitCode = process.waitFor();
-            logger.info("Command executed with exit code: {}", exitCode);
-            return exitCode;
-    }
-
-    public static String runTerraformCommandAndGetOutput(String command, String terraformFilesPath) throws IOException, InterruptedException {
-        ProcessBuilder processBuilder = new ProcessBuilder();
-        processBuilder.command(command.split(" "));
-
-        // Set the Terraform working directory (replace with your directory)
-        processBuilder.directory(new File(terraformFilesPath));
-        Process process = processBuilder.start();
-        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-
-        StringBuilder output = new StringBuilder();
-        String line;
-        while ((line = reader.readLine()) != null) {
-            output.append(line).append("\n");
-        }
-        int exitCode = process.waitFor();
-        if(exitCode != 0){
-            throw new IOException("Exit code: " + exitCode + "\n" + process.getErrorStream().toString());
+            if(exitCode != 0){
+                throw new IOException("Exit code: " + exitCode + "\n" + Files.readString(errorFile.toPath()));
+            }
+            return output.toString();
+        } finally {
+            Files.deleteIfExists(errorFile.toPath());
         }
-        return output.toString();
     }
 
+
     /**
      * This method creates a map containing all variables and the values for AWS kubernetes.
      * The map will be used to create the tfvars file.
@@ -237,6 +257,8 @@ public class Util {
         dir.setWritable(true);
         dir.setExecutable(true);
         String filePath = dirPath + File.separator + "terraform.tfvars";
+        // the file may be a hard link into a template snapshot, so it is replaced instead of overwritten
+        new File(filePath).delete();
         try (FileWriter writer = new FileWriter(filePath)) {
             // Iterate through the variables and write each key-value pair in the correct format
             for (Map.Entry<String, String> entry : variables.entrySet()) {
@@ -0,0 +1,93 @@
+package de.lenneflow.lenneflowterraformserver.controller;
+
+import de.lenneflow.lenneflowterraformserver.enums.CloudProvider;
+import de.lenneflow.lenneflowterraformserver.model.AccessToken;
+import de.lenneflow.lenneflowterraformserver.model.Cluster;
+import de.lenneflow.lenneflowterraformserver.repository.ClusterJobRepository;
+import de.lenneflow.lenneflowterraformserver.repository.ReactiveClusterRepository;
+import de.lenneflow.lenneflowterraformserver.service.AccessTokenService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@Order(51)
+class ReactiveServerControllerTest {
+
+    @Mock
+    private ReactiveClusterRepository clusterRepository;
+
+    @Mock
+    private AccessTokenService accessTokenService;
+
+    @Mock
+    private ClusterJobRepository jobRepository;
+
+    private ReactiveServerController reactiveServerController;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        reactiveServerController = new ReactiveServerController(clusterRepository, accessTokenService, jobRepository, 200, 10);
+    }
+
+    @Test
+    void getClusterReturnsClusterOfRepository() {
+        Cluster cluster = new Cluster();
+        when(clusterRepository.findByCloudProviderAndClusterNameAndRegion(CloudProvider.AWS, "test-cluster", "us-west-1")).thenReturn(Mono.just(cluster));
+
+        assertSame(cluster, reactiveServerController.getCluster("test-cluster", "us-west-1", "aws").block());
+    }
+
+    @Test
+    void getConnectionTokenReturnsTokenOfService() {
+        AccessToken token = new AccessToken();
+        when(accessTokenService.getTokenAsync(any(), any(), any())).thenReturn(CompletableFuture.completedFuture(token));
+
+        assertSame(token, reactiveServerController.getConnectionToken("test-cluster", "us-west-1", "AWS").block());
+    }
+
+    @Test
+    void awaitOperationReturnsClusterWhenOperationIsFinished() {
+        Cluster cluster = new Cluster();
+        when(clusterRepository.findByCloudProviderAndClusterNameAndRegion(any(), any(), any())).thenReturn(Mono.just(cluster));
+        AtomicBoolean active = new AtomicBoolean(true);
+        when(jobRepository.existsByActiveClusterKey("aws/us-west-1/test-cluster")).thenAnswer(invocation -> active.get());
+
+        CompletableFuture<Cluster> completion = reactiveServerController.awaitOperation("test-cluster", "us-west-1", "AWS").toFuture();
+        verify(jobRepository, timeout(5000).atLeast(2)).existsByActiveClusterKey("aws/us-west-1/test-cluster");
+        assertFalse(completion.isDone());
+
+        // the job may have run on another replica, only its state in Mongo is known
+        active.set(false);
+        assertSame(cluster, completion.join());
+    }
+
+    @Test
+    void awaitOperationReturnsClusterAfterTimeout() {
+        Cluster cluster = new Cluster();
+        when(clusterRepository.findByCloudProviderAndClusterNameAndRegion(any(), any(), any())).thenReturn(Mono.just(cluster));
+        when(jobRepository.existsByActiveClusterKey(any())).thenReturn(true);
+
+        assertSame(cluster, reactiveServerController.awaitOperation("test-cluster", "us-west-1", "AWS").block(Duration.ofSeconds(5)));
+    }
+
+    @Test
+    void awaitOperationReturnsClusterWithoutActiveJob() {
+        Cluster cluster = new Cluster();
+        when(clusterRepository.findByCloudProviderAndClusterNameAndRegion(any(), any(), any())).thenReturn(Mono.just(cluster));
+
+        assertSame(cluster, reactiveServerController.awaitOperation("test-cluster", "us-west-1", "AWS").block(Duration.ofSeconds(5)));
+        verify(jobRepository, times(1)).existsByActiveClusterKey("aws/us-west-1/test-cluster");
+    }
+}
@@ -0,0 +1,144 @@
+package de.lenneflow.lenneflowterraformserver.controller;
+
+import de.lenneflow.lenneflowterraformserver.enums.CloudProvider;
+import de.lenneflow.lenneflowterraformserver.enums.ClusterStatus;
+import de.lenneflow.lenneflowterraformserver.model.Cluster;
+import de.lenneflow.lenneflowterraformserver.repository.ClusterRepository;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the latency of a burst of getCluster requests to the servlet endpoint with the one of the reactive
+ * endpoint. The requests go through HTTP to one node with a Mongo container as database, the node gets fewer
+ * request threads than there are concurrent clients. Reports the p50 and p99 of both endpoints.
+ * Skipped if no docker is available.
+ * Run with ./gradlew benchmark
+ */
+@Tag("benchmark")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.DEFINED_PORT, properties = {
+        "server.tomcat.threads.max=${benchmark.request-threads:16}",
+        "drift.enabled=false",
+        "reconciler.initial-delay=3600000"
+})
+@Testcontainers(disabledWithoutDocker = true)
+class ReadLatencyBenchmark {
+
+    private static final int REQUESTS = Integer.getInteger("benchmark.requests", 5000);
+    private static final int CLIENTS = Integer.getInteger("benchmark.clients", 64);
+    private static final int WARMUP_REQUESTS = 500;
+    private static final String REGION = "us-west-1";
+    private static final String CLUSTER_NAME = "benchmark-cluster";
+
+    @Container
+    @ServiceConnection
+    static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+    @Autowired
+    private ClusterRepository clusterRepository;
+
+    @Value("${server.port}")
+    private int serverPort;
+
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+
+    /**
+     * The node is set up like the one of the load test
+     */
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        ClusterLifecycleLoadTest.serverPort(registry);
+        ClusterLifecycleLoadTest.templateRepository(registry);
+    }
+
+    @Test
+    void compareTailLatencyOfServletAndReactiveEndpoint() throws InterruptedException {
+        Cluster cluster = new Cluster();
+        cluster.setUid(UUID.randomUUID().toString());
+        cluster.setClusterName(CLUSTER_NAME);
+        cluster.setRegion(REGION);
+        cluster.setCloudProvider(CloudProvider.AWS);
+        cluster.setStatus(ClusterStatus.CREATED);
+        clusterRepository.save(cluster);
+        String servletPath = "/api/kubernetes/cluster/" + CLUSTER_NAME + "/provider/AWS/region/" + REGION;
+        String reactivePath = "/api/kubernetes/reactive/cluster/" + CLUSTER_NAME + "/provider/AWS/region/" + REGION;
+
+        measure(servletPath, WARMUP_REQUESTS);
+        measure(reactivePath, WARMUP_REQUESTS);
+        long[] servletLatencies = measure(servletPath, REQUESTS);
+        long[] reactiveLatencies = measure(reactivePath, REQUESTS);
+
+        System.out.printf("servlet:  %d requests, %d clients, p50 %d ms, p99 %d ms%n", REQUESTS, CLIENTS,
+                percentile(servletLatencies, 50), percentile(servletLatencies, 99));
+        System.out.printf("reactive: %d requests, %d clients, p50 %d ms, p99 %d ms%n", REQUESTS, CLIENTS,
+                percentile(reactiveLatencies, 50), percentile(reactiveLatencies, 99));
+    }
+
+    /**
+     * Sends the requests from all clients at once and returns the latency of every request in nanoseconds.
+     * Fails if a request is not answered with the cluster.
+     */
+    private long[] measure(String path, int requests) throws InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + serverPort + path))
+                .timeout(Duration.ofSeconds(30))
+                .GET()
+                .build();
+        long[] latencies = new long[requests];
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch finished = new CountDownLatch(requests);
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            for (int i = 0; i < requests; i++) {
+                int index = i;
+                clients.execute(() -> {
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+                        if (response.statusCode() != 200 || !response.body().contains(CLUSTER_NAME)) {
+                            failures.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                    } finally {
+                        latencies[index] = System.nanoTime() - start;
+                        finished.countDown();
+                    }
+                });
+            }
+            assertTrue(finished.await(5, TimeUnit.MINUTES));
+        } finally {
+            clients.shutdownNow();
+        }
+        assertEquals(0, failures.get(), path);
+        return latencies;
+    }
+
+    private long percentile(long[] latencies, int percentile) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)] / 1_000_000;
+    }
+}
@@ -1,16 +1,38 @@
 package de.lenneflow.lenneflowterraformserver.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import de.lenneflow.lenneflowterraformserver.dto.BatchDTO;
 import de.lenneflow.lenneflowterraformserver.dto.ClusterDTO;
+import de.lenneflow.lenneflowterraformserver.dto.ClusterPageDTO;
 import de.lenneflow.lenneflowterraformserver.dto.NodeGroupDTO;
 import de.lenneflow.lenneflowterraformserver.enums.CloudProvider;
+import de.lenneflow.lenneflowterraformserver.enums.JobType;
 import de.lenneflow.lenneflowterraformserver.exception.InternalServiceException;
+import de.lenneflow.lenneflowterraformserver.exception.OperationInProgressException;
 import de.lenneflow.lenneflowterraformserver.exception.PayloadNotValidException;
+import de.lenneflow.lenneflowterraformserver.exception.ResourceNotFoundException;
 import de.lenneflow.lenneflowterraformserver.model.AccessToken;
 import de.lenneflow.lenneflowterraformserver.model.Cluster;
+import de.lenneflow.lenneflowterraformserver.enums.JobStatus;
+import de.lenneflow.lenneflowterraformserver.model.ClusterJob;
+import de.lenneflow.lenneflowterraformserver.enums.ClusterStatus;
+import de.lenneflow.lenneflowterraformserver.model.ClusterFilter;
 import de.lenneflow.lenneflowterraformserver.model.Credential;
-import de.lenneflow.lenneflowterraformserver.repository.AccessTokenRepository;
 import de.lenneflow.lenneflowterraformserver.repository.ClusterRepository;
 import de.lenneflow.lenneflowterraformserver.repository.CredentialRepository;
+import de.lenneflow.lenneflowterraformserver.service.AccessTokenService;
+import de.lenneflow.lenneflowterraformserver.service.ClusterBatch;
+import de.lenneflow.lenneflowterraformserver.service.ClusterBatchRegistry;
+import de.lenneflow.lenneflowterraformserver.service.ClusterJobService;
+import de.lenneflow.lenneflowterraformserver.service.OperationExecutor;
+import de.lenneflow.lenneflowterraformserver.service.TemplateSnapshot;
+import de.lenneflow.lenneflowterraformserver.service.TemplateStore;
+import de.lenneflow.lenneflowterraformserver.service.ReplicaRouter;
+import de.lenneflow.lenneflowterraformserver.service.TerraformAdmission;
+import de.lenneflow.lenneflowterraformserver.service.TerraformOutputBroadcaster;
+import de.lenneflow.lenneflowterraformserver.service.TerraformOutputReader;
+import de.lenneflow.lenneflowterraformserver.service.TerraformPluginCache;
 import de.lenneflow.lenneflowterraformserver.util.Util;
 import de.lenneflow.lenneflowterraformserver.util.Validator;
 import org.junit.jupiter.api.AfterEach;
@@ -22,8 +44,14 @@ import org.mockito.Mock;
 import org.mockito.MockedStatic;
 import org.mockito.MockitoAnnotations;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.time.LocalDateTime;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -39,7 +67,34 @@ class ServerControllerTest {
     private ClusterRepository clusterRepository;
 
     @Mock
-    private AccessTokenRepository accessTokenRepository;
+    private OperationExecutor operationExecutor;
+
+    @Mock
+    private TerraformPluginCache pluginCache;
+
+    @Mock
+    private TemplateStore templateStore;
+
+    @Mock
+    private TerraformOutputBroadcaster outputBroadcaster;
+
+    @Mock
+    private AccessTokenService accessTokenService;
+
+    @Mock
+    private ClusterBatchRegistry batchRegistry;
+
+    @Mock
+    private ClusterJobService jobService;
+
+    @Mock
+    private TerraformOutputReader outputReader;
+
+    @Mock
+    private TerraformAdmission terraformAdmission;
+
+    @Mock
+    private ReplicaRouter replicaRouter;
 
     @InjectMocks
     private ServerController serverController;
@@ -49,12 +104,11 @@ class ServerControllerTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
-        utilMockedStatic.when(() -> Util.initializeClusterDir(any(), any(), any())).thenReturn("");
-        utilMockedStatic.when(() -> Util.gitClone(any(), any())).thenReturn("");
+        TemplateSnapshot snapshot = new TemplateSnapshot("commit", new File(""));
+        when(templateStore.getSnapshot()).thenReturn(snapshot);
+        when(templateStore.getSnapshot(any())).thenReturn(snapshot);
         utilMockedStatic.when(() -> Util.runCmdCommand(any())).thenReturn(0);
         utilMockedStatic.when(() -> Util.runCmdCommandAndGetOutput(any())).thenReturn("output");
-        utilMockedStatic.when(() -> Util.runTerraformCommand(any(), any())).thenReturn(0);
-        doNothing().when(accessTokenRepository).delete(any());
         doNothing().when(clusterRepository).delete(any());
     }
 
@@ -87,6 +141,117 @@ class ServerControllerTest {
         when(clusterRepository.findByCloudProviderAndClusterNameAndRegion(any(), any(), any())).thenReturn(new Cluster());
 
         assertThrows(PayloadNotValidException.class, () -> serverController.createOrUpdateCluster(clusterDTO));
+        verify(jobService, never()).enqueue(any(), any());
+    }
+
+    @Test
+    void createOrUpdateClusterRemovesClusterWhenAnotherJobIsActive() {
+        Cluster cluster = createCluster("uid-1");
+        cluster.setCredentialId("credential-uid");
+        Credential credential = new Credential();
+        credential.setUid("credential-uid");
+        when(clusterRepository.findByCloudProviderAndClusterNameAndRegion(any(), any(), any())).thenReturn(null);
+        when(credentialRepository.save(any())).thenReturn(credential);
+        when(clusterRepository.save(any())).thenReturn(cluster);
+        when(jobService.enqueue(any(), any())).thenThrow(new OperationInProgressException("in progress"));
+
+        assertThrows(OperationInProgressException.class, () -> serverController.createOrUpdateCluster(createClusterDTO("test-cluster")));
+        verify(credentialRepository).deleteById("credential-uid");
+        verify(clusterRepository).delete(cluster);
+    }
+
+    @Test
+    void createClustersRejectsBatchWithDuplicateClusters() {
+        when(batchRegistry.getMaximumSize()).thenReturn(10);
+
+        assertThrows(PayloadNotValidException.class, () -> serverController.createClusters(List.of(createClusterDTO("cluster-1"), createClusterDTO("cluster-1")), null));
+        verify(clusterRepository, never()).save(any());
+    }
+
+    @Test
+    void createClustersStartsBatchWithAllClusters() {
+        Credential credential = new Credential();
+        credential.setUid("test-uid");
+        when(batchRegistry.getMaximumSize()).thenReturn(10);
+        when(batchRegistry.start(any(), any())).thenAnswer(invocation -> new ClusterBatch("batch-id", invocation.getArgument(0), invocation.getArgument(1)));
+        when(clusterRepository.findByCloudProviderAndClusterNameAndRegion(any(), any(), any())).thenReturn(null);
+        when(clusterRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(credentialRepository.save(any())).thenReturn(credential);
+
+        BatchDTO batch = serverController.createClusters(List.of(createClusterDTO("cluster-1"), createClusterDTO("cluster-2"), createClusterDTO("cluster-3")), 2);
+
+        assertEquals(3, batch.getTotal());
+        assertEquals(2, batch.getParallelism());
+        verify(templateStore, times(1)).getSnapshot();
+        verify(batchRegistry).start(eq(2), argThat(entries -> entries.size() == 3));
+    }
+
+    @Test
+    void createClustersStoresNothingWhenClusterExists() {
+        when(batchRegistry.getMaximumSize()).thenReturn(10);
+        when(clusterRepository.findByCloudProviderAndClusterNameAndRegion(any(), any(), any())).thenReturn(null, new Cluster());
+
+        assertThrows(PayloadNotValidException.class, () -> serverController.createClusters(List.of(createClusterDTO("cluster-1"), createClusterDTO("cluster-2")), null));
+        verify(clusterRepository, never()).save(any());
+        verify(batchRegistry, never()).start(any(), any());
+    }
+
+    @Test
+    void listClustersReturnsCursorOfNextPage() {
+        when(clusterRepository.findPage(any(), any(), anyInt())).thenReturn(List.of(createCluster("uid-1"), createCluster("uid-2"), createCluster("uid-3")));
+
+        ClusterPageDTO page = serverController.listClusters("aws", "created", "us-west-1", null, 2);
+
+        assertEquals(2, page.getClusters().size());
+        assertEquals("uid-2", page.getNextCursor());
+        verify(clusterRepository).findPage(new ClusterFilter(CloudProvider.AWS, ClusterStatus.CREATED, "us-west-1"), null, 3);
+    }
+
+    @Test
+    void listClustersReturnsNoCursorOnLastPage() {
+        when(clusterRepository.findPage(any(), any(), anyInt())).thenReturn(List.of(createCluster("uid-3")));
+
+        ClusterPageDTO page = serverController.listClusters(null, null, null, "uid-2", 2);
+
+        assertEquals(1, page.getClusters().size());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void listClustersRejectsUnknownStatus() {
+        assertThrows(PayloadNotValidException.class, () -> serverController.listClusters(null, "unknown", null, null, 10));
+    }
+
+    @Test
+    void streamClustersWritesOneLinePerCluster() throws IOException {
+        when(clusterRepository.streamAll(any())).thenReturn(Stream.of(createCluster("uid-1"), createCluster("uid-2")));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        serverController.streamClusters(null, null, "us-west-1").writeTo(output);
+
+        String[] lines = output.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].contains("\"uid\":\"uid-1\""));
+        assertTrue(lines[1].contains("\"uid\":\"uid-2\""));
+    }
+
+    @Test
+    void deleteClusterThrowsExceptionWhenOperationIsInProgress() {
+        when(clusterRepository.findByCloudProviderAndClusterNameAndRegion(any(), any(), any())).thenReturn(createCluster("uid-1"));
+        when(jobService.enqueue(any(), any())).thenThrow(new OperationInProgressException("in progress"));
+
+        assertThrows(OperationInProgressException.class, () -> serverController.deleteCluster("test-cluster", "us-west-1", "AWS"));
+        verify(clusterRepository, never()).delete(any());
+    }
+
+    @Test
+    void deleteClusterQueuesDeleteJob() {
+        Cluster cluster = createCluster("uid-1");
+        when(clusterRepository.findByCloudProviderAndClusterNameAndRegion(any(), any(), any())).thenReturn(cluster);
+
+        serverController.deleteCluster("test-cluster", "us-west-1", "aws");
+
+        verify(jobService).enqueue(JobType.DELETE, cluster);
     }
 
     @Test
@@ -162,34 +327,43 @@ class ServerControllerTest {
     }
 
     @Test
-    void getConnectionTokenReturnsTokenWhenExistsAndNotExpired() {
-        Cluster cluster = new Cluster();
-        cluster.setCloudProvider(CloudProvider.AWS);
-        cluster.setClusterName("test-cluster");
-        cluster.setRegion("us-west-1");
+    void getClusterOutputsReturnsOutputsOfState() {
+        Cluster cluster = createCluster("test-uid");
+        Map<String, JsonNode> outputs = Map.of("cluster_endpoint", TextNode.valueOf("https://endpoint"));
+        when(clusterRepository.findByCloudProviderAndClusterNameAndRegion(CloudProvider.AWS, "test-cluster", "us-west-1")).thenReturn(cluster);
+        when(outputReader.getOutputs(cluster)).thenReturn(outputs);
 
-        AccessToken token = new AccessToken();
-        token.setExpiration(LocalDateTime.now().plusDays(1));
+        assertEquals(outputs, serverController.getClusterOutputs("test-cluster", "us-west-1", "aws"));
+    }
 
-        when(clusterRepository.findByCloudProviderAndClusterNameAndRegion(any(), any(), any())).thenReturn(cluster);
-        when(accessTokenRepository.findByUid(any())).thenReturn(token);
+    @Test
+    void getClusterOutputsThrowsExceptionWhenClusterNotFound() {
+        when(clusterRepository.findByCloudProviderAndClusterNameAndRegion(any(), any(), any())).thenReturn(null);
 
-        AccessToken foundToken = serverController.getConnectionToken("test-cluster", "us-west-1", "AWS");
+        assertThrows(ResourceNotFoundException.class, () -> serverController.getClusterOutputs("test-cluster", "us-west-1", "aws"));
+        verifyNoInteractions(outputReader);
+    }
 
-        assertNotNull(foundToken);
-        assertEquals(token, foundToken);
+    @Test
+    void cancelJobCancelsJobOfService() {
+        ClusterJob job = new ClusterJob();
+        job.setStatus(JobStatus.CANCELLED);
+        when(jobService.cancel("job-1")).thenReturn(job);
+
+        assertSame(job, serverController.cancelJob("job-1"));
     }
 
     @Test
-    void getConnectionTokenThrowsExceptionWhenCloudProviderNotSupported() {
-        Cluster cluster = new Cluster();
-        cluster.setCloudProvider(CloudProvider.AZURE);
-        cluster.setClusterName("test-cluster");
-        cluster.setRegion("us-west-1");
+    void getConnectionTokenReturnsTokenOfService() {
+        AccessToken token = new AccessToken();
+        token.setExpiration(LocalDateTime.now().plusDays(1));
 
-        when(clusterRepository.findByCloudProviderAndClusterNameAndRegion(any(), any(), any())).thenReturn(cluster);
+        when(accessTokenService.getToken(CloudProvider.AWS, "test-cluster", "us-west-1")).thenReturn(token);
 
-        assertThrows(InternalServiceException.class, () -> serverController.getConnectionToken("test-cluster", "us-west-1", "AZURE"));
+        AccessToken foundToken = serverController.getConnectionToken("test-cluster", "us-west-1", "aws");
+
+        assertNotNull(foundToken);
+        assertEquals(token, foundToken);
     }
 
     //@Test
@@ -211,23 +385,6 @@ class ServerControllerTest {
         assertThrows(InternalServiceException.class, () -> serverController.deleteCluster("test-cluster", "us-west-1", "AWS"));
     }
 
-    @Test
-    void getConnectionTokenDeletesExpiredToken() {
-        Cluster cluster = new Cluster();
-        cluster.setCloudProvider(CloudProvider.AWS);
-        cluster.setClusterName("test-cluster");
-        cluster.setRegion("us-west-1");
-
-        AccessToken token = new AccessToken();
-        token.setExpiration(LocalDateTime.now().minusDays(1));
-
-        when(clusterRepository.findByCloudProviderAndClusterNameAndRegion(any(), any(), any())).thenReturn(cluster);
-        when(accessTokenRepository.findByUid(any())).thenReturn(token);
-
-        assertThrows(InternalServiceException.class, () -> serverController.getConnectionToken("test-cluster", "us-west-1", "AWS"));
-        verify(accessTokenRepository, times(1)).delete(token);
-    }
-
     @Test
     void createOrUpdateClusterStartsNewThread() {
         ClusterDTO clusterDTO = new ClusterDTO();
@@ -292,21 +449,20 @@ class ServerControllerTest {
         verify(clusterRepository, timeout(100).atLeastOnce()).save(any());
     }
 
-    @Test
-    void getConnectionTokenStartsNewThread() {
+    private Cluster createCluster(String uid) {
         Cluster cluster = new Cluster();
+        cluster.setUid(uid);
         cluster.setCloudProvider(CloudProvider.AWS);
-        cluster.setClusterName("test-cluster");
         cluster.setRegion("us-west-1");
+        return cluster;
+    }
 
-        AccessToken token = new AccessToken();
-        token.setExpiration(LocalDateTime.now().plusDays(1));
-
-        when(clusterRepository.findByCloudProviderAndClusterNameAndRegion(any(), any(), any())).thenReturn(cluster);
-        when(accessTokenRepository.findByUid(any())).thenReturn(token);
-
-        serverController.getConnectionToken("test-cluster", "us-west-1", "AWS");
-
-        verify(accessTokenRepository, times(1)).findByUid(any());
+    private ClusterDTO createClusterDTO(String clusterName) {
+        ClusterDTO clusterDTO = new ClusterDTO();
+        clusterDTO.setCloudProvider(CloudProvider.AWS);
+        clusterDTO.setClusterName(clusterName);
+        clusterDTO.setRegion("us-west-1");
+        return clusterDTO;
     }
-}
\ No newline at end of file
+
+}
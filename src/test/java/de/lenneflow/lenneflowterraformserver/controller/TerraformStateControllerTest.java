@@ -0,0 +1,55 @@
+package de.lenneflow.lenneflowterraformserver.controller;
+
+import de.lenneflow.lenneflowterraformserver.service.TerraformStateStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.server.ResponseStatusException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@Order(52)
+class TerraformStateControllerTest {
+
+    private static final String STATE_NAME = "aws/us-west-1/test-cluster";
+
+    @Mock
+    private TerraformStateStore stateStore;
+
+    private TerraformStateController stateController;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        stateController = new TerraformStateController(stateStore);
+    }
+
+    @Test
+    void getStateReturnsNoContentWhenStateDoesNotExist() {
+        when(stateStore.getState(STATE_NAME)).thenReturn(null);
+
+        ResponseEntity<byte[]> response = stateController.getState("AWS", "us-west-1", "test-cluster");
+
+        assertEquals(HttpStatus.NO_CONTENT, response.getStatusCode());
+    }
+
+    @Test
+    void lockStateDispatchesLockAndUnlock() {
+        stateController.lockState(new MockHttpServletRequest("LOCK", "/"), "aws", "us-west-1", "test-cluster", "{\"ID\":\"lock-1\"}");
+        stateController.lockState(new MockHttpServletRequest("UNLOCK", "/"), "aws", "us-west-1", "test-cluster", "{\"ID\":\"lock-1\"}");
+
+        verify(stateStore).lock(STATE_NAME, "{\"ID\":\"lock-1\"}");
+        verify(stateStore).unlock(STATE_NAME, "{\"ID\":\"lock-1\"}");
+    }
+
+    @Test
+    void lockStateRejectsOtherMethods() {
+        assertThrows(ResponseStatusException.class, () -> stateController.lockState(new MockHttpServletRequest("PUT", "/"), "aws", "us-west-1", "test-cluster", "{}"));
+    }
+}
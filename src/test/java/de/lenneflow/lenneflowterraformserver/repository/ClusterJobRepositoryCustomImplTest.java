@@ -0,0 +1,114 @@
+package de.lenneflow.lenneflowterraformserver.repository;
+
+import com.mongodb.client.result.UpdateResult;
+import de.lenneflow.lenneflowterraformserver.enums.JobStatus;
+import de.lenneflow.lenneflowterraformserver.model.ClusterJob;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@Order(32)
+class ClusterJobRepositoryCustomImplTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    private ClusterJobRepositoryCustomImpl jobRepository;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        jobRepository = new ClusterJobRepositoryCustomImpl(mongoTemplate);
+    }
+
+    @Test
+    void claimNextTakesQueuedOrExpiredJobAndSetsLease() {
+        ClusterJob job = new ClusterJob();
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(ClusterJob.class))).thenReturn(job);
+
+        assertSame(job, jobRepository.claimNext("replica-1", "http://replica-1:8787", Duration.ofMinutes(1), 3));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).findAndModify(query.capture(), update.capture(), any(FindAndModifyOptions.class), eq(ClusterJob.class));
+        assertEquals(2, ((List<?>) query.getValue().getQueryObject().get("$or")).size());
+        assertEquals(new Document("$lt", 3), query.getValue().getQueryObject().get("attempts"));
+        assertEquals(new Document("created", 1), query.getValue().getSortObject());
+        Document set = (Document) update.getValue().getUpdateObject().get("$set");
+        assertEquals(JobStatus.RUNNING, set.get("status"));
+        assertEquals("replica-1", set.get("owner"));
+        assertEquals("http://replica-1:8787", set.get("ownerAddress"));
+        assertNotNull(set.get("leaseExpiration"));
+        assertEquals(new Document("attempts", 1), update.getValue().getUpdateObject().get("$inc"));
+    }
+
+    @Test
+    void finishOnlyAppliesForOwnerAndFreesCluster() {
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(ClusterJob.class))).thenReturn(UpdateResult.acknowledged(1, 1L, null));
+
+        assertTrue(jobRepository.finish("job-1", "replica-1", JobStatus.SUCCEEDED, null));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateFirst(query.capture(), update.capture(), eq(ClusterJob.class));
+        assertEquals("replica-1", query.getValue().getQueryObject().get("owner"));
+        assertEquals(JobStatus.RUNNING, query.getValue().getQueryObject().get("status"));
+        Document unset = (Document) update.getValue().getUpdateObject().get("$unset");
+        assertTrue(unset.containsKey("activeClusterKey"));
+    }
+
+    @Test
+    void renewLeasesReturnsJobsNotOwnedAnymore() {
+        when(mongoTemplate.updateMulti(any(Query.class), any(Update.class), eq(ClusterJob.class))).thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        when(mongoTemplate.findDistinct(any(Query.class), eq("_id"), eq(ClusterJob.class), eq(String.class))).thenReturn(List.of("job-1"));
+
+        assertEquals(List.of("job-2"), jobRepository.renewLeases("replica-1", List.of("job-1", "job-2"), Duration.ofMinutes(1)));
+    }
+
+    @Test
+    void claimNextSkipsJobsWithCancelRequest() {
+        jobRepository.claimNext("replica-1", "http://replica-1:8787", Duration.ofMinutes(1), 3);
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).findAndModify(query.capture(), any(Update.class), any(FindAndModifyOptions.class), eq(ClusterJob.class));
+        assertTrue(query.getValue().getQueryObject().containsKey("cancelRequested"));
+        assertNull(query.getValue().getQueryObject().get("cancelRequested"));
+    }
+
+    @Test
+    void cancelQueuedOnlyCancelsQueuedJobAndFreesCluster() {
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(ClusterJob.class))).thenReturn(UpdateResult.acknowledged(1, 1L, null));
+
+        assertTrue(jobRepository.cancelQueued("job-1"));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateFirst(query.capture(), update.capture(), eq(ClusterJob.class));
+        assertEquals(JobStatus.QUEUED, query.getValue().getQueryObject().get("status"));
+        assertEquals(JobStatus.CANCELLED, ((Document) update.getValue().getUpdateObject().get("$set")).get("status"));
+        assertTrue(((Document) update.getValue().getUpdateObject().get("$unset")).containsKey("activeClusterKey"));
+    }
+
+    @Test
+    void finishReturnsFalseWhenJobWasTakenOver() {
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(ClusterJob.class))).thenReturn(UpdateResult.acknowledged(0, 0L, null));
+
+        assertFalse(jobRepository.finish("job-1", "replica-1", JobStatus.FAILED, "error"));
+    }
+}
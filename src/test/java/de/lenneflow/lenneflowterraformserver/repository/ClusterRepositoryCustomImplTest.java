@@ -0,0 +1,119 @@
+package de.lenneflow.lenneflowterraformserver.repository;
+
+import com.mongodb.client.result.UpdateResult;
+import de.lenneflow.lenneflowterraformserver.enums.CloudProvider;
+import de.lenneflow.lenneflowterraformserver.enums.ClusterStatus;
+import de.lenneflow.lenneflowterraformserver.model.Cluster;
+import de.lenneflow.lenneflowterraformserver.model.ClusterFilter;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@Order(31)
+class ClusterRepositoryCustomImplTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    private ClusterRepositoryCustomImpl clusterRepository;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        clusterRepository = new ClusterRepositoryCustomImpl(mongoTemplate);
+    }
+
+    @Test
+    void updateStatusSetsOnlyStatusOfExpectedVersion() {
+        Cluster cluster = createCluster();
+        Cluster updatedCluster = new Cluster();
+        updatedCluster.setVersion(4L);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Cluster.class))).thenReturn(updatedCluster);
+
+        clusterRepository.updateStatus(cluster, ClusterStatus.CREATING);
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).findAndModify(query.capture(), update.capture(), any(FindAndModifyOptions.class), eq(Cluster.class));
+        assertEquals(3L, query.getValue().getQueryObject().get("version"));
+        assertEquals("test-uid", query.getValue().getQueryObject().get("_id"));
+        Document set = (Document) update.getValue().getUpdateObject().get("$set");
+        assertEquals(1, set.size());
+        assertEquals(ClusterStatus.CREATING, set.get("status"));
+        assertEquals(ClusterStatus.CREATING, cluster.getStatus());
+        assertEquals(4L, cluster.getVersion());
+    }
+
+    @Test
+    void updateStatusThrowsExceptionWhenVersionChanged() {
+        Cluster cluster = createCluster();
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Cluster.class))).thenReturn(null);
+
+        assertThrows(OptimisticLockingFailureException.class, () -> clusterRepository.updateStatus(cluster, ClusterStatus.ERROR));
+        assertEquals(ClusterStatus.PLANING, cluster.getStatus());
+        assertEquals(3L, cluster.getVersion());
+    }
+
+    @Test
+    void updateAccessTokenIdDoesNotCheckVersion() {
+        clusterRepository.updateAccessTokenId("test-uid", "token-uid");
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).updateFirst(query.capture(), any(Update.class), eq(Cluster.class));
+        assertFalse(query.getValue().getQueryObject().containsKey("version"));
+    }
+
+    @Test
+    void findPageContinuesAfterCursorOrderedByUid() {
+        clusterRepository.findPage(new ClusterFilter(CloudProvider.AWS, null, "us-west-1"), "uid-100", 50);
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(query.capture(), eq(Cluster.class));
+        Document queryObject = query.getValue().getQueryObject();
+        assertEquals(CloudProvider.AWS, queryObject.get("cloudProvider"));
+        assertEquals("us-west-1", queryObject.get("region"));
+        assertFalse(queryObject.containsKey("status"));
+        assertEquals("uid-100", ((Document) queryObject.get("_id")).get("$gt"));
+        assertEquals(1, query.getValue().getSortObject().get("_id"));
+        assertEquals(50, query.getValue().getLimit());
+    }
+
+    @Test
+    void renewLeasesOnlyExtendsNewClusters() {
+        when(mongoTemplate.updateMulti(any(Query.class), any(Update.class), eq(Cluster.class))).thenReturn(UpdateResult.acknowledged(2, 2L, null));
+
+        assertEquals(2, clusterRepository.renewLeases(List.of("uid-1", "uid-2"), Duration.ofMinutes(1)));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateMulti(query.capture(), update.capture(), eq(Cluster.class));
+        assertEquals(ClusterStatus.NEW, query.getValue().getQueryObject().get("status"));
+        assertTrue(((Document) update.getValue().getUpdateObject().get("$set")).containsKey("leaseExpiration"));
+    }
+
+    private Cluster createCluster() {
+        Cluster cluster = new Cluster();
+        cluster.setUid("test-uid");
+        cluster.setClusterName("test-cluster");
+        cluster.setStatus(ClusterStatus.PLANING);
+        cluster.setVersion(3L);
+        return cluster;
+    }
+}
@@ -0,0 +1,120 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.enums.CloudProvider;
+import de.lenneflow.lenneflowterraformserver.enums.ClusterStatus;
+import de.lenneflow.lenneflowterraformserver.enums.JobType;
+import de.lenneflow.lenneflowterraformserver.exception.OperationInProgressException;
+import de.lenneflow.lenneflowterraformserver.model.Cluster;
+import de.lenneflow.lenneflowterraformserver.model.ClusterJob;
+import de.lenneflow.lenneflowterraformserver.repository.ClusterJobRepository;
+import de.lenneflow.lenneflowterraformserver.repository.ClusterRepository;
+import de.lenneflow.lenneflowterraformserver.repository.CredentialRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@Order(60)
+class ClusterBatchRegistryTest {
+
+    @Mock
+    private ClusterJobService jobService;
+
+    @Mock
+    private ClusterJobRepository jobRepository;
+
+    @Mock
+    private ClusterRepository clusterRepository;
+
+    @Mock
+    private CredentialRepository credentialRepository;
+
+    private ClusterBatchRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        registry = new ClusterBatchRegistry(jobService, jobRepository, clusterRepository, credentialRepository, 5, 100, 3600000, 60000);
+    }
+
+    @Test
+    void startQueuesWindowAndRenewsLeasesOfWaitingClusters() {
+        when(jobService.enqueue(eq(JobType.CREATE), any())).thenAnswer(invocation -> createJob("job-" + ((Cluster) invocation.getArgument(1)).getUid(), null));
+
+        ClusterBatch batch = registry.start(2, List.of(createEntry("uid-1"), createEntry("uid-2"), createEntry("uid-3")));
+
+        assertEquals(2, batch.toDTO().getRunning());
+        verify(jobService, times(2)).enqueue(eq(JobType.CREATE), any());
+        verify(clusterRepository).renewLeases(List.of("uid-3"), Duration.ofMillis(60000));
+    }
+
+    @Test
+    void advanceRemovesClusterRejectedByOtherOperation() {
+        ClusterBatch.Entry entry = createEntry("uid-1");
+        when(jobService.enqueue(eq(JobType.CREATE), any())).thenThrow(new OperationInProgressException("in progress"));
+        when(jobRepository.findByActiveClusterKey("aws/us-west-1/uid-1")).thenReturn(createJob("job-1", "other-uid"));
+
+        ClusterBatch batch = registry.start(1, List.of(entry));
+
+        assertTrue(batch.isFinished());
+        assertEquals("in progress", batch.toDTO().getClusters().get(0).getMessage());
+        verify(credentialRepository).deleteById("credential-uid-1");
+        verify(clusterRepository).delete(entry.getCluster());
+    }
+
+    @Test
+    void advanceFollowsJobQueuedByReconciler() {
+        ClusterBatch.Entry entry = createEntry("uid-1");
+        when(jobService.enqueue(eq(JobType.CREATE), any())).thenThrow(new OperationInProgressException("in progress"));
+        when(jobRepository.findByActiveClusterKey("aws/us-west-1/uid-1")).thenReturn(createJob("job-1", "uid-1"));
+
+        ClusterBatch batch = registry.start(1, List.of(entry));
+
+        assertFalse(batch.isFinished());
+        assertEquals("job-1", entry.getJobId());
+        verify(clusterRepository, never()).delete(any());
+    }
+
+    @Test
+    void advanceFinishesClusterWhoseJobCouldNotBeQueued() {
+        when(jobService.enqueue(eq(JobType.CREATE), any()))
+                .thenThrow(new DataAccessResourceFailureException("database unavailable"))
+                .thenReturn(createJob("job-2", "uid-2"));
+
+        ClusterBatch.Entry failed = createEntry("uid-1");
+
+        ClusterBatch batch = registry.start(1, List.of(failed, createEntry("uid-2")));
+
+        assertEquals(1, batch.toDTO().getFailed());
+        assertEquals(1, batch.toDTO().getRunning());
+        verify(clusterRepository).delete(failed.getCluster());
+    }
+
+    private ClusterBatch.Entry createEntry(String uid) {
+        Cluster cluster = new Cluster();
+        cluster.setUid(uid);
+        cluster.setClusterName(uid);
+        cluster.setRegion("us-west-1");
+        cluster.setCloudProvider(CloudProvider.AWS);
+        cluster.setCredentialId("credential-" + uid);
+        cluster.setStatus(ClusterStatus.NEW);
+        return new ClusterBatch.Entry(cluster);
+    }
+
+    private ClusterJob createJob(String uid, String clusterUid) {
+        ClusterJob job = new ClusterJob();
+        job.setUid(uid);
+        job.setClusterUid(clusterUid);
+        return job;
+    }
+}
@@ -0,0 +1,72 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.dto.BatchDTO;
+import de.lenneflow.lenneflowterraformserver.enums.BatchStatus;
+import de.lenneflow.lenneflowterraformserver.enums.ClusterStatus;
+import de.lenneflow.lenneflowterraformserver.model.Cluster;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Order(46)
+class ClusterBatchTest {
+
+    @Test
+    void nextReturnsNothingWhenWindowIsFull() {
+        ClusterBatch batch = new ClusterBatch("batch-id", 2, List.of(createEntry("cluster-1"), createEntry("cluster-2"), createEntry("cluster-3")));
+
+        ClusterBatch.Entry first = batch.next();
+        assertNotNull(first);
+        assertNotNull(batch.next());
+        assertNull(batch.next());
+
+        batch.finish(first, null);
+        assertNotNull(batch.next());
+        assertNull(batch.next());
+    }
+
+    @Test
+    void toDTOCountsClustersByProgress() {
+        ClusterBatch batch = new ClusterBatch("batch-id", 2, List.of(createEntry("cluster-1"), createEntry("cluster-2"), createEntry("cluster-3")));
+        ClusterBatch.Entry created = batch.next();
+        created.getCluster().setStatus(ClusterStatus.CREATED);
+        batch.finish(created, null);
+        ClusterBatch.Entry rejected = batch.next();
+        batch.finish(rejected, "rejected");
+
+        BatchDTO dto = batch.toDTO();
+
+        assertEquals(BatchStatus.RUNNING, dto.getStatus());
+        assertEquals(3, dto.getTotal());
+        assertEquals(1, dto.getPending());
+        assertEquals(0, dto.getRunning());
+        assertEquals(1, dto.getSucceeded());
+        assertEquals(1, dto.getFailed());
+        assertEquals(ClusterStatus.ERROR, dto.getClusters().get(1).getStatus());
+        assertEquals("rejected", dto.getClusters().get(1).getMessage());
+    }
+
+    @Test
+    void batchIsFinishedWhenLastClusterIsFinished() {
+        ClusterBatch batch = new ClusterBatch("batch-id", 5, List.of(createEntry("cluster-1"), createEntry("cluster-2")));
+        ClusterBatch.Entry first = batch.next();
+        ClusterBatch.Entry second = batch.next();
+
+        batch.finish(first, null);
+        assertFalse(batch.isFinished());
+        batch.finish(second, null);
+
+        assertTrue(batch.isFinished());
+        assertEquals(BatchStatus.FINISHED, batch.toDTO().getStatus());
+    }
+
+    private ClusterBatch.Entry createEntry(String clusterName) {
+        Cluster cluster = new Cluster();
+        cluster.setClusterName(clusterName);
+        cluster.setStatus(ClusterStatus.NEW);
+        return new ClusterBatch.Entry(cluster);
+    }
+}
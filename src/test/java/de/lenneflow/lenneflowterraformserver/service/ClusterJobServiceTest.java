@@ -0,0 +1,93 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.enums.ClusterStatus;
+import de.lenneflow.lenneflowterraformserver.enums.JobStatus;
+import de.lenneflow.lenneflowterraformserver.exception.PayloadNotValidException;
+import de.lenneflow.lenneflowterraformserver.exception.ResourceNotFoundException;
+import de.lenneflow.lenneflowterraformserver.model.Cluster;
+import de.lenneflow.lenneflowterraformserver.model.ClusterJob;
+import de.lenneflow.lenneflowterraformserver.repository.ClusterJobRepository;
+import de.lenneflow.lenneflowterraformserver.repository.ClusterRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@Order(57)
+class ClusterJobServiceTest {
+
+    @Mock
+    private ClusterJobRepository jobRepository;
+
+    @Mock
+    private ClusterRepository clusterRepository;
+
+    private ClusterJobService jobService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        jobService = new ClusterJobService(jobRepository, clusterRepository);
+    }
+
+    @Test
+    void cancelCancelsQueuedJobAndNewCluster() {
+        Cluster cluster = new Cluster();
+        cluster.setStatus(ClusterStatus.NEW);
+        when(jobRepository.findByUid("job-1")).thenReturn(createJob(JobStatus.QUEUED), createJob(JobStatus.CANCELLED));
+        when(jobRepository.cancelQueued("job-1")).thenReturn(true);
+        when(clusterRepository.findByUid("cluster-uid")).thenReturn(cluster);
+
+        assertEquals(JobStatus.CANCELLED, jobService.cancel("job-1").getStatus());
+        verify(clusterRepository).updateStatus(cluster, ClusterStatus.CANCELLED);
+        verify(jobRepository, never()).requestCancel(any());
+    }
+
+    @Test
+    void cancelKeepsStatusOfExistingClusterWhenQueuedJobIsCancelled() {
+        Cluster cluster = new Cluster();
+        cluster.setStatus(ClusterStatus.CREATED);
+        when(jobRepository.findByUid("job-1")).thenReturn(createJob(JobStatus.QUEUED), createJob(JobStatus.CANCELLED));
+        when(jobRepository.cancelQueued("job-1")).thenReturn(true);
+        when(clusterRepository.findByUid("cluster-uid")).thenReturn(cluster);
+
+        jobService.cancel("job-1");
+
+        verify(clusterRepository, never()).updateStatus(any(), any());
+    }
+
+    @Test
+    void cancelRequestsCancelOfRunningJob() {
+        when(jobRepository.findByUid("job-1")).thenReturn(createJob(JobStatus.RUNNING));
+        when(jobRepository.requestCancel("job-1")).thenReturn(true);
+
+        assertEquals(JobStatus.RUNNING, jobService.cancel("job-1").getStatus());
+        verify(jobRepository).requestCancel("job-1");
+        verifyNoInteractions(clusterRepository);
+    }
+
+    @Test
+    void cancelThrowsExceptionWhenJobIsFinished() {
+        when(jobRepository.findByUid("job-1")).thenReturn(createJob(JobStatus.SUCCEEDED));
+
+        assertThrows(PayloadNotValidException.class, () -> jobService.cancel("job-1"));
+    }
+
+    @Test
+    void cancelThrowsExceptionWhenJobDoesNotExist() {
+        assertThrows(ResourceNotFoundException.class, () -> jobService.cancel("job-1"));
+    }
+
+    private ClusterJob createJob(JobStatus status) {
+        ClusterJob job = new ClusterJob();
+        job.setUid("job-1");
+        job.setClusterUid("cluster-uid");
+        job.setStatus(status);
+        return job;
+    }
+}
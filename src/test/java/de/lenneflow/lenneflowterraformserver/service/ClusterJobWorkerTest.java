@@ -0,0 +1,189 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.enums.CloudProvider;
+import de.lenneflow.lenneflowterraformserver.enums.JobStatus;
+import de.lenneflow.lenneflowterraformserver.enums.JobType;
+import de.lenneflow.lenneflowterraformserver.exception.InternalServiceException;
+import de.lenneflow.lenneflowterraformserver.exception.OperationCancelledException;
+import de.lenneflow.lenneflowterraformserver.exception.OperationRejectedException;
+import de.lenneflow.lenneflowterraformserver.model.ClusterJob;
+import de.lenneflow.lenneflowterraformserver.repository.ClusterJobRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@Order(49)
+class ClusterJobWorkerTest {
+
+    @Mock
+    private ClusterJobRepository jobRepository;
+
+    @Mock
+    private ClusterOperations clusterOperations;
+
+    @Mock
+    private OperationExecutor operationExecutor;
+
+    @Mock
+    private TerraformOutputBroadcaster outputBroadcaster;
+
+    @Mock
+    private OperationLogStore logStore;
+
+    @Mock
+    private TerraformRunner terraformRunner;
+
+    private final ClusterLockManager clusterLocks = new ClusterLockManager();
+
+    private ClusterJobWorker worker;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        worker = new ClusterJobWorker(jobRepository, clusterOperations, operationExecutor, clusterLocks, outputBroadcaster, logStore, terraformRunner, "replica-1", "http://replica-1:8787", 8787, 2, 3600000, 60000, 3);
+        when(jobRepository.claimNext(eq("replica-1"), eq("http://replica-1:8787"), any(), anyInt())).thenAnswer(invocation -> createJob());
+    }
+
+    @AfterEach
+    void tearDown() {
+        worker.shutdown();
+    }
+
+    @Test
+    void claimJobsStopsAtMaximumConcurrency() {
+        worker.claimJobs();
+
+        verify(jobRepository, times(2)).claimNext(eq("replica-1"), any(), any(), eq(3));
+        verify(operationExecutor, times(2)).submit(any());
+    }
+
+    @Test
+    void claimJobsReleasesJobWhenExecutorRejects() {
+        doThrow(new OperationRejectedException("full")).when(operationExecutor).submit(any());
+
+        worker.claimJobs();
+
+        verify(jobRepository, times(1)).claimNext(any(), any(), any(), anyInt());
+        verify(jobRepository).release(any(), eq("replica-1"));
+    }
+
+    @Test
+    void runFinishesJobAndRenewsNoLeaseAfterwards() {
+        doAnswer(invocation -> {
+            ((Runnable) invocation.getArgument(0)).run();
+            return null;
+        }).when(operationExecutor).submit(any());
+        doThrow(new InternalServiceException("terraform plan failed")).doNothing().when(clusterOperations).run(any(), any());
+        when(jobRepository.claimNext(eq("replica-1"), eq("http://replica-1:8787"), any(), anyInt())).thenAnswer(invocation -> createJob()).thenAnswer(invocation -> createJob()).thenReturn(null);
+
+        worker.claimJobs();
+        worker.renewLeases();
+
+        verify(jobRepository).finish(any(), eq("replica-1"), eq(JobStatus.FAILED), eq("terraform plan failed"));
+        verify(jobRepository).finish(any(), eq("replica-1"), eq(JobStatus.SUCCEEDED), isNull());
+        verify(jobRepository, never()).renewLeases(any(), any(), any());
+        verify(outputBroadcaster, times(2)).finishOperation(any());
+        verify(logStore, times(2)).close(any());
+        assertFalse(clusterLocks.isLocked(createJob().getClusterKey()));
+    }
+
+    @Test
+    void renewLeasesRenewsRunningJobsOfReplica() {
+        worker.claimJobs();
+        worker.renewLeases();
+
+        verify(jobRepository).renewLeases(eq("replica-1"), argThat(jobIds -> jobIds.size() == 2), any());
+        verify(jobRepository).failAbandoned(3);
+        verify(jobRepository).cancelAbandoned();
+    }
+
+    @Test
+    void heartbeatRunsInOwnThreadAndSurvivesFailures() {
+        when(jobRepository.failAbandoned(3)).thenThrow(new DataAccessResourceFailureException("database unavailable")).thenReturn(0L);
+        ClusterJobWorker heartbeatWorker = new ClusterJobWorker(jobRepository, clusterOperations, operationExecutor, clusterLocks, outputBroadcaster, logStore,
+                terraformRunner, "replica-1", "http://replica-1:8787", 8787, 2, 10, 60000, 3);
+        try {
+            verify(jobRepository, timeout(5000).atLeast(2)).failAbandoned(3);
+            verify(jobRepository, timeout(5000).atLeastOnce()).cancelAbandoned();
+        } finally {
+            heartbeatWorker.shutdown();
+        }
+    }
+
+    @Test
+    void cancelJobsCancelsRunningJobsWithCancelRequest() {
+        ClusterJob job = createJob();
+        when(jobRepository.claimNext(eq("replica-1"), eq("http://replica-1:8787"), any(), anyInt())).thenReturn(job).thenReturn(null);
+        when(jobRepository.findCancelRequested(eq("replica-1"), any())).thenReturn(List.of(job.getUid()));
+
+        worker.claimJobs();
+        worker.cancelJobs();
+
+        verify(terraformRunner).cancel(job.getClusterKey());
+    }
+
+    @Test
+    void runFinishesCancelledJobAsCancelled() {
+        doAnswer(invocation -> {
+            ((Runnable) invocation.getArgument(0)).run();
+            return null;
+        }).when(operationExecutor).submit(any());
+        doThrow(new OperationCancelledException("terraform apply was cancelled")).when(clusterOperations).run(any(), any());
+        when(jobRepository.claimNext(eq("replica-1"), eq("http://replica-1:8787"), any(), anyInt())).thenAnswer(invocation -> createJob()).thenReturn(null);
+
+        worker.claimJobs();
+
+        verify(jobRepository).finish(any(), eq("replica-1"), eq(JobStatus.CANCELLED), eq("terraform apply was cancelled"));
+        verify(terraformRunner, times(2)).clearCancel(createJob().getClusterKey());
+        assertFalse(clusterLocks.isLocked(createJob().getClusterKey()));
+    }
+
+    @Test
+    void renewLeasesCancelsJobTakenOverByAnotherReplica() {
+        ClusterJob job = createJob();
+        when(jobRepository.claimNext(eq("replica-1"), eq("http://replica-1:8787"), any(), anyInt())).thenReturn(job).thenReturn(null);
+        ArgumentCaptor<Runnable> runnable = ArgumentCaptor.forClass(Runnable.class);
+        when(jobRepository.renewLeases(eq("replica-1"), any(), any())).thenReturn(List.of(job.getUid()));
+        doAnswer(invocation -> {
+            assertFalse(((BooleanSupplier) invocation.getArgument(1)).getAsBoolean());
+            throw new OperationCancelledException("terraform apply was cancelled");
+        }).when(clusterOperations).run(any(), any());
+
+        worker.claimJobs();
+        verify(operationExecutor).submit(runnable.capture());
+        worker.renewLeases();
+
+        verify(terraformRunner).cancel(job.getClusterKey());
+        runnable.getValue().run();
+        verify(jobRepository).isOwned(job.getUid(), "replica-1");
+        verify(jobRepository).finish(job.getUid(), "replica-1", JobStatus.CANCELLED, "terraform apply was cancelled");
+        worker.renewLeases();
+        verify(jobRepository, times(1)).renewLeases(any(), any(), any());
+    }
+
+    private ClusterJob createJob() {
+        ClusterJob job = new ClusterJob();
+        job.setUid(UUID.randomUUID().toString());
+        job.setType(JobType.CREATE);
+        job.setStatus(JobStatus.RUNNING);
+        job.setCloudProvider(CloudProvider.AWS);
+        job.setRegion("us-west-1");
+        job.setClusterName("test-cluster");
+        return job;
+    }
+}
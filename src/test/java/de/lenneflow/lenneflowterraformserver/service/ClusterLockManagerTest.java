@@ -0,0 +1,58 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.enums.CloudProvider;
+import de.lenneflow.lenneflowterraformserver.exception.OperationInProgressException;
+import de.lenneflow.lenneflowterraformserver.model.ClusterKey;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Order(45)
+class ClusterLockManagerTest {
+
+    private final ClusterLockManager clusterLocks = new ClusterLockManager();
+
+    private final ClusterKey firstCluster = new ClusterKey(CloudProvider.AWS, "us-west-1", "first-cluster");
+    private final ClusterKey secondCluster = new ClusterKey(CloudProvider.AWS, "us-west-1", "second-cluster");
+
+    @Test
+    void acquireRejectsSecondOperationOnSameCluster() {
+        clusterLocks.acquire(firstCluster, "update");
+
+        OperationInProgressException exception = assertThrows(OperationInProgressException.class, () -> clusterLocks.acquire(firstCluster, "delete"));
+        assertTrue(exception.getMessage().contains("update"));
+    }
+
+    @Test
+    void acquireAllowsOperationsOnDifferentClusters() {
+        clusterLocks.acquire(firstCluster, "update");
+
+        assertDoesNotThrow(() -> clusterLocks.acquire(secondCluster, "update"));
+        assertTrue(clusterLocks.isLocked(firstCluster));
+        assertTrue(clusterLocks.isLocked(secondCluster));
+    }
+
+    @Test
+    void releaseAllowsNextOperation() {
+        clusterLocks.acquire(firstCluster, "update");
+        clusterLocks.release(firstCluster);
+
+        assertFalse(clusterLocks.isLocked(firstCluster));
+        assertDoesNotThrow(() -> clusterLocks.acquire(firstCluster, "delete"));
+    }
+
+    @Test
+    void completionIsCompletedWhenLockIsReleased() {
+        assertTrue(clusterLocks.getCompletion(firstCluster).isDone());
+
+        clusterLocks.acquire(firstCluster, "update");
+        CompletableFuture<Void> completion = clusterLocks.getCompletion(firstCluster);
+        assertFalse(completion.isDone());
+
+        clusterLocks.release(firstCluster);
+        assertTrue(completion.isDone());
+    }
+}
@@ -0,0 +1,172 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.enums.CloudProvider;
+import de.lenneflow.lenneflowterraformserver.enums.ClusterStatus;
+import de.lenneflow.lenneflowterraformserver.enums.JobStatus;
+import de.lenneflow.lenneflowterraformserver.enums.JobType;
+import de.lenneflow.lenneflowterraformserver.model.Cluster;
+import de.lenneflow.lenneflowterraformserver.model.ClusterJob;
+import de.lenneflow.lenneflowterraformserver.repository.ClusterJobRepository;
+import de.lenneflow.lenneflowterraformserver.repository.ClusterRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@Order(53)
+class ClusterReconcilerTest {
+
+    @Mock
+    private ClusterRepository clusterRepository;
+
+    @Mock
+    private ClusterJobRepository jobRepository;
+
+    @Mock
+    private ClusterJobService jobService;
+
+    @Mock
+    private TerraformStateStore stateStore;
+
+    private ClusterReconciler reconciler;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        reconciler = new ClusterReconciler(clusterRepository, jobRepository, jobService, stateStore, 2, 600000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        reconciler.shutdown();
+    }
+
+    @Test
+    void reconcileSkipsClusterWithActiveJob() {
+        Cluster cluster = createCluster("uid-1", ClusterStatus.CREATING);
+        when(jobRepository.existsByActiveClusterKey("aws/us-west-1/uid-1")).thenReturn(true);
+
+        assertEquals(ClusterReconciler.Outcome.SKIPPED, reconciler.reconcile(cluster));
+        verify(jobService, never()).enqueue(any(), any());
+    }
+
+    @Test
+    void reconcileSetsCancelledWhenLastJobWasCancelled() {
+        Cluster cluster = createCluster("uid-1", ClusterStatus.CREATING);
+        ClusterJob job = new ClusterJob();
+        job.setStatus(JobStatus.CANCELLED);
+        when(clusterRepository.findByUid("uid-1")).thenReturn(cluster);
+        when(jobRepository.findFirstByCloudProviderAndRegionAndClusterNameOrderByCreatedDesc(any(), any(), any())).thenReturn(job);
+
+        assertEquals(ClusterReconciler.Outcome.CANCELLED, reconciler.reconcile(cluster));
+        verify(clusterRepository).updateStatus(cluster, ClusterStatus.CANCELLED);
+        verify(jobService, never()).enqueue(any(), any());
+    }
+
+    @Test
+    void reconcileSetsErrorWhenLastJobFailed() {
+        Cluster cluster = createCluster("uid-1", ClusterStatus.PLANING);
+        ClusterJob job = new ClusterJob();
+        job.setStatus(JobStatus.FAILED);
+        when(clusterRepository.findByUid("uid-1")).thenReturn(cluster);
+        when(jobRepository.findFirstByCloudProviderAndRegionAndClusterNameOrderByCreatedDesc(any(), any(), any())).thenReturn(job);
+
+        assertEquals(ClusterReconciler.Outcome.FAILED, reconciler.reconcile(cluster));
+        verify(clusterRepository).updateStatus(cluster, ClusterStatus.ERROR);
+        verify(jobService, never()).enqueue(any(), any());
+    }
+
+    @Test
+    void reconcileResumesCreationWithSavedState() {
+        Cluster cluster = createCluster("uid-1", ClusterStatus.CREATING);
+        when(clusterRepository.findByUid("uid-1")).thenReturn(cluster);
+        when(stateStore.hasState("aws/us-west-1/uid-1")).thenReturn(true);
+        when(stateStore.forceUnlock(eq("aws/us-west-1/uid-1"), any())).thenReturn(true);
+
+        assertEquals(ClusterReconciler.Outcome.RESUMED, reconciler.reconcile(cluster));
+        verify(jobService).enqueue(JobType.CREATE, cluster);
+    }
+
+    @Test
+    void reconcileQueuesDeletionAgain() {
+        Cluster cluster = createCluster("uid-1", ClusterStatus.DELETING);
+        when(clusterRepository.findByUid("uid-1")).thenReturn(cluster);
+
+        assertEquals(ClusterReconciler.Outcome.RESUMED, reconciler.reconcile(cluster));
+        verify(jobService).enqueue(JobType.DELETE, cluster);
+    }
+
+    @Test
+    void reconcileSkipsClusterThatIsNotStuckAnymore() {
+        Cluster cluster = createCluster("uid-1", ClusterStatus.CREATING);
+        when(clusterRepository.findByUid("uid-1")).thenReturn(createCluster("uid-1", ClusterStatus.CREATED));
+
+        assertEquals(ClusterReconciler.Outcome.SKIPPED, reconciler.reconcile(cluster));
+        verify(jobService, never()).enqueue(any(), any());
+    }
+
+    @Test
+    void reconcileQueuesCreationOfNewClusterAfterGracePeriod() {
+        Cluster cluster = createCluster("uid-1", ClusterStatus.NEW);
+        cluster.setCreated(LocalDateTime.now().minusHours(1));
+        when(clusterRepository.findByUid("uid-1")).thenReturn(cluster);
+
+        assertEquals(ClusterReconciler.Outcome.RETRIED, reconciler.reconcile(cluster));
+        verify(jobService).enqueue(JobType.CREATE, cluster);
+    }
+
+    @Test
+    void reconcileSkipsNewClusterWithinGracePeriod() {
+        Cluster cluster = createCluster("uid-1", ClusterStatus.NEW);
+        cluster.setCreated(LocalDateTime.now());
+        when(clusterRepository.findByUid("uid-1")).thenReturn(cluster);
+
+        assertEquals(ClusterReconciler.Outcome.SKIPPED, reconciler.reconcile(cluster));
+        verify(jobService, never()).enqueue(any(), any());
+    }
+
+    @Test
+    void reconcileSkipsNewClusterWhileBatchHoldsLease() {
+        Cluster cluster = createCluster("uid-1", ClusterStatus.NEW);
+        cluster.setCreated(LocalDateTime.now().minusHours(1));
+        cluster.setLeaseExpiration(LocalDateTime.now().plusMinutes(1));
+        when(clusterRepository.findByUid("uid-1")).thenReturn(cluster);
+
+        assertEquals(ClusterReconciler.Outcome.SKIPPED, reconciler.reconcile(cluster));
+        verify(jobService, never()).enqueue(any(), any());
+    }
+
+    @Test
+    void sweepChecksAllStuckClusters() {
+        when(clusterRepository.streamByStatus(ClusterReconciler.SWEPT_STATUSES)).thenReturn(Stream.of(
+                createCluster("uid-1", ClusterStatus.INITIALIZING), createCluster("uid-2", ClusterStatus.PLANING),
+                createCluster("uid-3", ClusterStatus.CREATING), createCluster("uid-4", ClusterStatus.CREATING),
+                createCluster("uid-5", ClusterStatus.CREATING)));
+        when(clusterRepository.findByUid(any())).thenAnswer(invocation -> createCluster(invocation.getArgument(0), ClusterStatus.CREATING));
+
+        Map<ClusterReconciler.Outcome, Long> outcomes = reconciler.sweep();
+
+        assertEquals(5L, outcomes.get(ClusterReconciler.Outcome.RETRIED));
+        verify(jobService, times(5)).enqueue(eq(JobType.CREATE), any());
+    }
+
+    private Cluster createCluster(String name, ClusterStatus status) {
+        Cluster cluster = new Cluster();
+        cluster.setUid(name);
+        cluster.setClusterName(name);
+        cluster.setRegion("us-west-1");
+        cluster.setCloudProvider(CloudProvider.AWS);
+        cluster.setStatus(status);
+        return cluster;
+    }
+}
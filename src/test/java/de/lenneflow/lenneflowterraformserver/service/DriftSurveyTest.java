@@ -0,0 +1,176 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.dto.DriftReportDTO;
+import de.lenneflow.lenneflowterraformserver.enums.CloudProvider;
+import de.lenneflow.lenneflowterraformserver.enums.ClusterStatus;
+import de.lenneflow.lenneflowterraformserver.enums.DriftStatus;
+import de.lenneflow.lenneflowterraformserver.exception.OperationCancelledException;
+import de.lenneflow.lenneflowterraformserver.model.Cluster;
+import de.lenneflow.lenneflowterraformserver.model.ClusterDrift;
+import de.lenneflow.lenneflowterraformserver.repository.ClusterDriftRepository;
+import de.lenneflow.lenneflowterraformserver.repository.ClusterJobRepository;
+import de.lenneflow.lenneflowterraformserver.repository.ClusterRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@Order(54)
+class DriftSurveyTest {
+
+    @Mock
+    private ClusterRepository clusterRepository;
+
+    @Mock
+    private ClusterDriftRepository driftRepository;
+
+    @Mock
+    private ClusterJobRepository jobRepository;
+
+    @Mock
+    private ClusterOperations clusterOperations;
+
+    private DriftSurvey driftSurvey;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        driftSurvey = new DriftSurvey(clusterRepository, driftRepository, jobRepository, clusterOperations, true,
+                Duration.ofHours(1).toMillis(), Duration.ofHours(24).toMillis(), Duration.ofMinutes(30).toMillis(), 0.5);
+    }
+
+    @AfterEach
+    void tearDown() {
+        driftSurvey.shutdown();
+    }
+
+    @Test
+    void checkStoresSummaryOfDriftedCluster() throws Exception {
+        ClusterDrift drift = createDrift(3);
+        when(clusterRepository.findByUid("uid-1")).thenReturn(createCluster("uid-1", ClusterStatus.CREATED));
+        when(clusterOperations.checkDrift(any(), any())).thenAnswer(invocation -> {
+            Consumer<String> output = invocation.getArgument(1);
+            output.accept("Plan: 1 to add, 2 to change, 0 to destroy.");
+            return 2;
+        });
+
+        driftSurvey.check(drift);
+
+        assertEquals(DriftStatus.DRIFTED, drift.getStatus());
+        assertEquals(1, drift.getToAdd());
+        assertEquals(2, drift.getToChange());
+        assertEquals("Plan: 1 to add, 2 to change, 0 to destroy.", drift.getSummary());
+        assertEquals(0, drift.getCleanChecks());
+        assertTrue(drift.getNextCheck().isBefore(LocalDateTime.now().plusHours(1).plusMinutes(1)));
+        verify(driftRepository).save(drift);
+    }
+
+    @Test
+    void checkBacksOffAfterCleanChecks() throws Exception {
+        ClusterDrift drift = createDrift(2);
+        when(clusterRepository.findByUid("uid-1")).thenReturn(createCluster("uid-1", ClusterStatus.CREATED));
+        when(clusterOperations.checkDrift(any(), any())).thenReturn(0);
+
+        driftSurvey.check(drift);
+
+        assertEquals(DriftStatus.NO_DRIFT, drift.getStatus());
+        assertEquals(3, drift.getCleanChecks());
+        assertTrue(drift.getNextCheck().isAfter(LocalDateTime.now().plusHours(7)));
+    }
+
+    @Test
+    void checkSkipsClusterWithActiveJob() throws Exception {
+        ClusterDrift drift = createDrift(0);
+        when(clusterRepository.findByUid("uid-1")).thenReturn(createCluster("uid-1", ClusterStatus.CREATED));
+        when(jobRepository.existsByActiveClusterKey(any())).thenReturn(true);
+
+        driftSurvey.check(drift);
+
+        verify(clusterOperations, never()).checkDrift(any(), any());
+        assertEquals(DriftStatus.UNCHECKED, drift.getStatus());
+    }
+
+    @Test
+    void checkRemovesDriftOfDeletedCluster() throws Exception {
+        driftSurvey.check(createDrift(0));
+
+        verify(driftRepository).deleteById("uid-1");
+        verify(clusterOperations, never()).checkDrift(any(), any());
+    }
+
+    @Test
+    void getNextIntervalIsCappedByMaximumInterval() {
+        assertEquals(Duration.ofHours(1), driftSurvey.getNextInterval(0));
+        assertEquals(Duration.ofHours(4), driftSurvey.getNextInterval(2));
+        assertEquals(Duration.ofHours(24), driftSurvey.getNextInterval(8));
+    }
+
+    @Test
+    void registerClustersAddsOnlyNewCreatedClusters() {
+        when(driftRepository.findAllClusterUids()).thenReturn(List.of("uid-1"));
+        when(clusterRepository.streamByStatus(any())).thenReturn(Stream.of(createCluster("uid-1", ClusterStatus.CREATED), createCluster("uid-2", ClusterStatus.CREATED)));
+
+        driftSurvey.registerClusters();
+
+        verify(driftRepository, times(1)).insert(argThat((ClusterDrift drift) -> drift.getClusterUid().equals("uid-2")));
+    }
+
+    @Test
+    void checkReschedulesPlanCancelledWithCluster() throws Exception {
+        ClusterDrift drift = createDrift(2);
+        when(clusterRepository.findByUid("uid-1")).thenReturn(createCluster("uid-1", ClusterStatus.CREATED));
+        when(clusterOperations.checkDrift(any(), any())).thenThrow(new OperationCancelledException("terraform plan was cancelled"));
+
+        driftSurvey.check(drift);
+
+        assertEquals(DriftStatus.UNCHECKED, drift.getStatus());
+        assertEquals(2, drift.getCleanChecks());
+        verify(driftRepository).save(drift);
+    }
+
+    @Test
+    void getReportCountsClustersByStatusAndReturnsPage() {
+        LocalDateTime oldestCheck = LocalDateTime.now().minusHours(2);
+        when(driftRepository.countByStatus()).thenReturn(Map.of(DriftStatus.DRIFTED, 1L, DriftStatus.NO_DRIFT, 1L, DriftStatus.UNCHECKED, 1L));
+        when(driftRepository.findOldestCheck()).thenReturn(oldestCheck);
+        when(driftRepository.findPage(null, null, 3)).thenReturn(List.of(createDrift(0), createDrift(0), createDrift(0)));
+
+        DriftReportDTO report = driftSurvey.getReport(null, null, 2);
+
+        assertEquals(3, report.getTotal());
+        assertEquals(1, report.getDrifted());
+        assertEquals(1, report.getNoDrift());
+        assertEquals(1, report.getUnchecked());
+        assertEquals(oldestCheck, report.getOldestCheck());
+        assertEquals(2, report.getClusters().size());
+        assertEquals("uid-1", report.getNextCursor());
+        verify(driftRepository, never()).findAll();
+    }
+
+    private ClusterDrift createDrift(int cleanChecks) {
+        return new ClusterDrift("uid-1", CloudProvider.AWS, "us-west-1", "uid-1", DriftStatus.UNCHECKED, 0, 0, 0, null, null, cleanChecks, LocalDateTime.now());
+    }
+
+    private Cluster createCluster(String uid, ClusterStatus status) {
+        Cluster cluster = new Cluster();
+        cluster.setUid(uid);
+        cluster.setClusterName(uid);
+        cluster.setRegion("us-west-1");
+        cluster.setCloudProvider(CloudProvider.AWS);
+        cluster.setStatus(status);
+        return cluster;
+    }
+}
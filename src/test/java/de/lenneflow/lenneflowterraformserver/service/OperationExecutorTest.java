@@ -0,0 +1,75 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.dto.QueueStatusDTO;
+import de.lenneflow.lenneflowterraformserver.exception.OperationRejectedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Order(40)
+class OperationExecutorTest {
+
+    private OperationExecutor operationExecutor;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() {
+        operationExecutor = new OperationExecutor(1, 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        operationExecutor.shutdown();
+    }
+
+    @Test
+    void submitRunsOperation() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        operationExecutor.submit(done::countDown);
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void submitRejectsOperationWhenQueueIsFull() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        operationExecutor.submit(() -> {
+            started.countDown();
+            awaitRelease();
+        });
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        operationExecutor.submit(this::awaitRelease);
+
+        assertThrows(OperationRejectedException.class, () -> operationExecutor.submit(this::awaitRelease));
+
+        QueueStatusDTO status = operationExecutor.getQueueStatus();
+        assertEquals(1, status.getActiveOperations());
+        assertEquals(1, status.getQueuedOperations());
+        assertEquals(1, status.getRejectedOperations());
+    }
+
+    @Test
+    void failingOperationDoesNotStopExecutor() throws InterruptedException {
+        operationExecutor.submit(() -> {
+            throw new IllegalStateException("failure");
+        });
+        CountDownLatch done = new CountDownLatch(1);
+        operationExecutor.submit(done::countDown);
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+    }
+
+    private void awaitRelease() {
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.dto.LogLinesDTO;
+import de.lenneflow.lenneflowterraformserver.dto.OperationLogDTO;
+import de.lenneflow.lenneflowterraformserver.enums.CloudProvider;
+import de.lenneflow.lenneflowterraformserver.exception.PayloadNotValidException;
+import de.lenneflow.lenneflowterraformserver.exception.ResourceNotFoundException;
+import de.lenneflow.lenneflowterraformserver.model.ClusterKey;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Order(59)
+class OperationLogStoreTest {
+
+    private static final ClusterKey CLUSTER_KEY = new ClusterKey(CloudProvider.AWS, "us-west-1", "test-cluster");
+
+    @TempDir
+    Path logsDir;
+
+    private OperationLogStore logStore;
+
+    @BeforeEach
+    void setUp() {
+        logStore = new OperationLogStore(logsDir.toString(), 100, 60000);
+    }
+
+    @Test
+    void readLinesDecompressesOnlyRequestedRange() {
+        writeLog("job-1", 1000);
+
+        LogLinesDTO lines = logStore.readLines(CLUSTER_KEY, "job-1", 495, 10);
+
+        assertEquals(495, lines.getFirstLine());
+        assertEquals(1000, lines.getTotalLines());
+        assertEquals(10, lines.getLines().size());
+        assertEquals("line 495", lines.getLines().get(0));
+        assertEquals("line 504", lines.getLines().get(9));
+        assertFalse(lines.isRunning());
+    }
+
+    @Test
+    void tailReturnsLastLinesOfRunningOperation() {
+        logStore.open(CLUSTER_KEY, "job-1");
+        for (int i = 0; i < 25; i++) {
+            logStore.append(CLUSTER_KEY, "line " + i);
+        }
+
+        LogLinesDTO tail = logStore.tail(CLUSTER_KEY, "job-1", 3);
+
+        assertEquals(List.of("line 22", "line 23", "line 24"), tail.getLines());
+        assertTrue(tail.isRunning());
+        logStore.append(CLUSTER_KEY, "line 25");
+        logStore.close(CLUSTER_KEY);
+        assertEquals(List.of("line 25"), logStore.tail(CLUSTER_KEY, "job-1", 1).getLines());
+    }
+
+    @Test
+    void readOfRunningOperationDoesNotWriteBlock() {
+        logStore.open(CLUSTER_KEY, "job-1");
+        logStore.append(CLUSTER_KEY, "line 0");
+        logStore.append(CLUSTER_KEY, "line 1");
+        File index = logsDir.resolve("aws/us-west-1/test-cluster/job-1.idx").toFile();
+
+        assertEquals(List.of("line 0", "line 1"), logStore.readLines(CLUSTER_KEY, "job-1", 0, 10).getLines());
+        assertEquals("line 1\n", new String(logStore.readBytes(CLUSTER_KEY, "job-1", 7, 100), StandardCharsets.UTF_8));
+        assertEquals(14, logStore.getSize(CLUSTER_KEY, "job-1"));
+        assertEquals(0, index.length());
+        logStore.close(CLUSTER_KEY);
+        assertEquals(1, logStore.list(CLUSTER_KEY).size());
+        assertEquals(2, logStore.list(CLUSTER_KEY).get(0).getLines());
+    }
+
+    @Test
+    void readBytesReturnsRangeAcrossBlocks() {
+        writeLog("job-1", 100);
+        String expected = buildOutput(100);
+
+        byte[] range = logStore.readBytes(CLUSTER_KEY, "job-1", 95, 300);
+
+        assertEquals(expected.substring(95, 395), new String(range, StandardCharsets.UTF_8));
+        assertEquals(expected.length(), logStore.getSize(CLUSTER_KEY, "job-1"));
+        assertEquals(0, logStore.readBytes(CLUSTER_KEY, "job-1", expected.length(), 10).length);
+    }
+
+    @Test
+    void segmentIsReadableAsGzipFile() throws IOException {
+        writeLog("job-1", 200);
+
+        File segment = logsDir.resolve("aws/us-west-1/test-cluster/job-1.log.gz").toFile();
+        try (InputStream input = new GZIPInputStream(new FileInputStream(segment))) {
+            assertEquals(buildOutput(200), new String(input.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void openContinuesLogOfPreviousAttempt() {
+        writeLog("job-1", 10);
+        logStore.open(CLUSTER_KEY, "job-1");
+        logStore.append(CLUSTER_KEY, "retry");
+        logStore.close(CLUSTER_KEY);
+
+        LogLinesDTO lines = logStore.readLines(CLUSTER_KEY, "job-1", 9, 5);
+
+        assertEquals(List.of("line 9", "retry"), lines.getLines());
+        assertEquals(11, lines.getTotalLines());
+    }
+
+    @Test
+    void listReturnsLogsOfCluster() {
+        writeLog("job-1", 10);
+        writeLog("job-2", 20);
+
+        List<OperationLogDTO> logs = logStore.list(CLUSTER_KEY);
+
+        assertEquals(2, logs.size());
+        OperationLogDTO log = logs.stream().filter(entry -> entry.getOperationId().equals("job-2")).findFirst().orElseThrow();
+        assertEquals(20, log.getLines());
+        assertEquals(buildOutput(20).length(), log.getSizeInBytes());
+        assertTrue(log.getCompressedSizeInBytes() > 0);
+        assertTrue(logStore.list(new ClusterKey(CloudProvider.AWS, "us-west-1", "other-cluster")).isEmpty());
+    }
+
+    @Test
+    void removeExpiredLogsKeepsRecentAndRunningLogs() {
+        writeLog("job-1", 10);
+        writeLog("job-2", 10);
+        logStore.open(CLUSTER_KEY, "job-3");
+        File clusterDir = logsDir.resolve("aws/us-west-1/test-cluster").toFile();
+        assertTrue(new File(clusterDir, "job-1.log.gz").setLastModified(System.currentTimeMillis() - 120000));
+        assertTrue(new File(clusterDir, "job-3.log.gz").setLastModified(System.currentTimeMillis() - 120000));
+
+        logStore.removeExpiredLogs();
+
+        assertFalse(new File(clusterDir, "job-1.log.gz").exists());
+        assertFalse(new File(clusterDir, "job-1.idx").exists());
+        assertTrue(new File(clusterDir, "job-2.log.gz").exists());
+        assertTrue(new File(clusterDir, "job-3.log.gz").exists());
+        logStore.close(CLUSTER_KEY);
+    }
+
+    @Test
+    void readThrowsExceptionForUnknownOrInvalidOperation() {
+        assertThrows(ResourceNotFoundException.class, () -> logStore.tail(CLUSTER_KEY, "job-1", 10));
+        assertThrows(PayloadNotValidException.class, () -> logStore.tail(CLUSTER_KEY, "../job-1", 10));
+        assertThrows(PayloadNotValidException.class, () -> logStore.list(new ClusterKey(CloudProvider.AWS, "..", "..")));
+    }
+
+    private void writeLog(String operationId, int lines) {
+        logStore.open(CLUSTER_KEY, operationId);
+        for (int i = 0; i < lines; i++) {
+            logStore.append(CLUSTER_KEY, "line " + i);
+        }
+        logStore.close(CLUSTER_KEY);
+    }
+
+    private static String buildOutput(int lines) {
+        StringBuilder output = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            output.append("line ").append(i).append('\n');
+        }
+        return output.toString();
+    }
+}
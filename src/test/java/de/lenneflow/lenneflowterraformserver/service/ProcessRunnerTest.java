@@ -0,0 +1,116 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Order(56)
+@DisabledOnOs(OS.WINDOWS)
+class ProcessRunnerTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final File WORKING_DIR = new File(System.getProperty("java.io.tmpdir"));
+
+    private final ProcessRunner processRunner = new ProcessRunner(10, 200, 5, 100, 2);
+
+    @AfterEach
+    void tearDown() {
+        processRunner.shutdown();
+    }
+
+    @Test
+    void runDrainsBothStreamsOfChattyProcess() throws IOException, InterruptedException {
+        AtomicInteger lines = new AtomicInteger();
+        // far more output on both streams than a pipe buffer holds
+        String script = "i=0; while [ $i -lt 20000 ]; do echo \"line $i\"; echo \"error $i\" >&2; i=$((i+1)); done";
+
+        ProcessResult result = processRunner.run(List.of("sh", "-c", script), WORKING_DIR, Map.of(), TIMEOUT, line -> lines.incrementAndGet());
+
+        assertTrue(result.isSuccess());
+        assertEquals(40000, lines.get());
+        assertEquals(List.of("line 19995", "line 19996", "line 19997", "line 19998", "line 19999"), result.stdoutTail());
+        assertEquals("error 19999", result.stderrTail().get(4));
+        assertEquals(0, processRunner.getRunningCount());
+    }
+
+    @Test
+    void runReturnsExitCodeAndErrorOutput() throws IOException, InterruptedException {
+        ProcessResult result = processRunner.run(List.of("sh", "-c", "echo partial; printf 'Error: boom'>&2; exit 3"), WORKING_DIR, Map.of(), TIMEOUT, line -> {});
+
+        assertEquals(3, result.exitCode());
+        assertFalse(result.isSuccess());
+        assertEquals(List.of("partial"), result.stdoutTail());
+        assertEquals("exit code 3: Error: boom", result.getFailure());
+    }
+
+    @Test
+    void runKillsProcessWhenTimeoutExpires() throws IOException, InterruptedException {
+        ProcessResult result = processRunner.run(List.of("sleep", "30"), WORKING_DIR, Map.of(), Duration.ofMillis(200), line -> {});
+
+        assertTrue(result.timedOut());
+        assertFalse(result.isSuccess());
+        assertTrue(result.duration().compareTo(Duration.ofSeconds(10)) < 0);
+    }
+
+    @Test
+    void blockedListenerDoesNotDelayTimeout() throws Exception {
+        CountDownLatch listenerBlocked = new CountDownLatch(1);
+        CountDownLatch releaseListener = new CountDownLatch(1);
+        List<String> lines = new CopyOnWriteArrayList<>();
+        ProcessRunner.RunningProcess runningProcess = processRunner.start(List.of("sh", "-c", "echo first; echo second; sleep 30"),
+                WORKING_DIR, Map.of(), Duration.ofMillis(200), line -> {
+                    lines.add(line);
+                    listenerBlocked.countDown();
+                    try {
+                        releaseListener.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+        assertTrue(listenerBlocked.await(5, TimeUnit.SECONDS));
+
+        ProcessHandle.of(runningProcess.getPid()).ifPresent(process -> process.onExit().join());
+        assertFalse(runningProcess.getResult().isDone());
+        releaseListener.countDown();
+        ProcessResult result = runningProcess.getResult().get(5, TimeUnit.SECONDS);
+
+        assertTrue(result.timedOut());
+        assertEquals(List.of("first", "second"), lines);
+    }
+
+    @Test
+    void cancelKillsProcessTreeThatIgnoresTermination() throws Exception {
+        ProcessRunner.RunningProcess runningProcess = processRunner.start(List.of("sh", "-c", "trap '' TERM; sleep 30 & wait"),
+                WORKING_DIR, Map.of(), TIMEOUT, line -> {});
+        ProcessHandle process = ProcessHandle.of(runningProcess.getPid()).orElseThrow();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (process.descendants().findAny().isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        List<ProcessHandle> descendants = process.descendants().toList();
+        assertFalse(descendants.isEmpty());
+
+        runningProcess.cancel();
+        ProcessResult result = runningProcess.getResult().get(10, TimeUnit.SECONDS);
+
+        assertTrue(result.cancelled());
+        for (ProcessHandle descendant : descendants) {
+            descendant.onExit().get(5, TimeUnit.SECONDS);
+            assertFalse(descendant.isAlive());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.exception.OperationOnOtherReplicaException;
+import de.lenneflow.lenneflowterraformserver.model.ClusterJob;
+import de.lenneflow.lenneflowterraformserver.repository.ClusterJobRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@Order(61)
+class ReplicaRouterTest {
+
+    @Mock
+    private ClusterJobRepository jobRepository;
+
+    @Mock
+    private ClusterJobWorker jobWorker;
+
+    private ReplicaRouter replicaRouter;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(jobWorker.getReplicaAddress()).thenReturn("http://replica-1:8787");
+        replicaRouter = new ReplicaRouter(jobRepository, jobWorker);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/kubernetes/logs/cluster/test/provider/aws/region/us-west-1/operation/job-1/tail");
+        request.setQueryString("count=10");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void redirectToOwnerKeepsPathAndQueryOfRequest() {
+        when(jobRepository.findByUid("job-1")).thenReturn(createJob("http://replica-2:8787"));
+
+        OperationOnOtherReplicaException exception = assertThrows(OperationOnOtherReplicaException.class, () -> replicaRouter.redirectToOwner("job-1"));
+
+        assertEquals("http://replica-2:8787/api/kubernetes/logs/cluster/test/provider/aws/region/us-west-1/operation/job-1/tail?count=10",
+                exception.getLocation());
+    }
+
+    @Test
+    void redirectToOwnerIgnoresJobsOfThisReplicaAndUnclaimedJobs() {
+        when(jobRepository.findByUid("job-1")).thenReturn(createJob("http://replica-1:8787"));
+        when(jobRepository.findByUid("job-2")).thenReturn(createJob(null));
+
+        assertDoesNotThrow(() -> replicaRouter.redirectToOwner("job-1"));
+        assertDoesNotThrow(() -> replicaRouter.redirectToOwner("job-2"));
+        assertDoesNotThrow(() -> replicaRouter.redirectToOwner("job-3"));
+    }
+
+    private ClusterJob createJob(String ownerAddress) {
+        ClusterJob job = new ClusterJob();
+        job.setOwnerAddress(ownerAddress);
+        return job;
+    }
+}
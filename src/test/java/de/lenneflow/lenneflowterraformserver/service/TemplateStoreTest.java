@@ -0,0 +1,98 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.enums.CloudProvider;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Order(42)
+class TemplateStoreTest {
+
+    @TempDir
+    Path originDir;
+
+    @TempDir
+    Path storeDir;
+
+    private Git origin;
+
+    private TemplateStore templateStore;
+
+    @BeforeEach
+    void setUp() throws GitAPIException, IOException {
+        origin = Git.init().setDirectory(originDir.toFile()).setInitialBranch("main").call();
+        commitFile("aws/main.tf", "version 1");
+        templateStore = new TemplateStore(originDir.toUri().toString(), "main", storeDir.toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        origin.close();
+    }
+
+    @Test
+    void getSnapshotChecksOutHeadCommit() throws IOException {
+        TemplateSnapshot snapshot = templateStore.getSnapshot();
+
+        File mainFile = new File(snapshot.getProviderDir(CloudProvider.AWS), "main.tf");
+        assertEquals("version 1", Files.readString(mainFile.toPath()));
+        assertEquals(origin.getRepository().resolve("HEAD").getName(), snapshot.commitId());
+    }
+
+    @Test
+    void refreshCreatesNewSnapshotAndKeepsOldOne() throws GitAPIException, IOException {
+        TemplateSnapshot first = templateStore.getSnapshot();
+        commitFile("aws/main.tf", "version 2");
+
+        TemplateSnapshot second = templateStore.refresh();
+
+        assertNotEquals(first.commitId(), second.commitId());
+        assertEquals("version 1", Files.readString(new File(first.getProviderDir(CloudProvider.AWS), "main.tf").toPath()));
+        assertEquals("version 2", Files.readString(new File(second.getProviderDir(CloudProvider.AWS), "main.tf").toPath()));
+        assertEquals(second.commitId(), templateStore.getSnapshot().commitId());
+    }
+
+    @Test
+    void getSnapshotOfCommitReturnsPinnedCommit() throws GitAPIException, IOException {
+        String pinnedCommit = templateStore.getSnapshot().commitId();
+        commitFile("aws/main.tf", "version 2");
+        templateStore.refresh();
+
+        TemplateSnapshot snapshot = templateStore.getSnapshot(pinnedCommit);
+
+        assertEquals(pinnedCommit, snapshot.commitId());
+        assertEquals("version 1", Files.readString(new File(snapshot.getProviderDir(CloudProvider.AWS), "main.tf").toPath()));
+    }
+
+    @Test
+    void getSnapshotOfCommitFetchesCommitPinnedAfterLastFetch() throws GitAPIException, IOException {
+        templateStore.getSnapshot();
+        // another replica fetched and pinned this commit, this store has not fetched since
+        commitFile("aws/main.tf", "version 2");
+        String pinnedCommit = origin.getRepository().resolve("HEAD").getName();
+
+        TemplateSnapshot snapshot = templateStore.getSnapshot(pinnedCommit);
+
+        assertEquals(pinnedCommit, snapshot.commitId());
+        assertEquals("version 2", Files.readString(new File(snapshot.getProviderDir(CloudProvider.AWS), "main.tf").toPath()));
+    }
+
+    private void commitFile(String path, String content) throws IOException, GitAPIException {
+        Path file = originDir.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+        origin.add().addFilepattern(".").call();
+        origin.commit().setMessage("update " + path).setAuthor("test", "test@lenneflow.de").setCommitter("test", "test@lenneflow.de").call();
+    }
+}
@@ -0,0 +1,109 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.exception.OperationCancelledException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Order(58)
+class TerraformAdmissionTest {
+
+    private static final long MEGABYTE = 1024 * 1024;
+
+    private final TerraformAdmission admission = new TerraformAdmission(1000 * MEGABYTE, 1000, 2, 10, 600 * MEGABYTE, 1.0, 0.5, 50);
+
+    @AfterEach
+    void tearDown() {
+        admission.shutdown();
+    }
+
+    @Test
+    void admitAlwaysAdmitsFirstProcess() throws InterruptedException {
+        TerraformAdmission smallBudget = new TerraformAdmission(MEGABYTE, 1000, 2, 10, 600 * MEGABYTE, 1.0, 0.5, 50);
+        try (TerraformAdmission.Admission ignored = smallBudget.admit("plan", () -> false)) {
+            assertEquals(1, smallBudget.getStatus().getRunningProcesses());
+        } finally {
+            smallBudget.shutdown();
+        }
+        assertEquals(0, smallBudget.getStatus().getReservedMemory());
+    }
+
+    @Test
+    void admitWaitsUntilMemoryIsReleased() throws Exception {
+        TerraformAdmission.Admission first = admission.admit("apply", () -> false);
+        CompletableFuture<TerraformAdmission.Admission> second = CompletableFuture.supplyAsync(() -> {
+            try {
+                return admission.admit("apply", () -> false);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        assertThrows(TimeoutException.class, () -> second.get(300, TimeUnit.MILLISECONDS));
+        assertEquals(1, admission.getStatus().getWaitingProcesses());
+
+        first.close();
+        second.get(5, TimeUnit.SECONDS).close();
+        assertEquals(0, admission.getStatus().getRunningProcesses());
+    }
+
+    @Test
+    void admitThrowsExceptionWhenCancelledWhileWaiting() throws InterruptedException {
+        try (TerraformAdmission.Admission ignored = admission.admit("apply", () -> false)) {
+            assertThrows(OperationCancelledException.class, () -> admission.admit("apply", () -> true));
+            assertEquals(0, admission.getStatus().getWaitingProcesses());
+        }
+    }
+
+    @Test
+    void admitReducesParallelismWithCpuLoad() throws InterruptedException {
+        TerraformAdmission cpuBound = new TerraformAdmission(1000 * MEGABYTE, 4.0 / Runtime.getRuntime().availableProcessors(),
+                2, 12, MEGABYTE, 1.0, 0.5, 50);
+        try (TerraformAdmission.Admission first = cpuBound.admit("plan", () -> false);
+             TerraformAdmission.Admission second = cpuBound.admit("plan", () -> false);
+             TerraformAdmission.Admission third = cpuBound.admit("plan", () -> false)) {
+            assertEquals(12, first.getParallelism());
+            assertEquals(9, second.getParallelism());
+            assertEquals(6, third.getParallelism());
+            assertEquals(3, cpuBound.getStatus().getParallelism());
+        } finally {
+            cpuBound.shutdown();
+        }
+    }
+
+    @Test
+    void recordUpdatesMovingAverageOfOperation() {
+        admission.record("plan", 400 * MEGABYTE, 0.4);
+        assertEquals(400 * MEGABYTE, admission.getCost("plan").memory());
+
+        admission.record("plan", 800 * MEGABYTE, 0.8);
+        admission.record("plan", 0, 0.2);
+
+        assertEquals(600 * MEGABYTE, admission.getCost("plan").memory());
+        assertEquals(0.4, admission.getCost("plan").cpu(), 0.0001);
+        assertEquals(600 * MEGABYTE, admission.getCost("apply").memory());
+        assertEquals(600 * MEGABYTE, admission.getStatus().getEstimatedMemory().get("plan"));
+    }
+
+    @Test
+    @EnabledOnOs(OS.LINUX)
+    void closeRecordsMeasuredCostOfSucceededProcess() throws Exception {
+        Process process = new ProcessBuilder("sh", "-c", "sleep 1").start();
+        try (TerraformAdmission.Admission admitted = admission.admit("init", () -> false)) {
+            admitted.track(process.pid());
+            assertTrue(process.waitFor(10, TimeUnit.SECONDS));
+            admitted.succeeded();
+        }
+
+        long memory = admission.getCost("init").memory();
+        assertTrue(memory > 0 && memory < 600 * MEGABYTE);
+    }
+}
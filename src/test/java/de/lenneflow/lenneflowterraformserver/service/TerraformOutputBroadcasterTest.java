@@ -0,0 +1,194 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.enums.CloudProvider;
+import de.lenneflow.lenneflowterraformserver.exception.OperationRejectedException;
+import de.lenneflow.lenneflowterraformserver.exception.ResourceNotFoundException;
+import de.lenneflow.lenneflowterraformserver.model.ClusterKey;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Order(43)
+class TerraformOutputBroadcasterTest {
+
+    private static final ClusterKey CLUSTER_KEY = new ClusterKey(CloudProvider.AWS, "us-west-1", "test-cluster");
+
+    private final TerraformOutputBroadcaster outputBroadcaster = new TerraformOutputBroadcaster(3, 1, 100, 2, 10000, 60000, 60000);
+
+    @AfterEach
+    void tearDown() {
+        outputBroadcaster.shutdown();
+    }
+
+    @Test
+    void outputBufferKeepsOnlyMostRecentLines() {
+        TerraformOutputBroadcaster.OutputBuffer buffer = new TerraformOutputBroadcaster.OutputBuffer(3);
+        for (int i = 0; i < 5; i++) {
+            buffer.append("line " + i);
+        }
+
+        List<String> lines = new ArrayList<>();
+        long first = buffer.read(0, lines);
+
+        assertEquals(2, first);
+        assertEquals(List.of("line 2", "line 3", "line 4"), lines);
+    }
+
+    @Test
+    void outputBufferReadsOnlyNewLines() {
+        TerraformOutputBroadcaster.OutputBuffer buffer = new TerraformOutputBroadcaster.OutputBuffer(3);
+        buffer.append("line 0");
+        buffer.append("line 1");
+
+        List<String> lines = new ArrayList<>();
+        long first = buffer.read(1, lines);
+
+        assertEquals(1, first);
+        assertEquals(List.of("line 1"), lines);
+    }
+
+    @Test
+    void subscribeRejectsSubscribersOverLimit() {
+        outputBroadcaster.startOperation(CLUSTER_KEY);
+        assertNotNull(outputBroadcaster.subscribe(CLUSTER_KEY));
+        assertThrows(OperationRejectedException.class, () -> outputBroadcaster.subscribe(CLUSTER_KEY));
+    }
+
+    @Test
+    void subscribeRejectsClusterWithoutOperation() {
+        assertThrows(ResourceNotFoundException.class, () -> outputBroadcaster.subscribe(CLUSTER_KEY));
+    }
+
+    @Test
+    void blockedSubscriberDoesNotDelayOtherSubscribers() throws InterruptedException {
+        CountDownLatch releaseBlocked = new CountDownLatch(1);
+        RecordingEmitter blocked = new RecordingEmitter(releaseBlocked);
+        RecordingEmitter other = new RecordingEmitter(null);
+        Iterator<RecordingEmitter> emitters = List.of(blocked, other).iterator();
+        TerraformOutputBroadcaster broadcaster = new TerraformOutputBroadcaster(10, 10, 2, 2, 60000, 60000, 60000) {
+            @Override
+            SseEmitter createEmitter(long timeout) {
+                return emitters.next();
+            }
+        };
+        try {
+            broadcaster.startOperation(CLUSTER_KEY);
+            broadcaster.subscribe(CLUSTER_KEY);
+            broadcaster.subscribe(CLUSTER_KEY);
+            broadcaster.publish(CLUSTER_KEY, "line 0");
+            assertTrue(blocked.sending.await(5, TimeUnit.SECONDS));
+            for (int i = 1; i < 5; i++) {
+                broadcaster.publish(CLUSTER_KEY, "line " + i);
+            }
+            broadcaster.finishOperation(CLUSTER_KEY);
+
+            assertTrue(other.completed.await(5, TimeUnit.SECONDS));
+            assertEquals(List.of("line 0"), blocked.sent);
+            releaseBlocked.countDown();
+            // line 0 was being sent, lines 1 to 3 were dropped for line 4 and the end of the operation
+            assertTrue(blocked.completed.await(5, TimeUnit.SECONDS));
+            assertEquals(List.of("line 0", "dropped", "line 4", "end"), blocked.sent);
+        } finally {
+            releaseBlocked.countDown();
+            broadcaster.shutdown();
+        }
+    }
+
+    @Test
+    void stalledSubscriberIsCompletedWithErrorAndDoesNotDelayOtherSubscribers() throws InterruptedException {
+        CountDownLatch releaseStalled = new CountDownLatch(1);
+        RecordingEmitter stalled = new RecordingEmitter(releaseStalled);
+        RecordingEmitter other = new RecordingEmitter(null);
+        Iterator<RecordingEmitter> emitters = List.of(stalled, other).iterator();
+        // a single delivery thread, the other subscriber is only served once the stalled send is interrupted
+        TerraformOutputBroadcaster broadcaster = new TerraformOutputBroadcaster(10, 10, 10, 1, 100, 60000, 60000) {
+            @Override
+            SseEmitter createEmitter(long timeout) {
+                return emitters.next();
+            }
+        };
+        try {
+            broadcaster.startOperation(CLUSTER_KEY);
+            broadcaster.subscribe(CLUSTER_KEY);
+            broadcaster.subscribe(CLUSTER_KEY);
+            broadcaster.publish(CLUSTER_KEY, "line 0");
+            assertTrue(stalled.sending.await(5, TimeUnit.SECONDS));
+            broadcaster.publish(CLUSTER_KEY, "line 1");
+            broadcaster.finishOperation(CLUSTER_KEY);
+
+            assertTrue(stalled.failed.await(5, TimeUnit.SECONDS));
+            assertTrue(other.completed.await(5, TimeUnit.SECONDS));
+            assertEquals(List.of("line 0"), stalled.sent);
+            assertEquals(List.of("line 0", "line 1", "end"), other.sent);
+            assertEquals(1, stalled.completed.getCount());
+        } finally {
+            releaseStalled.countDown();
+            broadcaster.shutdown();
+        }
+    }
+
+    /**
+     * Records the sent events, the first send blocks until the latch is released or the sending thread is interrupted
+     */
+    private static class RecordingEmitter extends SseEmitter {
+
+        private final CountDownLatch release;
+        private final List<String> sent = new CopyOnWriteArrayList<>();
+        private final CountDownLatch sending = new CountDownLatch(1);
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private final CountDownLatch failed = new CountDownLatch(1);
+
+        RecordingEmitter(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            sent.add(describe(builder));
+            sending.countDown();
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // like the write of a socket channel
+                    throw new ClosedByInterruptException();
+                }
+            }
+        }
+
+        @Override
+        public void complete() {
+            completed.countDown();
+        }
+
+        @Override
+        public void completeWithError(Throwable ex) {
+            failed.countDown();
+        }
+
+        /**
+         * @return the name of a named event, the data of a line event
+         */
+        private static String describe(SseEventBuilder builder) {
+            String event = builder.build().stream().map(data -> data.getData().toString()).collect(Collectors.joining());
+            int name = event.indexOf("event:");
+            if (name >= 0) {
+                return event.substring(name + "event:".length(), event.indexOf('\n', name));
+            }
+            return event.substring(event.indexOf("data:") + "data:".length()).strip();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import de.lenneflow.lenneflowterraformserver.dto.OutputDTO;
+import de.lenneflow.lenneflowterraformserver.enums.CloudProvider;
+import de.lenneflow.lenneflowterraformserver.exception.ResourceNotFoundException;
+import de.lenneflow.lenneflowterraformserver.model.Cluster;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@Order(55)
+class TerraformOutputReaderTest {
+
+    private static final String STATE_NAME = "aws/us-west-1/test-cluster";
+    private static final String OUTPUTS = "\"outputs\":{"
+            + "\"cluster_endpoint\":{\"value\":\"https://endpoint\",\"type\":\"string\"},"
+            + "\"cluster_ca_certificate\":{\"value\":\"certificate\",\"type\":\"string\",\"sensitive\":true},"
+            + "\"ingress_hostname\":{\"value\":\"ingress\",\"type\":\"string\"},"
+            + "\"subnet_ids\":{\"value\":[\"subnet-1\",\"subnet-2\"],\"type\":[\"list\",\"string\"]}}";
+
+    @Mock
+    private TerraformStateStore stateStore;
+
+    @Mock
+    private TerraformStateBackend stateBackend;
+
+    private TerraformOutputReader outputReader;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(stateBackend.isEnabled()).thenReturn(true);
+        outputReader = new TerraformOutputReader(stateStore, stateBackend);
+    }
+
+    @Test
+    void getOutputDataBindsOutputsOfBackendState() throws IOException {
+        when(stateStore.openState(STATE_NAME)).thenReturn(state("{\"version\":4,\"serial\":3," + OUTPUTS + ",\"resources\":[]}"));
+
+        OutputDTO outputData = outputReader.getOutputData(createCluster());
+
+        assertEquals("https://endpoint", outputData.getCluster_endpoint().getValue());
+        assertEquals("certificate", outputData.getCluster_ca_certificate().getValue());
+        assertEquals("ingress", outputData.getIngress_hostname().getValue());
+    }
+
+    @Test
+    void getOutputsReturnsAllOutputsAndMasksSensitiveValues() throws IOException {
+        when(stateStore.openState(STATE_NAME)).thenReturn(state("{\"version\":4," + OUTPUTS + ",\"resources\":[]}"));
+
+        Map<String, JsonNode> outputs = outputReader.getOutputs(createCluster());
+
+        assertEquals(4, outputs.size());
+        assertEquals("subnet-2", outputs.get("subnet_ids").get("value").get(1).asText());
+        assertEquals(TerraformOutputReader.SENSITIVE_VALUE, outputs.get("cluster_ca_certificate").get("value").asText());
+    }
+
+    @Test
+    void readOutputsStopsAtTheEndOfTheOutputs() throws IOException {
+        // the resources are not valid json, they must not be read
+        String state = "{\"version\":4,\"check_results\":{\"nested\":[1,{\"outputs\":{}}]}," + OUTPUTS + ",\"resources\":[{ not json";
+
+        JsonNode outputs = outputReader.readOutputs(state(state));
+
+        assertEquals("https://endpoint", outputs.get("cluster_endpoint").get("value").asText());
+    }
+
+    @Test
+    void readOutputsReturnsEmptyObjectWithoutOutputs() throws IOException {
+        assertTrue(outputReader.readOutputs(state("{\"version\":4,\"resources\":[]}")).isEmpty());
+    }
+
+    @Test
+    void getOutputsThrowsExceptionWithoutState() throws IOException {
+        when(stateStore.openState(STATE_NAME)).thenReturn(null);
+
+        assertThrows(ResourceNotFoundException.class, () -> outputReader.getOutputs(createCluster()));
+    }
+
+    private InputStream state(String state) {
+        return new ByteArrayInputStream(state.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Cluster createCluster() {
+        Cluster cluster = new Cluster();
+        cluster.setCloudProvider(CloudProvider.AWS);
+        cluster.setRegion("us-west-1");
+        cluster.setClusterName("test-cluster");
+        return cluster;
+    }
+}
@@ -0,0 +1,63 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.dto.PluginCacheStatusDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Order(41)
+class TerraformPluginCacheTest {
+
+    @TempDir
+    Path cacheDir;
+
+    private TerraformPluginCache pluginCache;
+
+    @BeforeEach
+    void setUp() {
+        pluginCache = new TerraformPluginCache(cacheDir.toString());
+    }
+
+    @Test
+    void getEnvironmentContainsCacheDirectory() {
+        assertEquals(cacheDir.toFile().getAbsolutePath(), pluginCache.getEnvironment().get("TF_PLUGIN_CACHE_DIR"));
+    }
+
+    @Test
+    void runInitCountsDownloadsAsMissesAndReusesAsHits() throws IOException, InterruptedException {
+        int exitCode = pluginCache.runInit(outputObserver -> {
+            outputObserver.accept("- Installing hashicorp/aws v5.31.0...");
+            Files.writeString(cacheDir.resolve("terraform-provider-aws"), "provider");
+            return 0;
+        });
+        assertEquals(0, exitCode);
+        pluginCache.runInit(outputObserver -> {
+            outputObserver.accept("- Using hashicorp/aws v5.31.0 from the shared cache directory");
+            return 0;
+        });
+        pluginCache.runInit(outputObserver -> 0);
+
+        PluginCacheStatusDTO status = pluginCache.getStatus();
+        assertEquals(1, status.getMisses());
+        assertEquals(2, status.getHits());
+        assertEquals(2.0 / 3, status.getHitRate(), 0.001);
+        assertTrue(status.getSizeInBytes() >= "provider".length());
+    }
+
+    @Test
+    void runInitDoesNotCountFailedInit() throws IOException, InterruptedException {
+        assertEquals(1, pluginCache.runInit(outputObserver -> 1));
+
+        PluginCacheStatusDTO status = pluginCache.getStatus();
+        assertEquals(0, status.getHits() + status.getMisses());
+        assertTrue(new File(cacheDir.toFile(), ".lock").exists());
+    }
+}
@@ -0,0 +1,118 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.enums.CloudProvider;
+import de.lenneflow.lenneflowterraformserver.model.ClusterKey;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@Order(62)
+class TerraformRunnerTest {
+
+    private static final long MEGABYTE = 1024 * 1024;
+
+    @TempDir
+    Path workDir;
+
+    @Mock
+    private TerraformOutputBroadcaster outputBroadcaster;
+
+    @Mock
+    private OperationLogStore logStore;
+
+    @Mock
+    private TerraformStateBackend stateBackend;
+
+    @Mock
+    private ProcessRunner processRunner;
+
+    // the budget holds two processes of the initial cost
+    private final TerraformAdmission admission = new TerraformAdmission(1300 * MEGABYTE, 1000, 2, 10, 600 * MEGABYTE, 1.0, 0.5, 50);
+
+    private final CountDownLatch initsReleased = new CountDownLatch(1);
+
+    private final ExecutorService operationThreads = Executors.newFixedThreadPool(4);
+
+    private TerraformRunner terraformRunner;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MockitoAnnotations.openMocks(this);
+        when(stateBackend.getInitOptions()).thenReturn("");
+        when(stateBackend.getEnvironment(any())).thenReturn(Map.of());
+        when(processRunner.start(any(), any(), any(), any(), any())).thenAnswer(invocation -> {
+            List<String> arguments = invocation.getArgument(0);
+            ProcessRunner.RunningProcess process = mock(ProcessRunner.RunningProcess.class);
+            when(process.await()).thenAnswer(await -> {
+                if (arguments.get(1).equals("init")) {
+                    assertTrue(initsReleased.await(10, TimeUnit.SECONDS));
+                }
+                return new ProcessResult(0, List.of(), List.of(), Duration.ZERO, false, false);
+            });
+            return process;
+        });
+        TerraformPluginCache pluginCache = new TerraformPluginCache(workDir.resolve("plugin-cache").toString());
+        terraformRunner = new TerraformRunner(pluginCache, outputBroadcaster, logStore, stateBackend, processRunner, admission, 60000, 60000, 60000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        initsReleased.countDown();
+        operationThreads.shutdownNow();
+        admission.shutdown();
+    }
+
+    @Test
+    void initsWaitingForPluginCacheDoNotBlockAdmissionOfPlan() throws Exception {
+        List<CompletableFuture<ProcessResult>> inits = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ClusterKey clusterKey = new ClusterKey(CloudProvider.AWS, "us-west-1", "init-cluster-" + i);
+            inits.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return terraformRunner.init(clusterKey, workDir.toString(), line -> {});
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }, operationThreads));
+        }
+        verify(processRunner, timeout(5000)).start(any(), any(), any(), any(), any());
+
+        ClusterKey planCluster = new ClusterKey(CloudProvider.AWS, "us-west-1", "plan-cluster");
+        CompletableFuture<ProcessResult> plan = CompletableFuture.supplyAsync(() -> {
+            try {
+                return terraformRunner.run(planCluster, "terraform plan -input=false", workDir.toString(), line -> {});
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }, operationThreads);
+
+        assertTrue(plan.get(5, TimeUnit.SECONDS).isSuccess());
+        assertEquals(1, admission.getStatus().getRunningProcesses());
+        assertEquals(0, admission.getStatus().getWaitingProcesses());
+
+        initsReleased.countDown();
+        for (CompletableFuture<ProcessResult> init : inits) {
+            assertTrue(init.get(5, TimeUnit.SECONDS).isSuccess());
+        }
+        assertEquals(0, admission.getStatus().getRunningProcesses());
+    }
+}
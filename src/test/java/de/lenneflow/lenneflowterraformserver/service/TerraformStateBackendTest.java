@@ -0,0 +1,60 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import de.lenneflow.lenneflowterraformserver.enums.CloudProvider;
+import de.lenneflow.lenneflowterraformserver.model.ClusterKey;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Order(48)
+class TerraformStateBackendTest {
+
+    private final ClusterKey clusterKey = new ClusterKey(CloudProvider.AWS, "us-west-1", "test-cluster");
+
+    @TempDir
+    Path clusterDir;
+
+    @Test
+    void configureWritesBackendOverrideAndEnvironment() throws IOException {
+        TerraformStateBackend stateBackend = new TerraformStateBackend(true, "http://localhost:8787/api/terraform/state/");
+
+        stateBackend.configure(clusterDir.toString());
+        Map<String, String> environment = stateBackend.getEnvironment(clusterKey);
+
+        assertTrue(Files.readString(clusterDir.resolve(TerraformStateBackend.OVERRIDE_FILE)).contains("backend \"http\""));
+        assertEquals("http://localhost:8787/api/terraform/state/aws/us-west-1/test-cluster", environment.get("TF_HTTP_ADDRESS"));
+        assertEquals(environment.get("TF_HTTP_ADDRESS"), environment.get("TF_HTTP_LOCK_ADDRESS"));
+        assertEquals(environment.get("TF_HTTP_ADDRESS"), environment.get("TF_HTTP_UNLOCK_ADDRESS"));
+        assertTrue(stateBackend.getInitOptions().contains("-migrate-state"));
+    }
+
+    @Test
+    void configureReplacesLinkedOverrideFile(@TempDir Path snapshotDir) throws IOException {
+        Path snapshotFile = Files.writeString(snapshotDir.resolve(TerraformStateBackend.OVERRIDE_FILE), "# template\n");
+        Files.createLink(clusterDir.resolve(TerraformStateBackend.OVERRIDE_FILE), snapshotFile);
+        TerraformStateBackend stateBackend = new TerraformStateBackend(true, "http://localhost:8787/api/terraform/state");
+
+        stateBackend.configure(clusterDir.toString());
+
+        assertEquals("# template\n", Files.readString(snapshotFile));
+        assertTrue(Files.readString(clusterDir.resolve(TerraformStateBackend.OVERRIDE_FILE)).contains("backend \"http\""));
+    }
+
+    @Test
+    void disabledBackendKeepsLocalState() throws IOException {
+        TerraformStateBackend stateBackend = new TerraformStateBackend(false, "http://localhost:8787/api/terraform/state");
+
+        stateBackend.configure(clusterDir.toString());
+
+        assertFalse(Files.exists(clusterDir.resolve(TerraformStateBackend.OVERRIDE_FILE)));
+        assertTrue(stateBackend.getEnvironment(clusterKey).isEmpty());
+        assertEquals("", stateBackend.getInitOptions());
+    }
+}
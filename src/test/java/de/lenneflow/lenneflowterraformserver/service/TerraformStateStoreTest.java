@@ -0,0 +1,121 @@
+package de.lenneflow.lenneflowterraformserver.service;
+
+import com.mongodb.client.gridfs.model.GridFSFile;
+import de.lenneflow.lenneflowterraformserver.exception.StateLockedException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsCriteria;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the state store against a Mongo container. Skipped if no docker is available.
+ */
+@Order(47)
+@DataMongoTest(properties = "terraform.state.kept-versions=3")
+@Import(TerraformStateStore.class)
+@Testcontainers(disabledWithoutDocker = true)
+class TerraformStateStoreTest {
+
+    @Container
+    @ServiceConnection
+    static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+    private static final String STATE_NAME = "aws/us-west-1/test-cluster";
+    private static final String LOCK_INFO = "{\"ID\":\"lock-1\",\"Operation\":\"OperationTypeApply\",\"Who\":\"test\"}";
+    private static final String OTHER_LOCK_INFO = "{\"ID\":\"lock-2\",\"Operation\":\"OperationTypePlan\",\"Who\":\"test\"}";
+
+    @Autowired
+    private TerraformStateStore stateStore;
+
+    @Autowired
+    private GridFsTemplate gridFsTemplate;
+
+    @BeforeEach
+    void setUp() {
+        stateStore.deleteState(STATE_NAME);
+    }
+
+    @Test
+    void getStateReturnsNullWhenStateWasNeverSaved() {
+        assertNull(stateStore.getState(STATE_NAME));
+    }
+
+    @Test
+    void getStateReturnsLatestVersion() {
+        stateStore.saveState(STATE_NAME, state(1), null);
+        stateStore.saveState(STATE_NAME, state(2), null);
+
+        assertArrayEquals(state(2), stateStore.getState(STATE_NAME));
+    }
+
+    @Test
+    void saveStateCompressesAndKeepsOnlyLatestVersions() {
+        for (int serial = 1; serial <= 5; serial++) {
+            stateStore.saveState(STATE_NAME, state(serial), null);
+        }
+
+        List<GridFSFile> files = gridFsTemplate.find(Query.query(GridFsCriteria.whereFilename().is(STATE_NAME))).into(new ArrayList<>());
+        assertEquals(3, files.size());
+        for (GridFSFile file : files) {
+            assertTrue(file.getMetadata().getLong("version") >= 3);
+            assertTrue(file.getLength() < state(5).length);
+        }
+    }
+
+    @Test
+    void lockRejectsSecondLock() {
+        stateStore.lock(STATE_NAME, LOCK_INFO);
+
+        StateLockedException exception = assertThrows(StateLockedException.class, () -> stateStore.lock(STATE_NAME, OTHER_LOCK_INFO));
+        assertEquals(LOCK_INFO, exception.getMessage());
+    }
+
+    @Test
+    void saveStateRequiresIdOfHeldLock() {
+        stateStore.lock(STATE_NAME, LOCK_INFO);
+
+        assertThrows(StateLockedException.class, () -> stateStore.saveState(STATE_NAME, state(1), "lock-2"));
+        stateStore.saveState(STATE_NAME, state(1), "lock-1");
+        assertArrayEquals(state(1), stateStore.getState(STATE_NAME));
+    }
+
+    @Test
+    void unlockReleasesOnlyMatchingLock() {
+        stateStore.lock(STATE_NAME, LOCK_INFO);
+
+        assertThrows(StateLockedException.class, () -> stateStore.unlock(STATE_NAME, OTHER_LOCK_INFO));
+        stateStore.unlock(STATE_NAME, LOCK_INFO);
+        assertDoesNotThrow(() -> stateStore.lock(STATE_NAME, OTHER_LOCK_INFO));
+    }
+
+    @Test
+    void forceUnlockRemovesOnlyOlderLock() {
+        LocalDateTime beforeLock = LocalDateTime.now().minusSeconds(1);
+        stateStore.lock(STATE_NAME, LOCK_INFO);
+
+        assertFalse(stateStore.forceUnlock(STATE_NAME, beforeLock));
+        assertTrue(stateStore.forceUnlock(STATE_NAME, LocalDateTime.now().plusSeconds(1)));
+        assertDoesNotThrow(() -> stateStore.lock(STATE_NAME, OTHER_LOCK_INFO));
+    }
+
+    private byte[] state(int serial) {
+        String resources = "{\"type\":\"aws_instance\",\"name\":\"node\",\"instances\":[]},".repeat(50);
+        return ("{\"version\":4,\"serial\":" + serial + ",\"resources\":[" + resources + "{}]}").getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -11,6 +11,8 @@ import org.junit.jupiter.api.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -42,6 +44,34 @@ class UtilTest {
         assertTrue(new File(clusterDir).exists());
     }
 
+    @Test
+    void linkDirectoryLinksTemplateFilesAndCopiesPrivateFiles() throws IOException {
+        Path template = Files.createDirectories(Path.of(BASE_DIR, "template", "modules"));
+        Files.writeString(template.resolve("main.tf"), "module");
+        Files.writeString(template.getParent().resolve("main.tf"), "main");
+        Files.writeString(template.getParent().resolve("terraform.tfvars"), "key = \"value\"");
+        File target = new File(BASE_DIR, "cluster");
+
+        Util.linkDirectory(template.getParent().toFile(), target);
+
+        assertEquals(2, Files.getAttribute(target.toPath().resolve("main.tf"), "unix:nlink"));
+        assertEquals(2, Files.getAttribute(target.toPath().resolve("modules").resolve("main.tf"), "unix:nlink"));
+        assertEquals(1, Files.getAttribute(target.toPath().resolve("terraform.tfvars"), "unix:nlink"));
+    }
+
+    @Test
+    void createTfvarsFileDoesNotWriteThroughLinks() throws IOException {
+        Path template = Files.createDirectories(Path.of(BASE_DIR, "template"));
+        Files.writeString(template.resolve("terraform.tfvars"), "template");
+        Path clusterDir = Files.createDirectories(Path.of(BASE_DIR, "cluster"));
+        Files.createLink(clusterDir.resolve("terraform.tfvars"), template.resolve("terraform.tfvars"));
+
+        Util.createTfvarsFile(clusterDir.toString(), Map.of("key", "value"));
+
+        assertEquals("template", Files.readString(template.resolve("terraform.tfvars")));
+        assertTrue(Files.readString(clusterDir.resolve("terraform.tfvars")).contains("key = \"value\""));
+    }
+
     @Test
     void runCmdCommandReturnsExitCode() throws IOException, InterruptedException {
         int exitCode = Util.runCmdCommand("echo Hello");
@@ -0,0 +1,99 @@
+package de.lenneflow.lenneflowterraformserver.util;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the creation time and the disk footprint of 1,000 cluster directories created by copying
+ * the template files with the ones created by linking them. Run with ./gradlew benchmark
+ */
+@Tag("benchmark")
+class WorkspaceMaterializationBenchmark {
+
+    private static final int WORKSPACES = 1000;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void linkedWorkspacesAreFasterAndSmallerThanCopiedWorkspaces() throws IOException {
+        File template = createTemplate(tempDir.resolve("template"));
+
+        File copied = tempDir.resolve("copied").toFile();
+        long copyStart = System.nanoTime();
+        for (int i = 0; i < WORKSPACES; i++) {
+            FileUtils.copyDirectory(template, new File(copied, "cluster-" + i));
+        }
+        long copyMillis = (System.nanoTime() - copyStart) / 1_000_000;
+
+        File linked = tempDir.resolve("linked").toFile();
+        long linkStart = System.nanoTime();
+        for (int i = 0; i < WORKSPACES; i++) {
+            Util.linkDirectory(template, new File(linked, "cluster-" + i));
+        }
+        long linkMillis = (System.nanoTime() - linkStart) / 1_000_000;
+
+        Footprint copiedFootprint = footprint(copied.toPath());
+        Footprint linkedFootprint = footprint(linked.toPath());
+        System.out.printf("copy: %d workspaces in %d ms, %d bytes in %d files%n", WORKSPACES, copyMillis, copiedFootprint.bytes, copiedFootprint.files);
+        System.out.printf("link: %d workspaces in %d ms, %d bytes in %d files%n", WORKSPACES, linkMillis, linkedFootprint.bytes, linkedFootprint.files);
+
+        assertTrue(linkedFootprint.bytes < copiedFootprint.bytes);
+        assertTrue(linkedFootprint.files < copiedFootprint.files);
+    }
+
+    /**
+     * Creates a template tree of the size of the AWS templates: a few root files and some modules.
+     */
+    private File createTemplate(Path dir) throws IOException {
+        String content = "resource \"aws_instance\" \"node\" {\n  ami = var.ami_type\n}\n".repeat(100);
+        for (int module = 0; module < 10; module++) {
+            Path moduleDir = Files.createDirectories(dir.resolve("modules").resolve("module-" + module));
+            for (int file = 0; file < 5; file++) {
+                Files.writeString(moduleDir.resolve("file-" + file + ".tf"), content);
+            }
+        }
+        for (String file : new String[]{"main.tf", "variables.tf", "outputs.tf", "providers.tf"}) {
+            Files.writeString(dir.resolve(file), content);
+        }
+        return dir.toFile();
+    }
+
+    /**
+     * Counts every file only once, even if it is linked into several directories.
+     */
+    private Footprint footprint(Path dir) throws IOException {
+        Set<Object> fileKeys = new HashSet<>();
+        Footprint footprint = new Footprint();
+        try (Stream<Path> paths = Files.walk(dir)) {
+            Iterator<Path> iterator = paths.iterator();
+            while (iterator.hasNext()) {
+                BasicFileAttributes attributes = Files.readAttributes(iterator.next(), BasicFileAttributes.class);
+                if (attributes.isRegularFile() && fileKeys.add(attributes.fileKey())) {
+                    footprint.bytes += attributes.size();
+                    footprint.files++;
+                }
+            }
+        }
+        return footprint;
+    }
+
+    private static class Footprint {
+        long bytes;
+        long files;
+    }
+}